@@ -0,0 +1,62 @@
+/**
+ * Scan loops over PodColumns, the innermost loops of PodQuery and LoopStation.getNumPassengers().
+ * A slot matches when its status, class and track tags are in the given bit masks (bit 1 << value
+ * set) and, if freeSeatsOnly, its occupancy is below its capacity. VACANT slots never match, as
+ * long as the status mask leaves out bit 1 << PodColumns.VACANT.
+ *
+ * ScalarColumnKernels is always available. VectorColumnKernels, in vector/, uses the incubating
+ * Vector API and is used instead when it has been compiled onto the class path and the
+ * jdk.incubator.vector module is present at run time, see the README. -Dhyperloop.vector=false
+ * keeps the scalar kernels regardless.
+ */
+interface ColumnKernels {
+
+  /**
+   * The kernels in use, chosen once per JVM
+   */
+  ColumnKernels INSTANCE = load();
+
+  /**
+   * Adds the count, passengers and seats of the matching slots in [from, to) to totals[0],
+   * totals[1] and totals[2]
+   *
+   * @param columns       the columns to scan
+   * @param statusMask    accepted statuses, bit 1 << PodColumns.FUNCTIONAL or FAILED
+   * @param classMask     accepted classes, bit 1 << Pod.FIRST or Pod.ECONOMY
+   * @param trackMask     accepted track tags, bit 1 << tag
+   * @param freeSeatsOnly true to only match pods with occupancy below capacity
+   * @param from          first slot scanned
+   * @param to            slot after the last one scanned
+   * @param totals        count, passengers and seats, added to
+   */
+  void aggregate(PodColumns columns, int statusMask, int classMask, int trackMask,
+      boolean freeSeatsOnly, int from, int to, long[] totals);
+
+  /**
+   * Finds the first matching slot in [from, to)
+   *
+   * @return the slot, or -1 if none matches
+   * @see #aggregate
+   */
+  int next(PodColumns columns, int statusMask, int classMask, int trackMask,
+      boolean freeSeatsOnly, int from, int to);
+
+  /**
+   * Loads VectorColumnKernels by name, so that this file compiles without the incubator module,
+   * falling back to ScalarColumnKernels if it is missing, cannot link against the module, or has
+   * too few lanes on this machine to be worth it
+   */
+  static ColumnKernels load() {
+
+    if (!Boolean.parseBoolean(System.getProperty("hyperloop.vector", "true"))) {
+      return new ScalarColumnKernels();
+    }
+
+    try {
+      return (ColumnKernels) Class.forName("VectorColumnKernels").getDeclaredConstructor()
+          .newInstance();
+    } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+      return new ScalarColumnKernels();
+    }
+  }
+}
@@ -0,0 +1,162 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for station operations, to line up latency spikes with what the
+ * station was doing. Each operation creates its event, calls begin() and commits it on the way out
+ * if shouldCommit() says a recording wants it:
+ *
+ * <pre>
+ * FlightEvents.PodLaunch event = new FlightEvents.PodLaunch();
+ * event.begin();
+ * ...
+ * if (event.shouldCommit()) {
+ *   event.podId = ...;
+ *   event.commit();
+ * }
+ * </pre>
+ *
+ * While no recording has the events enabled, shouldCommit() is false and the JIT removes the event
+ * object altogether, so the operations cost what they did before. Recordings are started and
+ * stopped at run time, e.g. with jcmd PID JFR.start settings=hyperloop.jfc; hyperloop.jfc enables
+ * these events with thresholds suited to production, and RecordingSummary summarizes the result.
+ */
+final class FlightEvents {
+
+  private FlightEvents() {
+  }
+
+  /**
+   * LoopStation.launchPod()
+   */
+  @Name("hyperloop.PodLaunch")
+  @Label("Pod Launch")
+  @Category({"Hyperloop", "Station"})
+  @StackTrace(false)
+  static final class PodLaunch extends Event {
+
+    @Label("Pod ID")
+    long podId;
+
+    @Label("First Class")
+    boolean firstClass;
+
+    @Label("Launch Sequence")
+    long sequence;
+
+    @Label("Pods Spilled")
+    @Description("Launched pods written to the archive by this launch")
+    int podsSpilled;
+  }
+
+  /**
+   * LoopStation.createPod() and its variants, from the pod being admitted to its waiting track
+   */
+  @Name("hyperloop.PodCreate")
+  @Label("Pod Create")
+  @Category({"Hyperloop", "Station"})
+  @StackTrace(false)
+  static final class PodCreate extends Event {
+
+    @Label("Pod ID")
+    long podId;
+
+    @Label("First Class")
+    boolean firstClass;
+
+    @Label("Capacity")
+    int capacity;
+  }
+
+  /**
+   * LoopStation.clearMalfunctioning()
+   */
+  @Name("hyperloop.MalfunctionSweep")
+  @Label("Malfunction Sweep")
+  @Category({"Hyperloop", "Station"})
+  @StackTrace(false)
+  static final class MalfunctionSweep extends Event {
+
+    @Label("Launched Pods")
+    @Description("Pods on the launched track when the sweep started")
+    int launchedPods;
+
+    @Label("Pods Removed")
+    @Description("Pods the sweep removed; failed pods report themselves, so these are the only "
+        + "pods it visits")
+    int podsRemoved;
+  }
+
+  /**
+   * LoopStation.checkHealth(), the sweep that finds malfunctions by checking pods
+   */
+  @Name("hyperloop.HealthCheck")
+  @Label("Health Check")
+  @Category({"Hyperloop", "Station"})
+  @StackTrace(false)
+  static final class HealthCheck extends Event {
+
+    @Label("Pods Scanned")
+    int podsScanned;
+
+    @Label("Pods Failed")
+    @Description("Pods found to have newly malfunctioned")
+    int podsFailed;
+  }
+
+  /**
+   * Track.findPassenger()
+   */
+  @Name("hyperloop.PassengerSearch")
+  @Label("Passenger Search")
+  @Category({"Hyperloop", "Track"})
+  @StackTrace(false)
+  static final class PassengerSearch extends Event {
+
+    @Label("Pods Traversed")
+    int podsTraversed;
+
+    @Label("Found")
+    boolean found;
+
+    @Label("Filtered")
+    @Description("Whether passenger filters let the search skip segments")
+    boolean filtered;
+  }
+
+  /**
+   * Track.addPassenger()
+   */
+  @Name("hyperloop.PassengerBoarding")
+  @Label("Passenger Boarding")
+  @Category({"Hyperloop", "Track"})
+  @StackTrace(false)
+  static final class PassengerBoarding extends Event {
+
+    @Label("Pods Traversed")
+    int podsTraversed;
+
+    @Label("First Class")
+    boolean firstClass;
+
+    @Label("Boarded")
+    boolean boarded;
+  }
+
+  /**
+   * A MalfunctioningPodException being created, i.e. a malfunctioning pod used; the stack trace
+   * shows by what
+   */
+  @Name("hyperloop.PodMalfunction")
+  @Label("Pod Malfunction")
+  @Category({"Hyperloop", "Pod"})
+  static final class PodMalfunction extends Event {
+
+    @Label("Message")
+    String message;
+  }
+}
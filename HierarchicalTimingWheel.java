@@ -0,0 +1,238 @@
+/**
+ * Expiry times for any number of timers, kept in LEVELS wheels of SLOTS slots each. A slot of
+ * level 0 spans one tick and a slot of level L spans SLOTS^L ticks, so a timer is filed in the
+ * lowest level whose span reaches its deadline, in the slot its deadline falls into. Scheduling and
+ * cancelling are O(1) whatever the number of timers; advancing moves the timers of a higher level
+ * slot one level down each time the slot comes up, so a timer is touched at most LEVELS times
+ * before it expires. Nothing is scanned and no thread waits on a timer: the owner advances the
+ * wheel to the current tick whenever it likes, and due timers expire then.
+ *
+ * Timers are intrusive: each one links itself into its slot, so scheduling does not allocate. Not
+ * thread-safe; the owner confines the wheel to one thread or guards it.
+ */
+class HierarchicalTimingWheel {
+
+  /**
+   * Slots per level, a power of two
+   */
+  static final int SLOTS = 64;
+
+  /**
+   * Number of levels; the wheel spans SLOTS^LEVELS ticks, about 2 years at one tick per
+   * millisecond. Later deadlines wait in the top level and are filed again when they come up.
+   */
+  static final int LEVELS = 6;
+
+  private static final int SLOT_BITS = Integer.numberOfTrailingZeros(SLOTS);
+
+  private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+  /**
+   * Something that expires at a tick, linked into the slot of a wheel until then
+   */
+  abstract static class Timer {
+
+    private long deadline; // tick at which this timer expires
+
+    private Timer prev; // previous timer in the same slot
+
+    private Timer next; // next timer in the same slot
+
+    private int slot = -1; // level * SLOTS + slot index, or -1 while not scheduled
+
+    /**
+     * Called by advance() once the deadline has been reached; the timer is no longer scheduled
+     */
+    abstract void expire();
+
+    /**
+     * @return tick at which this timer expires, or expired
+     */
+    final long getDeadline() {
+      return deadline;
+    }
+
+    /**
+     * @return true if this timer is waiting in a wheel
+     */
+    final boolean isScheduled() {
+      return slot != -1;
+    }
+  }
+
+  private final Timer[] slots = new Timer[SLOTS * LEVELS]; // first timer of every slot
+
+  private long currentTick; // every timer due at or before this tick has expired
+
+  private int size; // timers scheduled
+
+  /**
+   * Creates an empty wheel
+   *
+   * @param startTick the current tick
+   */
+  HierarchicalTimingWheel(long startTick) {
+    this.currentTick = startTick;
+  }
+
+  /**
+   * @return the tick the wheel was last advanced to
+   */
+  long getCurrentTick() {
+    return currentTick;
+  }
+
+  /**
+   * @return number of timers waiting to expire
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Schedules a timer, in O(1)
+   *
+   * @param timer    a timer that is not scheduled
+   * @param deadline tick at which the timer should expire
+   * @return false, with the timer left unscheduled, if the deadline has already passed
+   * @throws IllegalStateException if the timer is already scheduled
+   */
+  boolean schedule(Timer timer, long deadline) {
+
+    if (timer.slot != -1) {
+      throw new IllegalStateException("Timer is already scheduled");
+    }
+
+    timer.deadline = deadline;
+    if (deadline <= currentTick) {
+      return false;
+    }
+
+    file(timer);
+    size++;
+    return true;
+  }
+
+  /**
+   * Unschedules a timer, in O(1)
+   *
+   * @param timer the timer
+   * @return false if the timer was not scheduled
+   */
+  boolean cancel(Timer timer) {
+
+    if (timer.slot == -1) {
+      return false;
+    }
+
+    unlink(timer);
+    size--;
+    return true;
+  }
+
+  /**
+   * Moves the wheel forward, expiring every timer due at or before a tick in deadline order (timers
+   * due at the same tick in no particular order). Costs O(1) per tick passed plus O(LEVELS) per
+   * timer, and nothing per tick while the wheel is empty.
+   *
+   * @param tick the tick to advance to; earlier ticks are ignored
+   * @return number of timers expired
+   */
+  int advance(long tick) {
+
+    int expired = 0;
+
+    while (currentTick < tick) {
+
+      if (size == 0) {
+        currentTick = tick;
+        break;
+      }
+
+      long now = ++currentTick;
+
+      // a higher level slot comes up when every level below it wraps around; file its timers
+      // again, highest level first, so that they land in the slots still to come
+      for (int level = LEVELS - 1; level > 0; level--) {
+        if ((now & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+          cascade(level * SLOTS + slotIndex(now, level));
+        }
+      }
+
+      int slot = slotIndex(now, 0);
+      Timer timer = slots[slot];
+      while (timer != null) {
+        Timer following = timer.next;
+        unlink(timer);
+        size--;
+        expired++;
+        timer.expire();
+        timer = following;
+      }
+    }
+
+    return expired;
+  }
+
+  /**
+   * Files again every timer of a slot that has come up, see advance()
+   */
+  private void cascade(int slot) {
+
+    Timer timer = slots[slot];
+    slots[slot] = null;
+
+    while (timer != null) {
+      Timer following = timer.next;
+      timer.prev = null;
+      timer.next = null;
+      file(timer);
+      timer = following;
+    }
+  }
+
+  /**
+   * Links a timer due after currentTick into the slot its deadline falls into
+   */
+  private void file(Timer timer) {
+
+    // deadlines beyond the wheel wait in the farthest slot and are filed again from there
+    long target = Math.min(timer.deadline, currentTick + SPAN - 1);
+    long delta = target - currentTick;
+
+    int level = 0;
+    while (delta >= 1L << (SLOT_BITS * (level + 1))) {
+      level++;
+    }
+
+    int slot = level * SLOTS + slotIndex(target, level);
+    Timer first = slots[slot];
+    timer.prev = null;
+    timer.next = first;
+    if (first != null) {
+      first.prev = timer;
+    }
+    slots[slot] = timer;
+    timer.slot = slot;
+  }
+
+  private void unlink(Timer timer) {
+
+    if (timer.prev != null) {
+      timer.prev.next = timer.next;
+    } else {
+      slots[timer.slot] = timer.next;
+    }
+    if (timer.next != null) {
+      timer.next.prev = timer.prev;
+    }
+
+    timer.prev = null;
+    timer.next = null;
+    timer.slot = -1;
+  }
+
+  private static int slotIndex(long tick, int level) {
+    return (int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+  }
+}
@@ -0,0 +1,593 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.LongSupplier;
+
+/**
+ * A network of LoopStations joined by one-way links with travel times, which dispatches launched
+ * pods (and the passengers on them) along the fastest route between two stations.
+ *
+ * Routes come from shortest-path trees, one per source station, each computed by Dijkstra's
+ * algorithm the first time a route from that source is asked for (or by precompute()) and cached:
+ * afterwards the travel time to any station is an array lookup and a route costs its length. A
+ * link change only drops the trees it can affect: a faster or new link u to v drops the trees in
+ * which it would shorten the way to v, a slower or removed link drops the trees that use it. The
+ * other trees stay valid and cached.
+ *
+ * Each tree holds two ints per station, so caching every tree of a network of n stations takes
+ * 8 n^2 bytes, 200 MB for 5,000 stations. Like LoopStation, a network must be used by one thread
+ * at a time.
+ */
+public class HyperloopNetwork {
+
+  /**
+   * Travel time to a station no route reaches
+   */
+  public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+  /**
+   * The fastest way from one station to another
+   */
+  public static final class Route {
+
+    private final List<String> stations; // from the source to the destination, both included
+
+    private final long travelMillis; // sum of the travel times of the links taken
+
+    private Route(List<String> stations, long travelMillis) {
+      this.stations = stations;
+      this.travelMillis = travelMillis;
+    }
+
+    /**
+     * @return the stations passed, from the source to the destination, both included
+     */
+    public List<String> getStations() {
+      return stations;
+    }
+
+    /**
+     * @return total travel time, in milliseconds
+     */
+    public long getTravelMillis() {
+      return travelMillis;
+    }
+
+    @Override
+    public String toString() {
+      return String.join(" -> ", stations) + " (" + travelMillis + " ms)";
+    }
+  }
+
+  /**
+   * A launched pod on its way to another station, see dispatch()
+   */
+  public static final class Trip {
+
+    private final Pod pod; // the pod, still on its origin's launched track until arrivals()
+
+    private final LoopStation origin; // the station that launched the pod
+
+    private final Route route; // the route taken
+
+    private final long departureMillis; // when dispatch() launched the pod
+
+    private Trip(Pod pod, LoopStation origin, Route route, long departureMillis) {
+      this.pod = pod;
+      this.origin = origin;
+      this.route = route;
+      this.departureMillis = departureMillis;
+    }
+
+    /**
+     * @return the pod travelling
+     */
+    public Pod getPod() {
+      return pod;
+    }
+
+    /**
+     * @return the route taken, fixed at departure
+     */
+    public Route getRoute() {
+      return route;
+    }
+
+    /**
+     * @return departure time, in milliseconds
+     */
+    public long getDepartureMillis() {
+      return departureMillis;
+    }
+
+    /**
+     * @return arrival time, in milliseconds
+     */
+    public long getArrivalMillis() {
+      return departureMillis + route.travelMillis;
+    }
+  }
+
+  private final Map<String, Integer> indexes = new HashMap<>(); // station numbers by name
+
+  private String[] names = new String[16]; // station names by number, null once removed
+
+  private LoopStation[] stations = new LoopStation[16]; // stations by number
+
+  private int numStations; // numbers handed out, removed stations included
+
+  private int[][] linkTo = new int[16][]; // per station, the stations its links lead to
+
+  private int[][] linkMillis = new int[16][]; // per station, the travel times of its links
+
+  private int[] numLinks = new int[16]; // per station, links leaving it
+
+  private int[][] distance = new int[16][]; // per source, travel times of its cached tree
+
+  private int[][] parent = new int[16][]; // per source, each station's predecessor in the tree
+
+  private int numTrees; // trees cached
+
+  private long treesComputed; // Dijkstra runs, for tests and benchmarks
+
+  private final List<Trip> inTransit = new ArrayList<>(); // dispatched trips, in arrival order
+
+  private LongSupplier clock = System::currentTimeMillis; // trip times, replaceable for tests
+
+  /**
+   * Sets the clock used to time trips; for tests
+   *
+   * @param clock source of the current time in milliseconds
+   */
+  void setClock(LongSupplier clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Adds a station without links
+   *
+   * @param name    name of the station, unique in the network
+   * @param station the station
+   * @throws IllegalArgumentException if a station already has that name
+   */
+  public void addStation(String name, LoopStation station) {
+
+    if (indexes.containsKey(name)) {
+      throw new IllegalArgumentException("Duplicate station " + name);
+    }
+
+    if (numStations == names.length) {
+      int length = numStations * 2;
+      names = Arrays.copyOf(names, length);
+      stations = Arrays.copyOf(stations, length);
+      linkTo = Arrays.copyOf(linkTo, length);
+      linkMillis = Arrays.copyOf(linkMillis, length);
+      numLinks = Arrays.copyOf(numLinks, length);
+      distance = Arrays.copyOf(distance, length);
+      parent = Arrays.copyOf(parent, length);
+    }
+
+    int index = numStations++;
+    indexes.put(name, index);
+    names[index] = name;
+    stations[index] = station;
+    linkTo[index] = new int[4];
+    linkMillis[index] = new int[4];
+  }
+
+  /**
+   * Removes a station and every link to and from it; its trips in transit go on
+   *
+   * @param name name of the station
+   * @return the station, or null if the network has no station by that name
+   */
+  public LoopStation removeStation(String name) {
+
+    Integer index = indexes.get(name);
+    if (index == null) {
+      return null;
+    }
+
+    while (numLinks[index] > 0) {
+      removeLink(index, linkTo[index][numLinks[index] - 1]);
+    }
+    for (int from = 0; from < numStations; from++) {
+      if (names[from] != null && linkIndex(from, index) != -1) {
+        removeLink(from, index);
+      }
+    }
+    dropTree(index);
+
+    LoopStation station = stations[index];
+    indexes.remove(name);
+    names[index] = null;
+    stations[index] = null;
+    return station;
+  }
+
+  /**
+   * Looks up a station by name
+   *
+   * @param name name of the station
+   * @return the station, or null if the network has no station by that name
+   */
+  public LoopStation getStation(String name) {
+    Integer index = indexes.get(name);
+    return index == null ? null : stations[index];
+  }
+
+  /**
+   * @return number of stations in the network
+   */
+  public int getNumStations() {
+    return indexes.size();
+  }
+
+  /**
+   * Links one station to another, or changes the travel time of their link; links are one-way, so
+   * a line running both ways takes two calls
+   *
+   * @param from         name of the station the link leaves
+   * @param to           name of the station the link leads to
+   * @param travelMillis travel time along the link, in milliseconds
+   * @throws IllegalArgumentException if a station is unknown, the stations are the same, or the
+   *                                  travel time is not positive
+   */
+  public void setLink(String from, String to, int travelMillis) {
+
+    int u = indexOf(from);
+    int v = indexOf(to);
+    if (u == v) {
+      throw new IllegalArgumentException("Link from " + from + " to itself");
+    }
+    if (travelMillis <= 0) {
+      throw new IllegalArgumentException("Invalid travel time " + travelMillis);
+    }
+
+    int link = linkIndex(u, v);
+    if (link == -1) {
+      if (numLinks[u] == linkTo[u].length) {
+        linkTo[u] = Arrays.copyOf(linkTo[u], numLinks[u] * 2);
+        linkMillis[u] = Arrays.copyOf(linkMillis[u], numLinks[u] * 2);
+      }
+      link = numLinks[u]++;
+      linkTo[u][link] = v;
+      linkMillis[u][link] = UNREACHABLE;
+    }
+
+    int before = linkMillis[u][link];
+    linkMillis[u][link] = travelMillis;
+
+    if (travelMillis < before) {
+      // drop the trees in which the link now shortens the way to v
+      for (int source = 0; source < numStations; source++) {
+        if (distance[source] != null) {
+          int[] dist = tree(source);
+          if (dist[u] != UNREACHABLE && (long) dist[u] + travelMillis < dist[v]) {
+            dropTree(source);
+          }
+        }
+      }
+    } else if (travelMillis > before) {
+      dropTreesUsing(u, v);
+    }
+  }
+
+  /**
+   * Removes the link from one station to another
+   *
+   * @param from name of the station the link leaves
+   * @param to   name of the station the link leads to
+   * @return true if there was such a link
+   * @throws IllegalArgumentException if a station is unknown
+   */
+  public boolean removeLink(String from, String to) {
+    int u = indexOf(from);
+    int v = indexOf(to);
+    if (linkIndex(u, v) == -1) {
+      return false;
+    }
+    removeLink(u, v);
+    return true;
+  }
+
+  /**
+   * Finds the travel time of the fastest route between two stations, in O(1) once the source's
+   * tree is cached
+   *
+   * @param from name of the source station
+   * @param to   name of the destination station
+   * @return travel time in milliseconds, or UNREACHABLE if no route leads there
+   * @throws IllegalArgumentException if a station is unknown
+   */
+  public int getTravelMillis(String from, String to) {
+    int v = indexOf(to);
+    return tree(indexOf(from))[v];
+  }
+
+  /**
+   * Finds the fastest route between two stations, in O(route length) once the source's tree is
+   * cached
+   *
+   * @param from name of the source station
+   * @param to   name of the destination station
+   * @return the route, or null if no route leads there
+   * @throws IllegalArgumentException if a station is unknown
+   */
+  public Route route(String from, String to) {
+
+    int u = indexOf(from);
+    int v = indexOf(to);
+    int[] dist = tree(u);
+    if (dist[v] == UNREACHABLE) {
+      return null;
+    }
+
+    List<String> path = new ArrayList<>();
+    for (int station = v; station != -1; station = parent[u][station]) {
+      path.add(names[station]);
+    }
+    Collections.reverse(path);
+    return new Route(Collections.unmodifiableList(path), dist[v]);
+  }
+
+  /**
+   * Computes and caches the tree of every station, so that no later route query runs Dijkstra's
+   * algorithm until a link changes
+   */
+  public void precompute() {
+    for (int source = 0; source < numStations; source++) {
+      if (names[source] != null) {
+        tree(source);
+      }
+    }
+  }
+
+  /**
+   * @return number of shortest-path trees cached
+   */
+  public int getNumCachedTrees() {
+    return numTrees;
+  }
+
+  /**
+   * @return number of shortest-path trees computed since the network was created
+   */
+  public long getNumTreesComputed() {
+    return treesComputed;
+  }
+
+  /**
+   * Launches the next pod of a station toward another along the fastest route; the passengers on
+   * it travel with it. The pod stays on its origin's launched track until arrivals() delivers it.
+   *
+   * @param from name of the station launching the pod
+   * @param to   name of the destination station
+   * @return the trip
+   * @throws IllegalArgumentException if a station is unknown
+   * @throws IllegalStateException    if no route leads to the destination; no pod is launched
+   * @throws NoSuchElementException   if no pod is waiting at the origin
+   */
+  public Trip dispatch(String from, String to) {
+
+    Route route = route(from, to);
+    if (route == null) {
+      throw new IllegalStateException("No route from " + from + " to " + to);
+    }
+
+    LoopStation origin = stations[indexOf(from)];
+    Pod pod = origin.launchPod();
+    Trip trip = new Trip(pod, origin, route, clock.getAsLong());
+
+    // keep the trips in arrival order; a new one usually arrives last
+    int position = inTransit.size();
+    while (position > 0 && inTransit.get(position - 1).getArrivalMillis() > trip
+        .getArrivalMillis()) {
+      position--;
+    }
+    inTransit.add(position, trip);
+    return trip;
+  }
+
+  /**
+   * Ends the trips that have arrived by now: each pod is taken off its origin's launched track and
+   * delivered, passengers included, to its destination's waiting track, see
+   * LoopStation.receivePod(). A pod whose destination's waiting track is full stays in transit
+   * until a later call finds room. A pod that malfunctioned on the way, or whose destination has
+   * left the network, is not delivered anywhere.
+   *
+   * @return the trips ended, in arrival order
+   */
+  public List<Trip> arrivals() {
+
+    long now = clock.getAsLong();
+    List<Trip> arrived = new ArrayList<>();
+
+    Iterator<Trip> trips = inTransit.iterator();
+    while (trips.hasNext()) {
+      Trip trip = trips.next();
+      if (trip.getArrivalMillis() > now) {
+        break;
+      }
+      trip.origin.removePod(trip.pod);
+      LoopStation destination = getStation(trip.route.stations.get(trip.route.stations.size() - 1));
+      if (destination != null && trip.pod.getTrack() == null && trip.pod.peekFunctional()
+          && !destination.receivePod(trip.pod)) {
+        continue; // no room yet
+      }
+      trips.remove();
+      arrived.add(trip);
+    }
+
+    return arrived;
+  }
+
+  /**
+   * Finds the trip a passenger is on
+   *
+   * @param name the passenger's name
+   * @return the first trip in transit whose pod carries the passenger, or null
+   */
+  public Trip findTrip(String name) {
+    for (Trip trip : inTransit) {
+      for (String passenger : trip.pod.peekPassengers()) {
+        if (name.equals(passenger)) {
+          return trip;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return number of trips dispatched and not yet arrived
+   */
+  public int getNumInTransit() {
+    return inTransit.size();
+  }
+
+  private int indexOf(String name) {
+    Integer index = indexes.get(name);
+    if (index == null) {
+      throw new IllegalArgumentException("Unknown station " + name);
+    }
+    return index;
+  }
+
+  private int linkIndex(int u, int v) {
+    for (int link = 0; link < numLinks[u]; link++) {
+      if (linkTo[u][link] == v) {
+        return link;
+      }
+    }
+    return -1;
+  }
+
+  private void removeLink(int u, int v) {
+    int link = linkIndex(u, v);
+    int last = --numLinks[u];
+    linkTo[u][link] = linkTo[u][last];
+    linkMillis[u][link] = linkMillis[u][last];
+    dropTreesUsing(u, v);
+  }
+
+  /**
+   * Drops the trees that reach v through the link from u, the only ones a slower or removed link
+   * can change
+   */
+  private void dropTreesUsing(int u, int v) {
+    for (int source = 0; source < numStations; source++) {
+      int[] pred = parent[source];
+      if (pred != null && v < pred.length && pred[v] == u) {
+        dropTree(source);
+      }
+    }
+  }
+
+  private void dropTree(int source) {
+    if (distance[source] != null) {
+      distance[source] = null;
+      parent[source] = null;
+      numTrees--;
+    }
+  }
+
+  /**
+   * Returns the travel times of a source's tree, running Dijkstra's algorithm with a binary heap
+   * of (time, station) pairs packed into longs if it is not cached. A cached tree shorter than the
+   * network is extended: stations added since it was computed have had no link into the tree's
+   * stations, or the tree would have been dropped, so they are unreachable.
+   */
+  private int[] tree(int source) {
+
+    int[] cached = distance[source];
+    if (cached != null) {
+      if (cached.length < numStations) {
+        cached = Arrays.copyOf(cached, numStations);
+        Arrays.fill(cached, parent[source].length, numStations, UNREACHABLE);
+        int[] pred = Arrays.copyOf(parent[source], numStations);
+        Arrays.fill(pred, parent[source].length, numStations, -1);
+        distance[source] = cached;
+        parent[source] = pred;
+      }
+      return cached;
+    }
+
+    int[] dist = new int[numStations];
+    int[] pred = new int[numStations];
+    Arrays.fill(dist, UNREACHABLE);
+    Arrays.fill(pred, -1);
+    dist[source] = 0;
+
+    long[] heap = new long[16];
+    int size = 0;
+    heap[size++] = source;
+
+    while (size > 0) {
+
+      long top = heap[0];
+      heap[0] = heap[--size];
+      siftDown(heap, size);
+
+      int u = (int) top;
+      int time = (int) (top >>> 32);
+      if (time != dist[u]) {
+        continue; // stale entry, u was reached faster since
+      }
+
+      for (int link = 0; link < numLinks[u]; link++) {
+        int v = linkTo[u][link];
+        long through = (long) time + linkMillis[u][link];
+        if (through < dist[v]) {
+          dist[v] = (int) through;
+          pred[v] = u;
+          if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+          }
+          heap[size] = through << 32 | v;
+          siftUp(heap, size++);
+        }
+      }
+    }
+
+    distance[source] = dist;
+    parent[source] = pred;
+    numTrees++;
+    treesComputed++;
+    return dist;
+  }
+
+  private static void siftUp(long[] heap, int i) {
+    long entry = heap[i];
+    while (i > 0 && heap[(i - 1) >>> 1] > entry) {
+      heap[i] = heap[(i - 1) >>> 1];
+      i = (i - 1) >>> 1;
+    }
+    heap[i] = entry;
+  }
+
+  private static void siftDown(long[] heap, int size) {
+    if (size == 0) {
+      return;
+    }
+    long entry = heap[0];
+    int i = 0;
+    while (2 * i + 1 < size) {
+      int child = 2 * i + 1;
+      if (child + 1 < size && heap[child + 1] < heap[child]) {
+        child++;
+      }
+      if (heap[child] >= entry) {
+        break;
+      }
+      heap[i] = heap[child];
+      i = child;
+    }
+    heap[i] = entry;
+  }
+}
@@ -0,0 +1,207 @@
+/**
+ * A Track that also keeps an order-statistic tree over its nodes, so positional get(), remove()
+ * and moveTo() take O(log n) instead of walking the list. Pods are still added exactly as in Track:
+ * first class at the front, economy at the back.
+ * 
+ * The tree is a treap keyed by the nodes' order keys, which grow from head to tail; each entry
+ * also records the size of its subtree so a position can be found by descending from the root.
+ */
+public class IndexedTrack extends Track {
+
+  /**
+   * Entry of the order-statistic tree, mirroring one linked node
+   */
+  private static final class Entry {
+
+    private final long key; // order key of the mirrored node
+
+    private final long priority; // heap priority, derived from the key
+
+    private final LinkedNode node; // the mirrored node
+
+    private int size = 1; // number of entries in this subtree
+
+    private Entry left; // entries for nodes closer to the head
+
+    private Entry right; // entries for nodes closer to the tail
+
+    private Entry(LinkedNode node) {
+      this.key = node.getOrder();
+      this.priority = Track.priorityOf(key);
+      this.node = node;
+    }
+  }
+
+  private Entry root; // root of the tree, null when the track is empty
+
+  /**
+   * Removes all pods from the track and empties the tree
+   */
+  @Override
+  public void clear() {
+    super.clear();
+    root = null;
+  }
+
+  @Override
+  protected void linkFirst(LinkedNode newNode) {
+    super.linkFirst(newNode);
+    root = insertFirst(root, new Entry(newNode));
+  }
+
+  @Override
+  protected void linkLast(LinkedNode newNode) {
+    super.linkLast(newNode);
+    root = insertLast(root, new Entry(newNode));
+  }
+
+  @Override
+  protected void unlink(LinkedNode current) {
+    root = remove(root, current.getOrder());
+    super.unlink(current);
+  }
+
+  /**
+   * Finds the node at specified position by descending the tree, in O(log n)
+   * 
+   * @param index position of the node, which must be valid
+   * @return node at specified index
+   */
+  @Override
+  protected LinkedNode getNode(int index) {
+
+    Entry current = root;
+
+    while (true) {
+      int leftSize = size(current.left);
+      if (index < leftSize) {
+        current = current.left;
+      } else if (index == leftSize) {
+        return current.node;
+      } else {
+        index -= leftSize + 1;
+        current = current.right;
+      }
+    }
+  }
+
+  /**
+   * Returns the position of a node on this track, in O(log n)
+   * 
+   * @param node a node currently linked into this track
+   * @return index of the node, usable with get() and remove()
+   */
+  protected int indexOf(LinkedNode node) {
+
+    long key = node.getOrder();
+    int index = 0;
+    Entry current = root;
+
+    while (current.key != key) {
+      if (key < current.key) {
+        current = current.left;
+      } else {
+        index += size(current.left) + 1;
+        current = current.right;
+      }
+    }
+
+    return index + size(current.left);
+  }
+
+  /**
+   * Finds index of first pod on this track already known to have malfunctioned. Unlike
+   * Track.findFirstNonFunctional() this does not run malfunction checks itself (use checkHealth()
+   * for that); it ranks the indexed failed pods in O(failed pods * log n).
+   * 
+   * @return index of first non-functional pod, or -1 if none is known
+   */
+  @Override
+  public int findFirstNonFunctional() {
+
+    int first = -1;
+
+    for (LinkedNode node : failed) {
+      int index = indexOf(node);
+      if (first == -1 || index < first) {
+        first = index;
+      }
+    }
+
+    return first;
+  }
+
+  private static int size(Entry entry) {
+    return entry == null ? 0 : entry.size;
+  }
+
+  /**
+   * Inserts an entry whose key is smaller than every key in the subtree
+   */
+  private static Entry insertFirst(Entry subtree, Entry entry) {
+    if (subtree == null) {
+      return entry;
+    }
+    if (entry.priority > subtree.priority) {
+      entry.right = subtree;
+      entry.size = 1 + subtree.size;
+      return entry;
+    }
+    subtree.left = insertFirst(subtree.left, entry);
+    subtree.size++;
+    return subtree;
+  }
+
+  /**
+   * Inserts an entry whose key is larger than every key in the subtree
+   */
+  private static Entry insertLast(Entry subtree, Entry entry) {
+    if (subtree == null) {
+      return entry;
+    }
+    if (entry.priority > subtree.priority) {
+      entry.left = subtree;
+      entry.size = 1 + subtree.size;
+      return entry;
+    }
+    subtree.right = insertLast(subtree.right, entry);
+    subtree.size++;
+    return subtree;
+  }
+
+  /**
+   * Removes the entry with the given key, which must be present in the subtree
+   */
+  private static Entry remove(Entry subtree, long key) {
+    if (key == subtree.key) {
+      return merge(subtree.left, subtree.right);
+    }
+    if (key < subtree.key) {
+      subtree.left = remove(subtree.left, key);
+    } else {
+      subtree.right = remove(subtree.right, key);
+    }
+    subtree.size--;
+    return subtree;
+  }
+
+  /**
+   * Joins two subtrees where every key of left is smaller than every key of right
+   */
+  private static Entry merge(Entry left, Entry right) {
+    if (left == null) {
+      return right;
+    }
+    if (right == null) {
+      return left;
+    }
+    if (left.priority > right.priority) {
+      left.right = merge(left.right, right);
+      left.size = 1 + size(left.left) + size(left.right);
+      return left;
+    }
+    right.left = merge(left, right.left);
+    right.size = 1 + size(right.left) + size(right.right);
+    return right;
+  }
+}
@@ -0,0 +1,560 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold tier of a LoopStation's launched history. Pods spilled out of the in-memory launched track
+ * are written to immutable segment files, in spill order, and read back on demand as detached
+ * copies. Each segment keeps only its pod count, passenger count and a PassengerFilter on the heap,
+ * so the archive costs a few bytes per archived passenger instead of a whole Pod.
+ *
+ * A background thread compacts segments: whenever four adjacent segments have about the same size
+ * they are merged into one, so the number of segments stays logarithmic in the number of archived
+ * pods, up to MAX_SEGMENT_PODS pods per segment; beyond that it grows by one segment per
+ * MAX_SEGMENT_PODS pods. A merge streams the records from the old files to the new one, one at a
+ * time, so besides the new filter it only holds a long per pod on the heap. Readers and the
+ * compactor only share the segment list, so lookups never wait for a merge.
+ *
+ * Segment file layout: int magic, int pod count, then one record per pod (long ID, byte class,
+ * boolean functional, int capacity, then per seat a boolean occupied flag and the UTF name), then
+ * the long file offset of every record, then the filter (int number of hashes, int number of
+ * words, the words), and finally the long offsets of the record table and the filter.
+ */
+class LaunchArchive {
+
+  /**
+   * Marks a segment file, "HLAS"
+   */
+  private static final int MAGIC = 0x484C4153;
+
+  /**
+   * Number of adjacent same-sized segments merged by one compaction
+   */
+  static final int MERGE_FAN_IN = 4;
+
+  /**
+   * Most pods a merge may put in one segment, which keeps a merge's offset table and a segment's
+   * pod count well within an int
+   */
+  static final int MAX_SEGMENT_PODS = 1 << 24;
+
+  /**
+   * Largest filter of a segment, in bits
+   */
+  private static final int MAX_FILTER_BITS = 1 << 30;
+
+  /**
+   * Filter bits per archived passenger, before rounding up to a power of two
+   */
+  private static final int FILTER_BITS_PER_NAME = 12;
+
+  /**
+   * Bits set per name in segment filters
+   */
+  private static final int FILTER_HASHES = 5;
+
+  /**
+   * An immutable segment file and the summary kept on the heap for it
+   */
+  private static final class Segment {
+
+    private final File file; // the segment's data
+
+    private final int count; // number of pods in the file, at most MAX_SEGMENT_PODS once merged
+
+    private final long numPassengers; // passengers on the file's functional pods
+
+    private final long numNames; // passengers on all of the file's pods, to size merged filters
+
+    private final PassengerFilter filter; // every name in the file
+
+    private Segment(File file, int count, long numPassengers, long numNames,
+        PassengerFilter filter) {
+      this.file = file;
+      this.count = count;
+      this.numPassengers = numPassengers;
+      this.numNames = numNames;
+      this.filter = filter;
+    }
+
+    /**
+     * Size class used to pick segments to merge: segments within a factor of four share a tier
+     */
+    private int tier() {
+      return (31 - Integer.numberOfLeadingZeros(count)) / 2;
+    }
+  }
+
+  private final File directory; // where segment files are written
+
+  private List<Segment> segments = new ArrayList<>(); // in spill order, replaced under this
+
+  private long nextFileNumber; // names new segment files, guarded by this
+
+  private long size; // number of archived pods, guarded by this
+
+  private long numPassengers; // passengers on archived functional pods, guarded by this
+
+  private final ExecutorService compactor; // merges segments in the background
+
+  private boolean compactionQueued; // a compaction task is pending, guarded by this
+
+  private int numCompactions; // merges done so far, guarded by this
+
+  /**
+   * Creates an empty archive writing its segments to the given directory
+   *
+   * @param directory where to put segment files; created if missing, and should not be shared
+   * @throws IOException if the directory cannot be created
+   */
+  LaunchArchive(File directory) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create " + directory);
+    }
+    this.directory = directory;
+    this.compactor = Executors.newSingleThreadExecutor(task -> {
+      Thread thread = new Thread(task, "archive-compaction");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * @return number of archived pods
+   */
+  synchronized long size() {
+    return size;
+  }
+
+  /**
+   * @return number of passengers on archived pods that were functional when archived
+   */
+  synchronized long getNumPassengers() {
+    return numPassengers;
+  }
+
+  /**
+   * @return number of segment files currently making up the archive
+   */
+  synchronized int getNumSegments() {
+    return segments.size();
+  }
+
+  /**
+   * @return number of merges done by background compaction
+   */
+  synchronized int getNumCompactions() {
+    return numCompactions;
+  }
+
+  /**
+   * Writes pods to a new segment at the end of the archive. The pods themselves are not changed;
+   * the caller drops them once this returns.
+   *
+   * @param pods the pods to archive, oldest first
+   * @throws IOException if the segment cannot be written, in which case nothing was archived
+   */
+  void append(List<Pod> pods) throws IOException {
+
+    if (pods.isEmpty()) {
+      return;
+    }
+
+    File file = newFile();
+    Segment segment = write(file, pods);
+
+    synchronized (this) {
+      List<Segment> grown = new ArrayList<>(segments);
+      grown.add(segment);
+      segments = grown;
+      size += segment.count;
+      numPassengers += segment.numPassengers;
+    }
+
+    scheduleCompaction();
+  }
+
+  /**
+   * Reads an archived pod by position
+   *
+   * @param index position in spill order, from 0 (the first pod archived)
+   * @return a detached copy of the pod, with the same ID
+   * @throws IndexOutOfBoundsException if index is invalid
+   * @throws IOException               if the segment cannot be read
+   */
+  synchronized Pod get(long index) throws IOException {
+
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException();
+    }
+
+    for (Segment segment : segments) {
+      if (index < segment.count) {
+        try (RandomAccessFile in = new RandomAccessFile(segment.file, "r")) {
+          in.seek(in.length() - 16);
+          long tableOffset = in.readLong();
+          in.seek(tableOffset + 8L * index);
+          in.seek(in.readLong());
+          return readPod(in);
+        }
+      }
+      index -= segment.count;
+    }
+
+    throw new IndexOutOfBoundsException();
+  }
+
+  /**
+   * Finds the first archived functional pod containing a passenger. Only segments whose filter may
+   * hold the name are read.
+   *
+   * @param name passenger name to search for
+   * @return position of the pod in spill order, or -1 if not found
+   * @throws IOException if a segment cannot be read
+   */
+  synchronized long findPassenger(String name) throws IOException {
+
+    long index = 0;
+
+    for (Segment segment : segments) {
+      if (segment.filter.mightContain(name)) {
+        try (DataInputStream in = open(segment.file)) {
+          in.readInt(); // magic
+          in.readInt(); // count
+          for (int i = 0; i < segment.count; i++) {
+            Pod pod = readPod(in);
+            if (pod.peekFunctional() && holds(pod, name)) {
+              return index + i;
+            }
+          }
+        }
+      }
+      index += segment.count;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Stops background compaction, waiting for a merge in progress to finish. The archive stays
+   * readable, and appends no longer trigger compaction.
+   */
+  void close() {
+    compactor.shutdown();
+    try {
+      compactor.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private synchronized File newFile() {
+    return new File(directory, "segment-" + (nextFileNumber++) + ".dat");
+  }
+
+  private synchronized void scheduleCompaction() {
+    if (compactionQueued || compactor.isShutdown()) {
+      return;
+    }
+    compactionQueued = true;
+    compactor.execute(this::compact);
+  }
+
+  /**
+   * Merges runs of MERGE_FAN_IN adjacent segments of the same tier until none are left. Only this
+   * thread removes segments and append() only adds at the end, so a run found under the lock is
+   * still in place when the merged segment replaces it.
+   */
+  private void compact() {
+
+    while (true) {
+
+      List<Segment> run;
+      synchronized (this) {
+        run = findRun();
+        if (run == null) {
+          compactionQueued = false;
+          return;
+        }
+      }
+
+      try {
+
+        Segment merged = merge(newFile(), run);
+
+        synchronized (this) {
+          List<Segment> replaced = new ArrayList<>(segments);
+          int start = replaced.indexOf(run.get(0));
+          replaced.subList(start, start + run.size()).clear();
+          replaced.add(start, merged);
+          segments = replaced;
+          numCompactions++;
+          // readers hold the lock while reading, so nobody is using the old files any more
+          for (Segment segment : run) {
+            segment.file.delete();
+          }
+        }
+
+      } catch (IOException e) {
+        // leave the segments as they are; the next append tries again
+        e.printStackTrace();
+        synchronized (this) {
+          compactionQueued = false;
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the oldest run of MERGE_FAN_IN adjacent segments of one tier holding at most
+   *         MAX_SEGMENT_PODS pods together, or null if there is none
+   */
+  private List<Segment> findRun() {
+    for (int start = 0; start + MERGE_FAN_IN <= segments.size(); start++) {
+      int tier = segments.get(start).tier();
+      int end = start + 1;
+      while (end < start + MERGE_FAN_IN && segments.get(end).tier() == tier) {
+        end++;
+      }
+      if (end == start + MERGE_FAN_IN) {
+        long count = 0;
+        for (int i = start; i < end; i++) {
+          count += segments.get(i).count;
+        }
+        if (count <= MAX_SEGMENT_PODS) {
+          return new ArrayList<>(segments.subList(start, end));
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Writes pods to a segment file, see the class comment for the layout
+   */
+  private static Segment write(File file, List<Pod> pods) throws IOException {
+
+    long names = 0;
+    for (Pod pod : pods) {
+      names += pod.peekNumPassengers();
+    }
+    PassengerFilter filter = newFilter(names);
+
+    long[] offsets = new long[pods.size()];
+    long passengers = 0;
+
+    CountingOutputStream counter = create(file);
+    try (DataOutputStream out = new DataOutputStream(counter)) {
+
+      out.writeInt(MAGIC);
+      out.writeInt(pods.size());
+
+      for (int i = 0; i < pods.size(); i++) {
+        Pod pod = pods.get(i);
+        offsets[i] = counter.position;
+        out.writeLong(pod.getId());
+        out.writeByte(pod.peekPodClass());
+        out.writeBoolean(pod.peekFunctional());
+        String[] seats = pod.peekPassengers();
+        out.writeInt(seats.length);
+        for (String name : seats) {
+          out.writeBoolean(name != null);
+          if (name != null) {
+            out.writeUTF(name);
+            filter.add(name);
+          }
+        }
+        if (pod.peekFunctional()) {
+          passengers += pod.peekNumPassengers();
+        }
+      }
+
+      writeTrailer(out, counter, offsets, filter);
+    }
+
+    return new Segment(file, pods.size(), passengers, names, filter);
+  }
+
+  /**
+   * Merges segment files into one, in order, copying their records one at a time instead of
+   * reading the pods onto the heap. Pods cleared from the launched track are never spilled, so
+   * every record is copied.
+   */
+  private static Segment merge(File file, List<Segment> run) throws IOException {
+
+    int count = 0; // at most MAX_SEGMENT_PODS, see findRun()
+    long names = 0;
+    for (Segment segment : run) {
+      count += segment.count;
+      names += segment.numNames;
+    }
+    PassengerFilter filter = newFilter(names);
+
+    long[] offsets = new long[count];
+    long passengers = 0;
+    int i = 0;
+
+    CountingOutputStream counter = create(file);
+    try (DataOutputStream out = new DataOutputStream(counter)) {
+
+      out.writeInt(MAGIC);
+      out.writeInt(count);
+
+      for (Segment segment : run) {
+        try (DataInputStream in = open(segment.file)) {
+          if (in.readInt() != MAGIC || in.readInt() != segment.count) {
+            throw new IOException("Not the segment file written: " + segment.file);
+          }
+          for (int j = 0; j < segment.count; j++) {
+            offsets[i++] = counter.position;
+            passengers += copyRecord(in, out, filter);
+          }
+        } catch (EOFException e) {
+          throw new IOException("Truncated segment file: " + segment.file, e);
+        }
+      }
+
+      writeTrailer(out, counter, offsets, filter);
+    }
+
+    return new Segment(file, count, passengers, names, filter);
+  }
+
+  /**
+   * Copies one pod record written by write(), adding its names to the filter
+   *
+   * @return number of passengers on the pod if it is functional, else 0
+   */
+  private static int copyRecord(DataInput in, DataOutputStream out, PassengerFilter filter)
+      throws IOException {
+
+    out.writeLong(in.readLong()); // ID
+    out.writeByte(in.readByte()); // class
+    boolean functional = in.readBoolean();
+    out.writeBoolean(functional);
+    int capacity = in.readInt();
+    out.writeInt(capacity);
+
+    int passengers = 0;
+    for (int seat = 0; seat < capacity; seat++) {
+      boolean occupied = in.readBoolean();
+      out.writeBoolean(occupied);
+      if (occupied) {
+        String name = in.readUTF();
+        out.writeUTF(name);
+        filter.add(name);
+        passengers++;
+      }
+    }
+
+    return functional ? passengers : 0;
+  }
+
+  /**
+   * Writes the record table, the filter and the offsets of both, see the class comment
+   */
+  private static void writeTrailer(DataOutputStream out, CountingOutputStream counter,
+      long[] offsets, PassengerFilter filter) throws IOException {
+
+    long tableOffset = counter.position;
+    for (long offset : offsets) {
+      out.writeLong(offset);
+    }
+
+    long filterOffset = counter.position;
+    long[] words = filter.toWords();
+    out.writeInt(filter.getNumHashes());
+    out.writeInt(words.length);
+    for (long word : words) {
+      out.writeLong(word);
+    }
+
+    out.writeLong(tableOffset);
+    out.writeLong(filterOffset);
+  }
+
+  /**
+   * @return an empty filter for the given number of names, of at most MAX_FILTER_BITS bits
+   */
+  private static PassengerFilter newFilter(long names) {
+    long bits = Math.max(64, names * FILTER_BITS_PER_NAME);
+    return new PassengerFilter((int) Math.min(bits, MAX_FILTER_BITS), FILTER_HASHES);
+  }
+
+  /**
+   * Opens a new segment file for writing, counting the bytes written
+   */
+  private static CountingOutputStream create(File file) throws IOException {
+    return new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+  }
+
+  /**
+   * Counts the bytes written through it in a long, where DataOutputStream.size() stops at 2 GB,
+   * so that record and trailer offsets stay right in segments of any size
+   */
+  private static final class CountingOutputStream extends FilterOutputStream {
+
+    private long position; // bytes written so far
+
+    private CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      position++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      out.write(bytes, offset, length);
+      position += length;
+    }
+  }
+
+  private static DataInputStream open(File file) throws IOException {
+    return new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+  }
+
+  /**
+   * Reads one pod record written by write()
+   */
+  private static Pod readPod(DataInput in) throws IOException {
+    long id = in.readLong();
+    int podClass = in.readByte();
+    boolean functional = in.readBoolean();
+    String[] seats = new String[in.readInt()];
+    for (int i = 0; i < seats.length; i++) {
+      if (in.readBoolean()) {
+        seats[i] = in.readUTF();
+      }
+    }
+    return new Pod(id, podClass, seats, functional);
+  }
+
+  private static boolean holds(Pod pod, String name) {
+    for (String seat : pod.peekPassengers()) {
+      if (name.equals(seat)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,195 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of a station's launches by launch sequence number and launch time, see
+ * LoopStation.enableLaunchIndex(). Launches are appended in sequence order to blocks of BLOCK
+ * entries; since every launch gets the next sequence number, the block and slot of a sequence
+ * number are computed, not searched, and since launch times never decrease, a time is found by a
+ * binary search over the blocks and then within one. A pod leaving the launched track leaves a
+ * tombstone, so sequence numbers keep pointing at the same launches; blocks made only of
+ * tombstones are dropped from the front.
+ */
+class LaunchIndex {
+
+  /**
+   * Launches per block
+   */
+  static final int BLOCK = 256;
+
+  /**
+   * Up to BLOCK consecutive launches
+   */
+  private static final class Block {
+
+    private final long[] millis = new long[BLOCK]; // launch times, never decreasing
+
+    private final Pod[] pods = new Pod[BLOCK]; // launched pods, null for tombstones
+
+    private int size; // entries appended
+
+    private int live; // entries that are not tombstones
+  }
+
+  private Block[] blocks = new Block[16]; // blocks[head] to blocks[head + numBlocks - 1] in use
+
+  private int head; // first block in use
+
+  private int numBlocks; // blocks in use
+
+  private long firstSequence = -1; // sequence number of blocks[head]'s first entry, -1 if none yet
+
+  private int live; // pods indexed
+
+  /**
+   * Appends a launch; sequence numbers must be consecutive and times must not decrease
+   *
+   * @param pod      the launched pod, stamped with its sequence number and time
+   * @param sequence the pod's launch sequence number
+   * @param millis   the pod's launch time
+   */
+  void add(Pod pod, long sequence, long millis) {
+
+    if (firstSequence == -1) {
+      firstSequence = sequence;
+    }
+
+    Block last = numBlocks == 0 ? null : blocks[head + numBlocks - 1];
+    if (last == null || last.size == BLOCK) {
+      if (head + numBlocks == blocks.length) {
+        // shift out the dropped blocks, or grow if there are few of them
+        Block[] target = head > blocks.length / 2 ? blocks : new Block[blocks.length * 2];
+        System.arraycopy(blocks, head, target, 0, numBlocks);
+        Arrays.fill(target, numBlocks, head + numBlocks, null);
+        blocks = target;
+        head = 0;
+      }
+      last = new Block();
+      blocks[head + numBlocks++] = last;
+    }
+
+    last.millis[last.size] = millis;
+    last.pods[last.size++] = pod;
+    last.live++;
+    live++;
+  }
+
+  /**
+   * Leaves a tombstone for a pod that left the launched track
+   *
+   * @param pod the pod, stamped when it was launched
+   */
+  void remove(Pod pod) {
+
+    long offset = pod.getLaunchSequence() - firstSequence;
+    if (firstSequence == -1 || offset < 0 || offset >= (long) numBlocks * BLOCK) {
+      return; // launched before the index was enabled, or already dropped
+    }
+
+    Block block = blocks[head + (int) (offset / BLOCK)];
+    int slot = (int) (offset % BLOCK);
+    if (block.pods[slot] != pod) {
+      return;
+    }
+
+    block.pods[slot] = null;
+    block.live--;
+    live--;
+
+    // drop full blocks of tombstones from the front, keeping the sequence arithmetic intact
+    while (numBlocks > 0 && blocks[head].live == 0 && blocks[head].size == BLOCK) {
+      blocks[head++] = null;
+      numBlocks--;
+      firstSequence += BLOCK;
+    }
+  }
+
+  /**
+   * Looks up a launch by sequence number, in O(1)
+   *
+   * @param sequence the launch sequence number
+   * @return the pod, or null if it is no longer on the launched track or not indexed
+   */
+  Pod get(long sequence) {
+
+    long offset = sequence - firstSequence;
+    if (firstSequence == -1 || offset < 0 || offset >= (long) numBlocks * BLOCK) {
+      return null;
+    }
+
+    Block block = blocks[head + (int) (offset / BLOCK)];
+    int slot = (int) (offset % BLOCK);
+    return slot < block.size ? block.pods[slot] : null;
+  }
+
+  /**
+   * Finds the launches in a time range, in O(log n + k)
+   *
+   * @param fromMillis earliest launch time, inclusive
+   * @param toMillis   latest launch time, inclusive
+   * @return the pods still on the launched track, in launch order
+   */
+  List<Pod> between(long fromMillis, long toMillis) {
+
+    List<Pod> pods = new ArrayList<>();
+
+    // the first block whose last launch is not before fromMillis
+    int low = head;
+    int high = head + numBlocks;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      Block block = blocks[middle];
+      if (block.millis[block.size - 1] < fromMillis) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    for (int b = low; b < head + numBlocks; b++) {
+
+      Block block = blocks[b];
+      int slot = b == low ? firstAtOrAfter(block, fromMillis) : 0;
+
+      for (; slot < block.size; slot++) {
+        if (block.millis[slot] > toMillis) {
+          return pods;
+        }
+        if (block.pods[slot] != null) {
+          pods.add(block.pods[slot]);
+        }
+      }
+    }
+
+    return pods;
+  }
+
+  /**
+   * @return number of pods indexed, tombstones excluded
+   */
+  int size() {
+    return live;
+  }
+
+  /**
+   * @return number of blocks held, including tombstones
+   */
+  int getNumBlocks() {
+    return numBlocks;
+  }
+
+  private static int firstAtOrAfter(Block block, long millis) {
+    int low = 0;
+    int high = block.size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (block.millis[middle] < millis) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+}
@@ -16,6 +16,21 @@ public class LinkedNode {
    */
   private LinkedNode next;
 
+  /**
+   * Position key assigned by the Track this node is linked into; keys grow from head to tail
+   */
+  private long order;
+
+  /**
+   * The segment of the owning Track this node belongs to, when the track keeps passenger filters
+   */
+  private TrackSegment segment;
+
+  /**
+   * The slot of the owning Track's PodColumns describing this node's Pod, or -1 if it has none
+   */
+  private int column = -1;
+
   /**
    * Creates a new LinkedNode with the given data, previous and next nodes
    * @param data the Pod to be contained in this node
@@ -45,7 +60,19 @@ public class LinkedNode {
     return this.data;
   }
   
-  // NOTE: there is no "setPod()" method!!
+  // NOTE: there is no "setPod()" method!! Only the owning Track may repurpose a node, via reset()
+  
+  /**
+   * Clears this node so that a Track can reuse it for another Pod
+   * @param data the Pod to be contained in this node (null while the node sits in a free list)
+   */
+  void reset(Pod data) {
+    this.data = data;
+    this.prev = null;
+    this.next = null;
+    this.segment = null;
+    this.column = -1;
+  }
   
   /**
    * Accesses the previous node in the list
@@ -78,4 +105,52 @@ public class LinkedNode {
   public void setNext(LinkedNode newNext) {
     this.next = newNext;
   }
+
+  /**
+   * Accesses the order key assigned by the owning Track
+   * @return the order key of this node
+   */
+  long getOrder() {
+    return this.order;
+  }
+
+  /**
+   * Updates the order key of this node; only called by Track when linking the node
+   * @param order the new order key
+   */
+  void setOrder(long order) {
+    this.order = order;
+  }
+
+  /**
+   * Accesses the track segment holding this node
+   * @return the segment, or null if the owning Track does not keep passenger filters
+   */
+  TrackSegment getSegment() {
+    return this.segment;
+  }
+
+  /**
+   * Updates the track segment holding this node; only called by Track
+   * @param segment the new segment (may be null)
+   */
+  void setSegment(TrackSegment segment) {
+    this.segment = segment;
+  }
+
+  /**
+   * Accesses the PodColumns slot describing this node's Pod
+   * @return the slot, or -1 if the owning Track does not keep columns
+   */
+  int getColumn() {
+    return this.column;
+  }
+
+  /**
+   * Updates the PodColumns slot of this node; only called by Track
+   * @param column the new slot (-1 for none)
+   */
+  void setColumn(int column) {
+    this.column = column;
+  }
 }
@@ -1,59 +1,584 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 /**
  * This class manages pods in a hyperloop station, handling first class and economy pods separately.
  */
 public class LoopStation {
 
+  /**
+   * Outcome of one consolidate() run
+   */
+  public static final class ConsolidationReport {
+
+    private final int podsRetired; // emptied pods removed from the waiting tracks
+
+    private final int passengersMoved; // passengers moved between pods
+
+    private final long nanos; // time spent
+
+    private final boolean complete; // false if the run stopped at its time budget
+
+    private ConsolidationReport(int podsRetired, int passengersMoved, long nanos,
+        boolean complete) {
+      this.podsRetired = podsRetired;
+      this.passengersMoved = passengersMoved;
+      this.nanos = nanos;
+      this.complete = complete;
+    }
+
+    /**
+     * @return number of pods emptied and retired, i.e. launches saved
+     */
+    public int getPodsRetired() {
+      return podsRetired;
+    }
+
+    /**
+     * @return number of passengers moved to another pod
+     */
+    public int getPassengersMoved() {
+      return passengersMoved;
+    }
+
+    /**
+     * @return time spent by the run, in nanoseconds
+     */
+    public long getNanos() {
+      return nanos;
+    }
+
+    /**
+     * @return true if both tracks were fully consolidated, false if the time budget ran out first
+     */
+    public boolean isComplete() {
+      return complete;
+    }
+
+    @Override
+    public String toString() {
+      return "retired " + podsRetired + " pods, moved " + passengersMoved + " passengers in "
+          + (nanos / 1_000_000.0) + " ms" + (complete ? "" : " (time budget exhausted)");
+    }
+  }
+
+  /**
+   * Minimum number of pods spilled to the archive at once by launchPod(), so that segment files are
+   * not written one pod at a time
+   */
+  static final int SPILL_BATCH = 256;
+
+  /**
+   * Heap held by a station without pods, in bytes, measured on a 64-bit JVM with compressed
+   * references; see estimateBytes()
+   */
+  static final long EMPTY_BYTES = 1_250;
+
+  /**
+   * Heap held per pod on a track besides its seats: the Pod, its node, its column slot and its
+   * entry in the ID map, measured like EMPTY_BYTES
+   */
+  static final long POD_BYTES = 210;
+
+  /**
+   * Heap held per seat, a reference in the pod's passenger array
+   */
+  static final long SEAT_BYTES = 4;
+
+  /**
+   * A launched pod and when it was launched, queued in launch order while retention is enabled
+   */
+  private static final class Launch {
+
+    private final Pod pod;
+
+    private final long millis;
+
+    private Launch(Pod pod, long millis) {
+      this.pod = pod;
+      this.millis = millis;
+    }
+  }
+
   protected Track launched; // Track of launched pods
 
   protected Track waitingEconomy; // Track of economy pods waiting to launch
 
   protected Track waitingFirst; // Track of first class pods waiting to launch
 
+  private final Map<Long, Pod> podsById = new HashMap<>(); // every pod created by this station
+
+  private final PodColumns columns = new PodColumns(); // shared by the three tracks, for query()
+
+  private LaunchArchive archive; // launched pods spilled to disk, null until enableRetention()
+
+  private final ArrayDeque<Launch> launchOrder = new ArrayDeque<>(); // hot launches, oldest first
+
+  private int maxLaunchedPods; // launched pods kept in memory while retention is enabled
+
+  private long maxLaunchedMillis; // how long launched pods stay in memory while retention is on
+
+  private LongSupplier clock = System::currentTimeMillis; // launch times, replaceable for tests
+
+  // free places per waiting track, indexed by pod class; null until setWaitingLimits()
+  private volatile Semaphore[] admission;
+
+  private final AtomicLong numRejected = new AtomicLong(); // pods refused because a track was full
+
+  private final AtomicLong numTimedOut = new AtomicLong(); // pods refused after waiting for room
+
+  private final AtomicLong numDelayed = new AtomicLong(); // pods admitted after waiting for room
+
+  private long numLaunches; // launches so far, i.e. the sequence number of the last launch
+
+  private long lastLaunchMillis; // time of the last launch; launch times never go backwards
+
+  private LaunchIndex launchIndex; // launches by sequence and time, null until enableLaunchIndex()
+
+  private PassengerIndex passengerIndex; // passengers by name, null until enablePassengerIndex()
+
+  // change listeners, replaced as a whole on registration so that notifying never allocates
+  private volatile StationListener[] listeners = new StationListener[0];
+
+  /**
+   * Fans passenger changes reported by the tracks out to the registered listeners
+   */
+  private final StationListener trackEvents = new StationListener() {
+
+    @Override
+    public void passengerAdded(Pod pod, String name) {
+      for (StationListener listener : listeners) {
+        listener.passengerAdded(pod, name);
+      }
+    }
+
+    @Override
+    public void passengerRemoved(Pod pod, String name) {
+      for (StationListener listener : listeners) {
+        listener.passengerRemoved(pod, name);
+      }
+    }
+  };
+
   /**
    * Creates a new LoopStation with empty tracks for launched and waiting pods
    */
   public LoopStation() {
+    this(false);
+  }
 
-    launched = new Track();
-    waitingEconomy = new Track();
-    waitingFirst = new Track();
+  /**
+   * Creates a new LoopStation with empty tracks for launched and waiting pods
+   * 
+   * @param indexedTracks true to use IndexedTrack, with O(log n) positional get and remove, for
+   *                      every track
+   */
+  public LoopStation(boolean indexedTracks) {
+
+    launched = indexedTracks ? new IndexedTrack() : new Track();
+    waitingEconomy = indexedTracks ? new IndexedTrack() : new Track();
+    waitingFirst = indexedTracks ? new IndexedTrack() : new Track();
+
+    // lookups on the launched track are mostly misses, so let them skip whole segments
+    launched.enablePassengerFilters();
+
+    // one set of columns for PodQuery, so launching keeps a pod's slot
+    launched.enableColumns(columns, PodQuery.LAUNCHED);
+    waitingFirst.enableColumns(columns, PodQuery.WAITING_FIRST);
+    waitingEconomy.enableColumns(columns, PodQuery.WAITING_ECONOMY);
+
+    launched.setListener(trackEvents);
+    waitingEconomy.setListener(trackEvents);
+    waitingFirst.setListener(trackEvents);
 
   }
 
   /**
-   * Removes all malfunctioning pods from the launched track
+   * Registers a listener to be told about every change to this station
    * 
-   * @return number of malfunctioning pods removed
+   * @param listener the listener to add
    */
-  public int clearMalfunctioning() {
+  public synchronized void addListener(StationListener listener) {
+
+    StationListener[] grown = Arrays.copyOf(listeners, listeners.length + 1);
+    grown[listeners.length] = listener;
+    listeners = grown;
+
+  }
+
+  /**
+   * Unregisters a listener added with addListener()
+   * 
+   * @param listener the listener to remove
+   */
+  public synchronized void removeListener(StationListener listener) {
+
+    List<StationListener> remaining = new ArrayList<>(Arrays.asList(listeners));
+    remaining.remove(listener);
+    listeners = remaining.toArray(new StationListener[0]);
+
+  }
+
+  /**
+   * Bounds the launched pods kept in memory. Once a pod is no longer among the newest maxPods
+   * launches, or was launched more than maxMillis ago, it is spilled to an immutable segment file
+   * in the given directory and dropped from the heap; getNumLaunched(), getLaunchedPod() and
+   * findPassenger() keep covering the whole history. Spilled pods are read back as detached copies
+   * that equal the original pods but are on no track, so they cannot be changed or removed.
+   * 
+   * launchPod() spills in batches of at least SPILL_BATCH pods; enforceRetention() spills
+   * everything outside the window at once. Segments are merged by a background thread.
+   * 
+   * @param maxPods   number of newest launches always kept in memory
+   * @param maxMillis how long a launched pod is kept in memory, in milliseconds
+   * @param directory where to write segment files; should be empty and not shared
+   * @throws IOException           if the directory cannot be created
+   * @throws IllegalStateException if retention is already enabled
+   */
+  public void enableRetention(int maxPods, long maxMillis, File directory) throws IOException {
 
-    boolean runner = true;
-    int removeCounter = 0;
-    int removeIndex;
+    if (archive != null) {
+      throw new IllegalStateException("Retention is already enabled");
+    }
 
-    while (runner) {
+    archive = new LaunchArchive(directory);
+    maxLaunchedPods = maxPods;
+    maxLaunchedMillis = maxMillis;
 
-      // Finding the non functional pod
-      removeIndex = launched.findFirstNonFunctional();
+    // pods launched before now have no launch time, so their age counts from now
+    long now = clock.getAsLong();
+    LinkedNode current = launched.head;
+    while (current != null) {
+      launchOrder.add(new Launch(current.getPod(), now));
+      current = current.getNext();
+    }
+
+  }
 
-      if (removeIndex == -1) { // No non functional pods
+  /**
+   * Spills every launched pod outside the retention window to disk, see enableRetention(). Call it
+   * periodically for the time limit to apply while no pods are launched.
+   * 
+   * @return number of pods spilled
+   * @throws IOException if a segment cannot be written; the pods then stay in memory
+   */
+  public int enforceRetention() throws IOException {
+    return archive == null ? 0 : spill(1);
+  }
+
+  /**
+   * Stops the archive's background compaction, e.g. before deleting its directory. Spilling and
+   * reading archived pods keep working.
+   */
+  public void closeArchive() {
+    if (archive != null) {
+      archive.close();
+    }
+  }
+
+  /**
+   * @return number of launched pods spilled to disk so far
+   */
+  public long getNumArchived() {
+    return archive == null ? 0 : archive.size();
+  }
 
-        runner = false;
+  /**
+   * Replaces the clock used for launch times and seat hold expiry, e.g. to simulate days of
+   * launches in a benchmark
+   * 
+   * @param clock source of the current time in milliseconds
+   */
+  void setClock(LongSupplier clock) {
+    this.clock = clock;
+    launched.setClock(clock);
+    waitingFirst.setClock(clock);
+    waitingEconomy.setClock(clock);
+  }
+
+  /**
+   * Spills the oldest launched pods outside the retention window, if there are at least minPods
+   * of them. Pods that left the launched track since their launch (e.g. cleared as malfunctioning)
+   * neither count towards the window nor are spilled; they are only dropped from the queue.
+   */
+  private int spill(int minPods) throws IOException {
+
+    long expiredBefore = clock.getAsLong() - maxLaunchedMillis;
+
+    // count the live launches outside the window, without taking them off the queue yet; every
+    // pod on the launched track has a launch in the queue, so the track's size is the live count
+    int live = launched.size();
+    int taken = 0; // launches to take off the queue, including those of pods no longer launched
+    int outside = 0; // live ones among them
+    for (Launch launch : launchOrder) {
+      if (launch.pod.getTrack() == launched) {
+        if (live - outside <= maxLaunchedPods && launch.millis > expiredBefore) {
+          break;
+        }
+        outside++;
+      }
+      taken++;
+    }
+    if (outside < minPods) {
+      return 0;
+    }
+
+    List<Pod> spilled = new ArrayList<>(outside);
+    int i = 0;
+    for (Launch launch : launchOrder) {
+      if (i++ == taken) {
         break;
+      }
+      if (launch.pod.getTrack() == launched) {
+        spilled.add(launch.pod);
+      }
+    }
+
+    // write first, so that a failed write loses nothing
+    archive.append(spilled);
+
+    for (int j = 0; j < taken; j++) {
+      launchOrder.poll();
+    }
+    for (Pod pod : spilled) {
+      launched.remove(pod);
+      podsById.remove(pod.getId());
+      if (passengerIndex != null) {
+        passengerIndex.podRemoved(pod);
+      }
+      if (launchIndex != null) {
+        launchIndex.remove(pod);
+      }
+    }
+
+    return spilled.size();
+  }
+
+  /**
+   * Bounds the number of pods waiting to launch per class, so that the waiting tracks stop growing
+   * when pods are created faster than they launch. Once a track holds its maximum, createPod()
+   * rejects further pods of its class, tryCreatePod() returns null, and the timed and blocking
+   * createPod() variants wait until launchPod() or removePod() takes a pod of that class off the
+   * track. Every pod turned away is counted, see getNumShed().
+   * 
+   * Waiting is only useful while other threads launch pods. A station shared between threads must
+   * be used under its monitor, synchronized (station) { ... }, except for the admission variants
+   * of createPod, which wait for room without it and take it only to add the pod; calling them
+   * while holding the monitor would stop every other thread from making room.
+   * 
+   * @param maxFirst   most first class pods waiting at once
+   * @param maxEconomy most economy pods waiting at once
+   * @throws IllegalArgumentException if a limit is not positive
+   * @throws IllegalStateException    if limits are already set
+   */
+  public synchronized void setWaitingLimits(int maxFirst, int maxEconomy) {
+
+    if (maxFirst <= 0 || maxEconomy <= 0) {
+      throw new IllegalArgumentException("Invalid waiting limits");
+    }
+    if (admission != null) {
+      throw new IllegalStateException("Waiting limits are already set");
+    }
+
+    // fair, so that blocked creators are admitted in arrival order; a track already over its limit
+    // starts with negative permits and admits nothing until it drains below the limit
+    Semaphore[] permits = new Semaphore[2];
+    permits[Pod.FIRST] = new Semaphore(maxFirst - waitingFirst.size(), true);
+    permits[Pod.ECONOMY] = new Semaphore(maxEconomy - waitingEconomy.size(), true);
+    admission = permits;
 
-      } else {
+  }
 
-        // Remove the non functional pods
-        launched.remove(removeIndex);
-        removeCounter++;
+  /**
+   * @return number of pods refused because their waiting track was full, without or after waiting
+   */
+  public long getNumShed() {
+    return numRejected.get() + numTimedOut.get();
+  }
 
+  /**
+   * @return number of pods refused by the timed createPod() after waiting for room in vain
+   */
+  public long getNumTimedOut() {
+    return numTimedOut.get();
+  }
+
+  /**
+   * @return number of pods admitted by the timed or blocking createPod() only after waiting
+   */
+  public long getNumDelayed() {
+    return numDelayed.get();
+  }
+
+  /**
+   * Gives back the place of a pod that left a waiting track
+   */
+  private void releasePlace(int podClass) {
+    Semaphore[] permits = admission;
+    if (permits != null) {
+      permits[podClass].release();
+    }
+  }
+
+  /**
+   * Indexes launches by sequence number and launch time, so that findLaunch() is O(1) and
+   * getLaunchedBetween() O(log n + k), where walking the launched track would be O(n). Every
+   * launch is stamped with both whether or not the index is enabled (see Pod.getLaunchSequence());
+   * the index covers the launches made after this call. Pods that leave the launched track, by
+   * clearMalfunctioning(), removePod() or retention, leave a tombstone, so sequence numbers keep
+   * their meaning. Costs about 16 bytes per launch still in the index.
+   */
+  public void enableLaunchIndex() {
+    if (launchIndex == null) {
+      launchIndex = new LaunchIndex();
+    }
+  }
+
+  /**
+   * Looks up a launch by its sequence number, e.g. the millionth launch, see enableLaunchIndex()
+   * 
+   * @param sequence the launch sequence number, from 1
+   * @return the pod, or null if it has left the launched track or was launched before the index
+   *         was enabled
+   * @throws IllegalStateException if enableLaunchIndex() has not been called
+   */
+  public Pod findLaunch(long sequence) {
+    return requireLaunchIndex().get(sequence);
+  }
+
+  /**
+   * Finds the pods launched in a time range, e.g. between 08:00 and 08:15, see enableLaunchIndex()
+   * 
+   * @param fromMillis earliest launch time, inclusive, in milliseconds of the station's clock
+   * @param toMillis   latest launch time, inclusive
+   * @return the pods launched in the range that are still on the launched track, in launch order
+   * @throws IllegalStateException if enableLaunchIndex() has not been called
+   */
+  public List<Pod> getLaunchedBetween(long fromMillis, long toMillis) {
+    return requireLaunchIndex().between(fromMillis, toMillis);
+  }
+
+  private LaunchIndex requireLaunchIndex() {
+    if (launchIndex == null) {
+      throw new IllegalStateException("The launch index is not enabled for this station");
+    }
+    return launchIndex;
+  }
+
+  /**
+   * Keeps every passenger on this station's tracks in a PassengerIndex, sorted by name, so that
+   * findPassengersByPrefix() answers in O(log n + k). Enabling indexes the current passengers in
+   * one O(n log n) pass; afterwards each boarding or cancellation costs O(log n).
+   */
+  public void enablePassengerIndex() {
+
+    if (passengerIndex != null) {
+      return;
+    }
+
+    PassengerIndex index = new PassengerIndex(this);
+    index.addAll(launched);
+    index.addAll(waitingFirst);
+    index.addAll(waitingEconomy);
+    addListener(index);
+    passengerIndex = index;
+
+  }
+
+  /**
+   * Finds the passengers on this station whose names start with a prefix, see
+   * PassengerIndex.findByPrefix()
+   * 
+   * @param prefix the start of the name
+   * @param limit  most matches returned
+   * @return up to limit matches, in name order, each with its pod and track
+   * @throws IllegalStateException if enablePassengerIndex() has not been called
+   */
+  public List<PassengerIndex.Match> findPassengersByPrefix(String prefix, int limit) {
+
+    if (passengerIndex == null) {
+      throw new IllegalStateException("The passenger index is not enabled for this station");
+    }
+
+    return passengerIndex.findByPrefix(prefix, limit);
+  }
+
+  /**
+   * Starts a query over the pods of this station, matching every pod on its tracks until narrowed
+   * by the query's filter methods
+   * 
+   * @return a new query
+   */
+  public PodQuery query() {
+    return new PodQuery(columns);
+  }
+
+  /**
+   * Removes all malfunctioning pods from the launched track. Pods report their own malfunctions to
+   * the track, so this only touches the failed pods.
+   * 
+   * @return number of malfunctioning pods removed
+   */
+  public int clearMalfunctioning() {
+
+    FlightEvents.MalfunctionSweep event = new FlightEvents.MalfunctionSweep();
+    event.begin();
+    int launchedPods = launched.size();
+
+    List<Pod> removed = new ArrayList<>();
+    launched.removeFailed(removed);
+
+    for (Pod pod : removed) {
+      podsById.remove(pod.getId());
+      if (launchIndex != null) {
+        launchIndex.remove(pod);
       }
+      for (StationListener listener : listeners) {
+        listener.podRemoved(pod);
+      }
+    }
+
+    if (event.shouldCommit()) {
+      event.launchedPods = launchedPods;
+      event.podsRemoved = removed.size();
+      event.commit();
     }
 
-    return removeCounter;
+    return removed.size();
+  }
+
+  /**
+   * Runs malfunction checks on the next slice of launched pods, see Track.checkHealth
+   * 
+   * @param sliceSize maximum number of pods to check
+   * @return number of pods found to have newly malfunctioned
+   */
+  public int checkHealth(int sliceSize) {
+
+    FlightEvents.HealthCheck event = new FlightEvents.HealthCheck();
+    event.begin();
 
+    int newlyFailed = launched.checkHealth(sliceSize);
+
+    if (event.shouldCommit()) {
+      event.podsScanned = Math.min(sliceSize, launched.size());
+      event.podsFailed = newlyFailed;
+      event.commit();
+    }
+
+    return newlyFailed;
   }
 
   /**
@@ -62,6 +587,8 @@ public class LoopStation {
    * @param capacity     number of passengers the pod can hold
    * @param isFirstClass true if first class pod, false if economy
    * @return the newly created Pod
+   * @throws IllegalStateException if waiting limits are set and the track is full, see
+   *                               setWaitingLimits()
    */
   public Pod createPod(int capacity, boolean isFirstClass) {
 
@@ -71,102 +598,548 @@ public class LoopStation {
       podClass = 0;
     }
 
-    // Creating the pod and adding it to the correct waiting
-    Pod newPod = new Pod(capacity, podClass);
+    Semaphore[] permits = admission;
+    if (permits != null && !permits[podClass].tryAcquire()) {
+      numRejected.incrementAndGet();
+      throw new IllegalStateException("Waiting track is full");
+    }
+
+    return addWaiting(capacity, podClass);
+
+  }
+
+  /**
+   * Creates a new pod like createPod(), unless its waiting track is full, see setWaitingLimits()
+   * 
+   * @param capacity     number of passengers the pod can hold
+   * @param isFirstClass true if first class pod, false if economy
+   * @return the newly created Pod, or null if the track was full
+   */
+  public Pod tryCreatePod(int capacity, boolean isFirstClass) {
+
+    int podClass = isFirstClass ? Pod.FIRST : Pod.ECONOMY;
+
+    Semaphore[] permits = admission;
+    if (permits != null && !permits[podClass].tryAcquire()) {
+      numRejected.incrementAndGet();
+      return null;
+    }
+
+    synchronized (this) {
+      return addWaiting(capacity, podClass);
+    }
+  }
+
+  /**
+   * Creates a new pod like createPod(), first waiting up to a timeout for its waiting track to have
+   * room, see setWaitingLimits(). Must not be called while holding the station's monitor.
+   * 
+   * @param capacity     number of passengers the pod can hold
+   * @param isFirstClass true if first class pod, false if economy
+   * @param timeout      longest time to wait for room
+   * @param unit         unit of timeout
+   * @return the newly created Pod, or null if the track was still full after the timeout
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  public Pod createPod(int capacity, boolean isFirstClass, long timeout, TimeUnit unit)
+      throws InterruptedException {
+
+    int podClass = isFirstClass ? Pod.FIRST : Pod.ECONOMY;
+
+    Semaphore[] permits = admission;
+    if (permits != null && !permits[podClass].tryAcquire(0, TimeUnit.NANOSECONDS)) {
+      if (!permits[podClass].tryAcquire(timeout, unit)) {
+        numTimedOut.incrementAndGet();
+        return null;
+      }
+      numDelayed.incrementAndGet();
+    }
+
+    synchronized (this) {
+      return addWaiting(capacity, podClass);
+    }
+  }
+
+  /**
+   * Creates a new pod like createPod(), first waiting as long as it takes for its waiting track to
+   * have room, see setWaitingLimits(). Must not be called while holding the station's monitor.
+   * 
+   * @param capacity     number of passengers the pod can hold
+   * @param isFirstClass true if first class pod, false if economy
+   * @return the newly created Pod
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  public Pod createPodBlocking(int capacity, boolean isFirstClass) throws InterruptedException {
+
+    int podClass = isFirstClass ? Pod.FIRST : Pod.ECONOMY;
+
+    Semaphore[] permits = admission;
+    if (permits != null && !permits[podClass].tryAcquire(0, TimeUnit.NANOSECONDS)) {
+      permits[podClass].acquire();
+      numDelayed.incrementAndGet();
+    }
+
+    synchronized (this) {
+      return addWaiting(capacity, podClass);
+    }
+  }
+
+  /**
+   * Creates a pod on the waiting track of its class, which has room for it
+   */
+  private Pod addWaiting(int capacity, int podClass) {
+
+    FlightEvents.PodCreate event = new FlightEvents.PodCreate();
+    event.begin();
+
+    boolean isFirstClass = podClass == Pod.FIRST;
+
+    // an invalid capacity must not cost the track its place
+    Pod newPod;
+    try {
+      newPod = new Pod(capacity, podClass);
+    } catch (IllegalArgumentException e) {
+      releasePlace(podClass);
+      throw e;
+    }
+
+    // adding it to the correct waiting
     if (isFirstClass) {
       waitingFirst.add(newPod);
     } else {
       waitingEconomy.add(newPod);
     }
+    podsById.put(newPod.getId(), newPod);
+    for (StationListener listener : listeners) {
+      listener.podCreated(newPod);
+    }
+
+    if (event.shouldCommit()) {
+      event.podId = newPod.getId();
+      event.firstClass = isFirstClass;
+      event.capacity = capacity;
+      event.commit();
+    }
 
     return newPod;
 
   }
 
+  /**
+   * Keeps a seat on a waiting pod for a limited time, see Track.holdSeat()
+   * 
+   * @param name         passenger the seat is kept for
+   * @param isFirstClass true for first class, false for economy
+   * @param ttlMillis    how long the seat is kept, in milliseconds
+   * @return the hold, or null if no waiting pod of the class has a free seat
+   */
+  public SeatHold holdSeat(String name, boolean isFirstClass, long ttlMillis) {
+    return (isFirstClass ? waitingFirst : waitingEconomy).holdSeat(name, isFirstClass, ttlMillis);
+  }
+
+  /**
+   * Gives back the seats of the expired holds on every track, see Track.expireHolds()
+   * 
+   * @return number of holds that expired
+   */
+  public int expireHolds() {
+    return launched.expireHolds() + waitingFirst.expireHolds() + waitingEconomy.expireHolds();
+  }
+
+  /**
+   * Consolidates both waiting tracks without a time limit, see consolidate(long)
+   * 
+   * @return what the run did
+   */
+  public ConsolidationReport consolidate() {
+    return consolidate(Long.MAX_VALUE);
+  }
+
+  /**
+   * Moves passengers between same-class waiting pods so that they fill as few pods as possible,
+   * then retires the pods that were emptied, so the station launches fewer pods for the same
+   * passengers. Pods that were already empty, malfunctioning pods and pods with held seats are left
+   * alone.
+   * 
+   * Within a track, the partially filled pods are sorted by occupancy; the least occupied pod
+   * repeatedly hands its passengers to the most occupied pod that still has free seats until it is
+   * empty. Sorting dominates, so a run is O(n log n) in the number of waiting pods.
+   * 
+   * @param maxNanos time budget in nanoseconds; the run stops early once it is spent
+   * @return what the run did
+   */
+  public ConsolidationReport consolidate(long maxNanos) {
+
+    long start = System.nanoTime();
+    long deadline = maxNanos == Long.MAX_VALUE ? Long.MAX_VALUE : start + maxNanos;
+    int[] counts = new int[2]; // pods retired, passengers moved
+
+    boolean complete = consolidateTrack(waitingFirst, deadline, counts)
+        && consolidateTrack(waitingEconomy, deadline, counts);
+
+    return new ConsolidationReport(counts[0], counts[1], System.nanoTime() - start, complete);
+  }
+
+  /**
+   * Consolidates one waiting track, see consolidate(long)
+   * 
+   * @param track    the track to consolidate
+   * @param deadline System.nanoTime() value at which to stop
+   * @param counts   pods retired and passengers moved so far, updated in place
+   * @return true if the track was fully consolidated
+   */
+  private boolean consolidateTrack(Track track, long deadline, int[] counts) {
+
+    // Collect functional, partially filled pods keyed by (occupancy, position); a pod with held
+    // seats stays as it is, so that confirming a hold boards the pod the passenger was promised
+    Pod[] pods = new Pod[track.size()];
+    long[] keys = new long[track.size()];
+    int numPods = 0;
+
+    LinkedNode current = track.head;
+    while (current != null) {
+      Pod pod = current.getPod();
+      int occupied = pod.peekNumPassengers();
+      if (pod.peekFunctional() && pod.peekNumHeld() == 0 && occupied > 0
+          && occupied < pod.peekCapacity()) {
+        pods[numPods] = pod;
+        keys[numPods] = ((long) occupied << 32) | numPods;
+        numPods++;
+      }
+      current = current.getNext();
+    }
+
+    Arrays.sort(keys, 0, numPods);
+
+    // donors come from the least occupied end, receivers from the most occupied end
+    int donorIndex = 0;
+    int receiverIndex = numPods - 1;
+    int steps = 0;
+
+    try {
+
+      while (donorIndex < receiverIndex) {
+
+        if ((++steps & 255) == 0 && deadline != Long.MAX_VALUE
+            && System.nanoTime() - deadline > 0) {
+          return false;
+        }
+
+        Pod donor = pods[(int) keys[donorIndex]];
+        Pod receiver = pods[(int) keys[receiverIndex]];
+
+        int free = receiver.peekCapacity() - receiver.peekNumPassengers();
+        if (free == 0) {
+          receiverIndex--;
+          continue;
+        }
+
+        while (free > 0 && donor.peekNumPassengers() > 0) {
+          String name = donor.peekLastPassenger();
+          donor.removePassenger(name);
+          receiver.addPassenger(name);
+          free--;
+          counts[1]++;
+        }
+
+        if (donor.peekNumPassengers() == 0) {
+          removePod(donor);
+          counts[0]++;
+          donorIndex++;
+        }
+      }
+
+    } catch (MalfunctioningPodException e) {
+      // only functional pods were collected and moving passengers cannot break them
+      e.printStackTrace();
+    }
+
+    return true;
+  }
+
   /**
    * Launches next pod from waiting tracks, prioritizing first class. First class launches from back
-   * (LIFO), economy from front (FIFO)
+   * (LIFO), economy from front (FIFO). The pod's node moves onto the launched track, so launching
+   * does not allocate.
    * 
+   * @return the launched pod
    * @throws NoSuchElementException if no pods are waiting
    */
-  public void launchPod() {
+  public Pod launchPod() {
+
+    FlightEvents.PodLaunch event = new FlightEvents.PodLaunch();
+    event.begin();
 
     Pod launch;
 
     // First class pods launched first
     if (!waitingFirst.isEmpty()) {
 
-      launch = waitingFirst.remove(waitingFirst.size() - 1);
-      launched.add(launch);
+      launch = waitingFirst.moveTo(waitingFirst.size() - 1, launched);
+      releasePlace(Pod.FIRST);
 
     } else if (!waitingEconomy.isEmpty()) { // If no first class pods, then launch economy pods
 
-      launch = waitingEconomy.remove(0);
-      launched.add(launch);
+      launch = waitingEconomy.moveTo(0, launched);
+      releasePlace(Pod.ECONOMY);
 
     } else { // No waiting pods
       throw new NoSuchElementException();
     }
 
+    lastLaunchMillis = Math.max(lastLaunchMillis, clock.getAsLong());
+    launch.stampLaunch(++numLaunches, lastLaunchMillis);
+    if (launchIndex != null) {
+      launchIndex.add(launch, numLaunches, lastLaunchMillis);
+    }
+
+    for (StationListener listener : listeners) {
+      listener.podLaunched(launch);
+    }
+
+    int spilled = 0;
+    if (archive != null) {
+      launchOrder.add(new Launch(launch, lastLaunchMillis));
+      try {
+        spilled = spill(SPILL_BATCH);
+      } catch (IOException e) {
+        // the pods stay in memory and are spilled by a later launch
+        e.printStackTrace();
+      }
+    }
+
+    if (event.shouldCommit()) {
+      event.podId = launch.getId();
+      event.firstClass = launch.peekPodClass() == Pod.FIRST;
+      event.sequence = numLaunches;
+      event.podsSpilled = spilled;
+      event.commit();
+    }
+
+    return launch;
+  }
+
+  /**
+   * Takes in a pod arriving from another station, e.g. at the end of a HyperloopNetwork trip. The
+   * pod joins the waiting track of its class as if created here, passengers included, and launches
+   * from here like any other waiting pod; listeners are told of the pod and of each passenger.
+   * 
+   * @param pod a functional pod that is on no track
+   * @return true if the pod was taken in, false if its waiting track is full, see
+   *         setWaitingLimits()
+   * @throws IllegalArgumentException if the pod is on a track or malfunctioning
+   */
+  public boolean receivePod(Pod pod) {
+
+    if (pod.getTrack() != null || !pod.peekFunctional()) {
+      throw new IllegalArgumentException("Cannot receive pod " + pod.getId());
+    }
+
+    int podClass = pod.peekPodClass();
+    Semaphore[] permits = admission;
+    if (permits != null && !permits[podClass].tryAcquire()) {
+      return false;
+    }
+
+    if (podClass == Pod.FIRST) {
+      waitingFirst.add(pod);
+    } else {
+      waitingEconomy.add(pod);
+    }
+    podsById.put(pod.getId(), pod);
+    for (StationListener listener : listeners) {
+      listener.podCreated(pod);
+      for (String name : pod.peekPassengers()) {
+        if (name != null) {
+          listener.passengerAdded(pod, name);
+        }
+      }
+    }
+    return true;
+
+  }
+
+  /**
+   * Puts the pods of a manifest on this station's empty tracks, one pass per track, see
+   * ManifestLoader. Each list must already be in the order the track would have after add()ing its
+   * pods in manifest order. No listener is told, as nothing has subscribed to a station being
+   * built.
+   * 
+   * @param firstOrder    first class waiting pods, in final track order
+   * @param economyOrder  economy waiting pods, in final track order
+   * @param launchedOrder launched pods, in final track order
+   */
+  void loadPods(List<Pod> firstOrder, List<Pod> economyOrder, List<Pod> launchedOrder) {
+
+    waitingFirst.addAllLast(firstOrder);
+    waitingEconomy.addAllLast(economyOrder);
+    launched.addAllLast(launchedOrder);
+
+    for (List<Pod> pods : Arrays.asList(firstOrder, economyOrder, launchedOrder)) {
+      for (Pod pod : pods) {
+        podsById.put(pod.getId(), pod);
+      }
+    }
+
   }
 
   /**
-   * @return number of pods that have been launched
+   * Looks up a pod of this station by its ID, in O(1)
+   * 
+   * @param id the ID of the pod, see Pod.getId()
+   * @return the pod, or null if no pod with that ID is on one of this station's tracks
+   */
+  public Pod findPod(long id) {
+
+    Pod pod = podsById.get(id);
+
+    if (pod == null) {
+      return null;
+    }
+
+    // the tracks are protected and may have been changed directly, so verify before answering
+    if (getTrackOf(pod) == null) {
+      podsById.remove(id);
+      return null;
+    }
+
+    return pod;
+  }
+
+  /**
+   * Finds which of this station's tracks a pod is on, in O(1)
+   * 
+   * @param pod the pod to locate
+   * @return launched, waitingFirst or waitingEconomy, or null if the pod is on none of them
+   */
+  public Track getTrackOf(Pod pod) {
+
+    Track track = pod.getTrack();
+
+    if (track == launched || track == waitingFirst || track == waitingEconomy) {
+      return track;
+    }
+
+    return null;
+  }
+
+  /**
+   * Removes a pod from whichever of this station's tracks it is on, in O(1)
+   * 
+   * @param pod the pod to remove
+   * @return true if the pod was removed, false if it was not on one of this station's tracks
+   */
+  public boolean removePod(Pod pod) {
+
+    Track track = getTrackOf(pod);
+
+    if (track == null) {
+      return false;
+    }
+
+    track.remove(pod);
+    podsById.remove(pod.getId());
+    if (track == waitingFirst) {
+      releasePlace(Pod.FIRST);
+    } else if (track == waitingEconomy) {
+      releasePlace(Pod.ECONOMY);
+    } else if (launchIndex != null) {
+      launchIndex.remove(pod);
+    }
+    for (StationListener listener : listeners) {
+      listener.podRemoved(pod);
+    }
+    return true;
+  }
+
+  /**
+   * @return number of pods that have been launched, including pods spilled to disk
+   * @throws ArithmeticException if that is more than Integer.MAX_VALUE, see getNumArchived()
    */
   public int getNumLaunched() {
-    return launched.size();
+    return Math.toIntExact(getNumArchived() + launched.size());
   }
 
   /**
-   * Counts total passengers in all pods (launched and waiting)
+   * Returns a launched pod by position in the whole launched history: first the pods spilled to
+   * disk, oldest first, then the launched track in memory
    * 
-   * @return total number of passengers in the station
+   * @param index position of the pod, from 0 to getNumLaunched() - 1
+   * @return the pod; spilled pods are read back as detached copies
+   * @throws IndexOutOfBoundsException if index is invalid
+   * @throws UncheckedIOException      if a spilled pod cannot be read
    */
-  public int getNumPassengers() {
+  public Pod getLaunchedPod(long index) {
 
-    int total = 0;
-    LinkedNode current;
+    long archived = getNumArchived();
+
+    if (index >= archived) {
+      return launched.get(Math.toIntExact(index - archived));
+    }
 
     try {
+      return archive.get(index);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
 
-      // launched
-      if (!launched.isEmpty()) {
-        current = launched.head;
-        for (int i = 0; i < launched.size(); i++) {
-          total += current.getPod().getNumPassengers();
-          if (current.getNext() != null) {
-            current = current.getNext();
-          }
-        }
-      }
+  /**
+   * Finds the pod carrying a passenger, searching the launched history (in memory, then on disk)
+   * and then the first class and economy waiting tracks
+   * 
+   * @param name passenger name to search for
+   * @return the first pod found containing the passenger, or null if not found
+   * @throws UncheckedIOException if the spilled pods cannot be read
+   */
+  public Pod findPassenger(String name) {
 
-      // waitingFirst
-      if (!waitingFirst.isEmpty()) {
-        current = waitingFirst.head;
-        for (int i = 0; i < waitingFirst.size(); i++) {
-          total += current.getPod().getNumPassengers();
-          if (current.getNext() != null) {
-            current = current.getNext();
-          }
-        }
+    int index = launched.findPassenger(name);
+    if (index != -1) {
+      return launched.get(index);
+    }
+
+    if (archive != null) {
+      long position;
+      try {
+        position = archive.findPassenger(name);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
       }
+      if (position != -1) {
+        return getLaunchedPod(position);
+      }
+    }
 
-      // waitingEconomy
-      if (!waitingEconomy.isEmpty()) {
-        current = waitingEconomy.head;
-        for (int i = 0; i < waitingEconomy.size(); i++) {
-          total += current.getPod().getNumPassengers();
-          if (current.getNext() != null) {
-            current = current.getNext();
-          }
-        }
+    for (Track track : new Track[] {waitingFirst, waitingEconomy}) {
+      index = track.findPassenger(name);
+      if (index != -1) {
+        return track.get(index);
       }
+    }
 
-    } catch (MalfunctioningPodException e) {
-      e.printStackTrace();
+    return null;
+  }
+
+  /**
+   * Counts total passengers in all functional pods (launched and waiting, spilled to disk or not),
+   * by summing the occupancy column rather than walking the tracks. Passengers on malfunctioning
+   * pods are not counted, as Pod.getNumPassengers() does not report them either; the same rule
+   * holds for the archive and for StationPipeline snapshots.
+   * 
+   * @return total number of passengers in the station
+   * @throws ArithmeticException if that is more than Integer.MAX_VALUE
+   */
+  public int getNumPassengers() {
+
+    long total = query().functional().aggregate().getPassengers();
+
+    // spilled pods
+    if (archive != null) {
+      total += archive.getNumPassengers();
     }
 
-    return total;
+    return Math.toIntExact(total);
 
   }
 
@@ -177,4 +1150,26 @@ public class LoopStation {
     return waitingEconomy.size() + waitingFirst.size();
   }
 
+  /**
+   * Estimates the heap this station holds from its pod and seat counts and the indexes enabled,
+   * without walking the heap. Passenger names are left out, as callers usually share them, and so
+   * are pods spilled to disk. Costs a scan of the pod columns; must not run while another thread
+   * changes the station.
+   * 
+   * @return estimated heap held, in bytes
+   */
+  public long estimateBytes() {
+
+    PodQuery.Aggregate pods = query().aggregate();
+    long bytes = EMPTY_BYTES + pods.getCount() * POD_BYTES + pods.getSeats() * SEAT_BYTES;
+
+    if (launchIndex != null) {
+      bytes += launchIndex.getNumBlocks() * (LaunchIndex.BLOCK * 12L + 48);
+    }
+    if (passengerIndex != null) {
+      bytes += passengerIndex.size() * 48L; // a tree map entry per passenger
+    }
+    return bytes + launchOrder.size() * 24L;
+  }
+
 }
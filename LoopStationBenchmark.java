@@ -0,0 +1,1594 @@
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Micro-benchmarks for the LoopStation and Track classes. Run with the name of a scenario, or with
+ * no arguments to run all of them:
+ *
+ * <pre>
+ * java LoopStationBenchmark [scenario...]
+ * </pre>
+ *
+ * These are plain System.nanoTime() harnesses, so treat the numbers as relative comparisons
+ * between configurations rather than absolute costs.
+ */
+public class LoopStationBenchmark {
+
+  /**
+   * Number of createPod/addPassenger/launchPod rounds performed in total by all producers
+   */
+  private static final int PIPELINE_ROUNDS = 200_000;
+
+  /**
+   * Number of pods kept on the track while measuring reader latency
+   */
+  private static final int SNAPSHOT_TRACK_SIZE = 100_000;
+
+  /**
+   * Number of reads timed for each configuration
+   */
+  private static final int SNAPSHOT_READS = 200_000;
+
+  /**
+   * Number of pods launched per measurement of the allocation benchmark
+   */
+  private static final int ALLOC_LAUNCHES = 1_000_000;
+
+  /**
+   * Track sizes used by the positional access benchmark
+   */
+  private static final int[] INDEXED_SIZES = {1_000, 10_000, 100_000, 300_000};
+
+  /**
+   * Number of positional get/remove operations timed per track size
+   */
+  private static final int INDEXED_OPS = 2_000;
+
+  /**
+   * Number of waiting pods per class in the consolidation benchmark
+   */
+  private static final int CONSOLIDATE_PODS = 100_000;
+
+  /**
+   * Number of launched pods in the passenger filter benchmark; the 10M-pod history needs a large
+   * heap, so the default is smaller (override with -Dbloom.pods=10000000)
+   */
+  private static final int BLOOM_PODS = Integer.getInteger("bloom.pods", 1_000_000);
+
+  /**
+   * Number of lookups timed per configuration in the passenger filter benchmark
+   */
+  private static final int BLOOM_LOOKUPS = 200;
+
+  /**
+   * Simulated days of the retention benchmark, with one launch per simulated second
+   */
+  private static final int RETENTION_DAYS = 7;
+
+  /**
+   * Launched pods kept in memory by the retention benchmark
+   */
+  private static final int RETENTION_PODS = 10_000;
+
+  /**
+   * How long the retention benchmark keeps launched pods in memory, in milliseconds
+   */
+  private static final long RETENTION_MILLIS = 10 * 60_000;
+
+  /**
+   * Number of pods in the station queried by the query benchmark
+   */
+  private static final int QUERY_PODS = 1_000_000;
+
+  /**
+   * Number of times each query is timed
+   */
+  private static final int QUERY_RUNS = 20;
+
+  /**
+   * Number of createPod/addPassenger/launchPod rounds timed per event stream configuration
+   */
+  private static final int EVENT_ROUNDS = 500_000;
+
+  /**
+   * Number of full economy pods searched past before the free seats in the group benchmark
+   */
+  private static final int GROUP_FULL_PODS = 100_000;
+
+  /**
+   * Passengers per booking in the group benchmark
+   */
+  private static final int GROUP_SIZE = 40;
+
+  /**
+   * Number of pods in the manifest benchmark, with four seats and three passengers each
+   */
+  private static final int MANIFEST_PODS = 1_000_000;
+
+  /**
+   * Pods launched per second in the admission benchmark
+   */
+  private static final int ADMISSION_LAUNCH_RATE = 20_000;
+
+  /**
+   * Pods offered per second in the admission benchmark, as a multiple of the launch rate
+   */
+  private static final double ADMISSION_OVERLOAD = 1.5;
+
+  /**
+   * Threads creating pods in the admission benchmark
+   */
+  private static final int ADMISSION_PRODUCERS = 2;
+
+  /**
+   * Length of each admission benchmark run, in milliseconds
+   */
+  private static final long ADMISSION_MILLIS = 5_000;
+
+  /**
+   * Waiting limits per class in the admission benchmark, about 50 ms of launches
+   */
+  private static final int ADMISSION_MAX_FIRST = 200, ADMISSION_MAX_ECONOMY = 800;
+
+  /**
+   * How long a producer waits for room before shedding its pod, in microseconds
+   */
+  private static final long ADMISSION_TIMEOUT_MICROS = 500;
+
+  /**
+   * Seat holds outstanding at once in the holds benchmark
+   */
+  private static final int HOLDS = 1_000_000;
+
+  /**
+   * Longest hold in the holds benchmark, in milliseconds; holds last 1 ms to this long
+   */
+  private static final int HOLD_MAX_MILLIS = 15 * 60_000;
+
+  /**
+   * Expiries performed by scanning in the holds benchmark, which are too slow to do HOLDS of
+   */
+  private static final int HOLD_SCANS = 200;
+
+  /**
+   * Passengers on the station in the prefix benchmark, four per pod
+   */
+  private static final int PREFIX_PASSENGERS = Integer.getInteger("prefix.passengers", 5_000_000);
+
+  /**
+   * Prefix queries timed in the prefix benchmark
+   */
+  private static final int PREFIX_QUERIES = 20_000;
+
+  /**
+   * Matches returned per prefix query
+   */
+  private static final int PREFIX_LIMIT = 10;
+
+  /**
+   * Launches over one simulated day in the launch log benchmark
+   */
+  private static final int LAUNCH_LOG_PODS = 1_000_000;
+
+  /**
+   * Lookups timed per kind in the launch log benchmark
+   */
+  private static final int LAUNCH_LOG_LOOKUPS = 1_000;
+
+  /**
+   * Column slots scanned in the kernels benchmark
+   */
+  private static final int KERNEL_SLOTS = 10_000_000;
+
+  /**
+   * Scans timed per kernel and operation in the kernels benchmark, after as many warm-up scans
+   */
+  private static final int KERNEL_SCANS = 20;
+
+  /**
+   * Rounds of create, board, search and launch timed per mode in the flight benchmark
+   */
+  private static final int FLIGHT_ROUNDS = 500_000;
+
+  /**
+   * Runs per mode in the flight benchmark, interleaved so that each mode sees the JIT and the heap
+   * in every state
+   */
+  private static final int FLIGHT_REPEATS = 5;
+
+  /**
+   * Stations in the network benchmark, laid out on a grid NETWORK_COLUMNS wide
+   */
+  private static final int NETWORK_STATIONS = 5_000;
+
+  /**
+   * Width of the network benchmark's grid
+   */
+  private static final int NETWORK_COLUMNS = 100;
+
+  /**
+   * Route lookups timed in the network benchmark
+   */
+  private static final int NETWORK_LOOKUPS = 1_000_000;
+
+  /**
+   * Link changes made in the network benchmark
+   */
+  private static final int NETWORK_CHANGES = 200;
+
+  /**
+   * Stations registered in the registry benchmark
+   */
+  private static final int REGISTRY_STATIONS = 10_000;
+
+  /**
+   * Stations in use in the registry benchmark, one in twenty; the rest stay idle
+   */
+  private static final int REGISTRY_BUSY = REGISTRY_STATIONS / 20;
+
+  /**
+   * Pods on each station in use in the registry benchmark; one busy station has a hundred times
+   * as many
+   */
+  private static final int REGISTRY_PODS = 200;
+
+  /**
+   * Compares a single-writer StationPipeline with a LoopStation guarded by one lock, for 1 to 64
+   * producer threads that each create a pod, board a passenger and launch a pod per round
+   */
+  public static void benchPipeline() throws Exception {
+    System.out.println("== pipeline: ops/s (3 mutations per round) ==");
+    System.out.printf("%8s %15s %15s%n", "threads", "locked", "pipeline");
+    for (int threads = 1; threads <= 64; threads *= 2) {
+      // warm up both paths once before measuring
+      runLocked(threads, PIPELINE_ROUNDS / 4);
+      runPipeline(threads, PIPELINE_ROUNDS / 4);
+      double locked = runLocked(threads, PIPELINE_ROUNDS);
+      double pipeline = runPipeline(threads, PIPELINE_ROUNDS);
+      System.out.printf("%8d %15.0f %15.0f%n", threads, locked, pipeline);
+    }
+  }
+
+  /**
+   * @return mutations per second achieved with every producer synchronizing on the station
+   */
+  private static double runLocked(int threads, int rounds) throws InterruptedException {
+    LoopStation station = new LoopStation();
+    int perThread = rounds / threads;
+    return timeProducers(threads, () -> {
+      for (int i = 0; i < perThread; i++) {
+        Pod pod;
+        synchronized (station) {
+          pod = station.createPod(4, (i & 1) == 0);
+        }
+        synchronized (station) {
+          try {
+            pod.addPassenger("p" + i);
+          } catch (MalfunctioningPodException e) {
+            // the pod is still waiting and cannot have been checked, so this does not happen
+          }
+        }
+        synchronized (station) {
+          station.launchPod();
+        }
+      }
+    }, perThread * threads * 3L);
+  }
+
+  /**
+   * @return mutations per second achieved by submitting every mutation to a StationPipeline
+   */
+  private static double runPipeline(int threads, int rounds) throws InterruptedException {
+    LoopStation station = new LoopStation();
+    int perThread = rounds / threads;
+    double result;
+    try (StationPipeline pipeline = new StationPipeline(station, 4096, 512)) {
+      result = timeProducers(threads, () -> {
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < perThread; i++) {
+          String name = "p" + i;
+          pipeline.createPod(4, (i & 1) == 0).thenAccept(pod -> {
+            try {
+              pod.addPassenger(name); // runs on the writer thread when the pod is created
+            } catch (MalfunctioningPodException e) {
+              // the pod is still waiting and cannot have been checked, so this does not happen
+            }
+          });
+          last = pipeline.launchPod();
+        }
+        if (last != null) {
+          last.join();
+        }
+      }, perThread * threads * 3L);
+    }
+    return result;
+  }
+
+  /**
+   * Starts the given number of threads running body at the same time and reports throughput
+   */
+  private static double timeProducers(int threads, Runnable body, long operations)
+      throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> producers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      Thread producer = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        body.run();
+      });
+      producer.start();
+      producers.add(producer);
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    long elapsed = System.nanoTime() - begin;
+    return operations * 1e9 / elapsed;
+  }
+
+  /**
+   * Measures reader latency while a writer thread churns the track. Both kinds of reader look up a
+   * random position, an O(log n) descent either way: snapshot readers in Track.snapshot(), locked
+   * readers in the live track (an IndexedTrack, so its get() is O(log n) too) while synchronizing
+   * with the writer.
+   */
+  public static void benchSnapshot() throws Exception {
+    System.out.println("== snapshot: reader latency (ns) with " + SNAPSHOT_TRACK_SIZE + " pods ==");
+    System.out.printf("%-26s %10s %10s %10s%n", "configuration", "p50", "p99", "p99.9");
+    report("snapshot, writer idle", readLatencies(true, false));
+    report("snapshot, writer busy", readLatencies(true, true));
+    report("locked, writer idle", readLatencies(false, false));
+    report("locked, writer busy", readLatencies(false, true));
+  }
+
+  private static long[] readLatencies(boolean useSnapshots, boolean writerBusy)
+      throws InterruptedException {
+    Track track = new IndexedTrack();
+    for (int i = 0; i < SNAPSHOT_TRACK_SIZE; i++) {
+      track.add(new Pod(4, (i & 1) == 0 ? Pod.FIRST : Pod.ECONOMY));
+    }
+    track.enableSnapshots();
+
+    // the writer keeps the size constant: add at one end, remove at the other
+    Thread writer = new Thread(() -> {
+      while (!Thread.currentThread().isInterrupted()) {
+        if (useSnapshots) {
+          track.add(new Pod(4, Pod.ECONOMY));
+          track.remove(0);
+        } else {
+          synchronized (track) {
+            track.add(new Pod(4, Pod.ECONOMY));
+            track.remove(0);
+          }
+        }
+      }
+    });
+    if (writerBusy) {
+      writer.start();
+    }
+
+    long[] latencies = new long[SNAPSHOT_READS];
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long sink = 0;
+    for (int i = 0; i < SNAPSHOT_READS; i++) {
+      long begin = System.nanoTime();
+      if (useSnapshots) {
+        TrackSnapshot snapshot = track.snapshot();
+        sink += snapshot.get(random.nextInt(snapshot.size())).hashCode();
+      } else {
+        synchronized (track) {
+          sink += track.get(random.nextInt(track.size())).hashCode();
+        }
+      }
+      latencies[i] = System.nanoTime() - begin;
+    }
+
+    writer.interrupt();
+    writer.join();
+    if (sink == 42) {
+      System.out.print("");
+    }
+    return latencies;
+  }
+
+  private static void report(String label, long[] latencies) {
+    Arrays.sort(latencies);
+    System.out.printf("%-26s %10d %10d %10d%n", label, percentile(latencies, 0.50),
+        percentile(latencies, 0.99), percentile(latencies, 0.999));
+  }
+
+  private static long percentile(long[] sorted, double fraction) {
+    return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+  }
+
+  /**
+   * Reports heap bytes allocated per launch, comparing the old remove-then-add path with
+   * LoopStation.launchPod(), which moves the pod's node. Uses the per-thread allocation counter of
+   * the HotSpot ThreadMXBean, the same figure JMH's gc profiler reports as gc.alloc.rate.norm.
+   */
+  public static void benchAlloc() {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long self = Thread.currentThread().getId();
+    System.out.println("== alloc: bytes allocated per launch ==");
+    for (int round = 0; round < 3; round++) {
+      LoopStation removeThenAdd = fillWaiting();
+      long begin = threads.getThreadAllocatedBytes(self);
+      for (int i = 0; i < ALLOC_LAUNCHES; i++) {
+        if (!removeThenAdd.waitingFirst.isEmpty()) {
+          removeThenAdd.launched.add(removeThenAdd.waitingFirst.remove(0));
+        } else {
+          removeThenAdd.launched.add(removeThenAdd.waitingEconomy.remove(0));
+        }
+      }
+      double oldPath = (threads.getThreadAllocatedBytes(self) - begin) / (double) ALLOC_LAUNCHES;
+
+      LoopStation moving = fillWaiting();
+      begin = threads.getThreadAllocatedBytes(self);
+      for (int i = 0; i < ALLOC_LAUNCHES; i++) {
+        moving.launchPod();
+      }
+      double newPath = (threads.getThreadAllocatedBytes(self) - begin) / (double) ALLOC_LAUNCHES;
+
+      System.out.printf("round %d: remove+add %.2f B/launch, launchPod %.2f B/launch%n", round,
+          oldPath, newPath);
+    }
+  }
+
+  private static LoopStation fillWaiting() {
+    LoopStation station = new LoopStation();
+    for (int i = 0; i < ALLOC_LAUNCHES; i++) {
+      station.createPod(1, (i & 1) == 0);
+    }
+    return station;
+  }
+
+  /**
+   * Compares positional get() and remove() on Track and IndexedTrack at random positions. Each
+   * remove is followed by an add so the track keeps its size.
+   */
+  public static void benchIndexed() {
+    System.out.println("== indexed: ns per positional get / remove ==");
+    System.out.printf("%10s %14s %14s %14s %14s%n", "pods", "Track get", "Indexed get",
+        "Track remove", "Indexed remove");
+    for (int pods : INDEXED_SIZES) {
+      double[] plain = positionalCosts(new Track(), pods);
+      double[] indexed = positionalCosts(new IndexedTrack(), pods);
+      System.out.printf("%10d %14.0f %14.0f %14.0f %14.0f%n", pods, plain[0], indexed[0], plain[1],
+          indexed[1]);
+    }
+  }
+
+  /**
+   * @return average nanoseconds per get and per remove+add on the given track
+   */
+  private static double[] positionalCosts(Track track, int pods) {
+    for (int i = 0; i < pods; i++) {
+      track.add(new Pod(1, (i & 1) == 0 ? Pod.FIRST : Pod.ECONOMY));
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long sink = 0;
+
+    long begin = System.nanoTime();
+    for (int i = 0; i < INDEXED_OPS; i++) {
+      sink += track.get(random.nextInt(pods)).hashCode();
+    }
+    double get = (System.nanoTime() - begin) / (double) INDEXED_OPS;
+
+    begin = System.nanoTime();
+    for (int i = 0; i < INDEXED_OPS; i++) {
+      track.add(track.remove(random.nextInt(pods)));
+    }
+    double remove = (System.nanoTime() - begin) / (double) INDEXED_OPS;
+
+    if (sink == 42) {
+      System.out.print("");
+    }
+    return new double[] {get, remove};
+  }
+
+  /**
+   * Consolidates 100k waiting pods per class with random occupancy and reports the pods saved and
+   * the time spent per run
+   */
+  public static void benchConsolidate() throws MalfunctioningPodException {
+    System.out.println("== consolidate: " + CONSOLIDATE_PODS + " waiting pods per class ==");
+    for (int round = 0; round < 3; round++) {
+      LoopStation station = new LoopStation();
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      int passenger = 0;
+      for (int i = 0; i < CONSOLIDATE_PODS * 2; i++) {
+        Pod pod = station.createPod(8, i < CONSOLIDATE_PODS);
+        int people = random.nextInt(9);
+        for (int p = 0; p < people; p++) {
+          pod.addPassenger("p" + passenger++);
+        }
+      }
+      int waiting = station.getNumWaiting();
+      LoopStation.ConsolidationReport report = station.consolidate();
+      System.out.printf("round %d: %d -> %d pods to launch, %s%n", round, waiting,
+          station.getNumWaiting(), report);
+    }
+  }
+
+  /**
+   * Compares findPassenger() on a launched history with and without passenger filters, for lookups
+   * of passengers who are not on the track (the common case) and who are, and reports the filters'
+   * false positive rate
+   */
+  public static void benchBloom() throws MalfunctioningPodException {
+    System.out.println("== bloom: findPassenger over " + BLOOM_PODS + " launched pods ==");
+    Track plain = new Track();
+    Track filtered = new Track();
+    filtered.enablePassengerFilters();
+    for (int i = 0; i < BLOOM_PODS; i++) {
+      Pod pod = new Pod(1, Pod.ECONOMY);
+      Pod twin = new Pod(1, Pod.ECONOMY);
+      String name = "passenger" + i;
+      pod.addPassenger(name);
+      twin.addPassenger(name);
+      plain.add(pod);
+      filtered.add(twin);
+    }
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int round = 0; round < 2; round++) {
+      long plainMiss = 0;
+      long filteredMiss = 0;
+      long scannedBefore = filtered.getSegmentsScanned();
+      long skippedBefore = filtered.getSegmentsSkipped();
+      for (int i = 0; i < BLOOM_LOOKUPS; i++) {
+        String missing = "visitor" + random.nextInt();
+        long begin = System.nanoTime();
+        plain.findPassenger(missing);
+        plainMiss += System.nanoTime() - begin;
+        begin = System.nanoTime();
+        filtered.findPassenger(missing);
+        filteredMiss += System.nanoTime() - begin;
+      }
+      long scanned = filtered.getSegmentsScanned() - scannedBefore;
+      long probed = scanned + filtered.getSegmentsSkipped() - skippedBefore;
+
+      long plainHit = 0;
+      long filteredHit = 0;
+      for (int i = 0; i < BLOOM_LOOKUPS; i++) {
+        String present = "passenger" + random.nextInt(BLOOM_PODS);
+        long begin = System.nanoTime();
+        plain.findPassenger(present);
+        plainHit += System.nanoTime() - begin;
+        begin = System.nanoTime();
+        filtered.findPassenger(present);
+        filteredHit += System.nanoTime() - begin;
+      }
+
+      System.out.printf("round %d: miss %.3f ms -> %.3f ms (%.1fx), hit %.3f ms -> %.3f ms (%.1fx),"
+          + " false positive rate %.4f%%%n", round, plainMiss / 1e6 / BLOOM_LOOKUPS,
+          filteredMiss / 1e6 / BLOOM_LOOKUPS, plainMiss / (double) filteredMiss,
+          plainHit / 1e6 / BLOOM_LOOKUPS, filteredHit / 1e6 / BLOOM_LOOKUPS,
+          plainHit / (double) filteredHit, 100.0 * scanned / probed);
+    }
+  }
+
+  /**
+   * Simulates a week of launches, one per second, with and without retention, and reports the live
+   * heap at the end of every simulated day
+   */
+  public static void benchRetention() throws Exception {
+    System.out.println("== retention: a simulated week of launches, live heap per day ==");
+    for (boolean retain : new boolean[] {false, true}) {
+      java.io.File directory = java.nio.file.Files.createTempDirectory("retention").toFile();
+      long[] now = {0};
+      LoopStation station = new LoopStation();
+      station.setClock(() -> now[0]);
+      if (retain) {
+        station.enableRetention(RETENTION_PODS, RETENTION_MILLIS, directory);
+      }
+
+      long begin = System.nanoTime();
+      StringBuilder heap = new StringBuilder();
+      int launch = 0;
+      for (int day = 1; day <= RETENTION_DAYS; day++) {
+        for (int second = 0; second < 86_400; second++) {
+          Pod pod = station.createPod(2, launch % 4 == 0);
+          pod.addPassenger("rider" + (2 * launch));
+          pod.addPassenger("rider" + (2 * launch + 1));
+          station.launchPod();
+          now[0] += 1000;
+          launch++;
+        }
+        heap.append(String.format(" %.1f", usedHeapAfterGc() / 1e6));
+      }
+      long nanos = System.nanoTime() - begin;
+
+      long lookup = System.nanoTime();
+      Pod found = station.findPassenger("rider" + launch / 3);
+      lookup = System.nanoTime() - lookup;
+
+      System.out.printf("%s: %d launched (%d on disk), heap MB per day:%s; %.2f us/launch,"
+          + " oldest-day lookup %.2f ms (%s)%n", retain ? "retention" : "unbounded",
+          station.getNumLaunched(), station.getNumArchived(), heap, nanos / 1e3 / launch,
+          lookup / 1e6, found == null ? "missing" : "found");
+
+      station.closeArchive();
+      for (java.io.File file : directory.listFiles()) {
+        file.delete();
+      }
+      directory.delete();
+    }
+  }
+
+  private static long usedHeapAfterGc() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * Times three typical ops questions on a million-pod station, answered by walking the tracks with
+   * Pod getters and by PodQuery, sequentially and in parallel
+   */
+  public static void benchQuery() throws MalfunctioningPodException {
+    System.out.println("== query: ms per query over " + QUERY_PODS + " pods, "
+        + Runtime.getRuntime().availableProcessors() + " cores ==");
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    LoopStation station = new LoopStation();
+    for (int i = 0; i < QUERY_PODS; i++) {
+      Pod pod = station.createPod(1 + random.nextInt(20), random.nextInt(4) == 0);
+      for (int seats = random.nextInt(pod.peekCapacity() + 1); seats > 0; seats--) {
+        pod.addPassenger("rider");
+      }
+      if (random.nextInt(100) == 0) {
+        pod.setNonFunctional();
+      }
+      if ((i & 1) == 0) {
+        station.launchPod();
+      }
+    }
+
+    System.out.printf("%-34s %10s %10s %10s%n", "query", "loops", "sequential", "parallel");
+    reportQuery("economy pods over 80% full", () -> {
+      long count = 0;
+      for (Track track : new Track[] {station.launched, station.waitingFirst,
+          station.waitingEconomy}) {
+        for (LinkedNode node = track.head; node != null; node = node.getNext()) {
+          try {
+            Pod pod = node.getPod();
+            if (pod.getPodClass() == Pod.ECONOMY
+                && pod.getNumPassengers() > 0.8 * pod.getCapacity()) {
+              count++;
+            }
+          } catch (MalfunctioningPodException e) {
+            // the getters cannot answer for failed pods, so they are skipped
+          }
+        }
+      }
+      return count;
+    }, threshold -> station.query().economy().occupancyAbove(0.8).parallelAbove(threshold)
+        .count());
+    reportQuery("avg occupancy, launched first", () -> {
+      long passengers = 0;
+      long seats = 0;
+      for (LinkedNode node = station.launched.head; node != null; node = node.getNext()) {
+        try {
+          Pod pod = node.getPod();
+          if (pod.getPodClass() == Pod.FIRST) {
+            passengers += pod.getNumPassengers();
+            seats += pod.getCapacity();
+          }
+        } catch (MalfunctioningPodException e) {
+          // skipped, as above
+        }
+      }
+      return passengers + seats;
+    }, threshold -> station.query().launched().firstClass().parallelAbove(threshold).aggregate()
+        .getPassengers());
+    reportQuery("failed pods by capacity bucket", () -> {
+      long[] buckets = new long[5];
+      for (Track track : new Track[] {station.launched, station.waitingFirst,
+          station.waitingEconomy}) {
+        for (LinkedNode node = track.head; node != null; node = node.getNext()) {
+          Pod pod = node.getPod();
+          // the public getters throw on exactly these pods, so this needs the package accessors
+          if (!pod.peekFunctional()) {
+            buckets[pod.peekCapacity() / 5]++;
+          }
+        }
+      }
+      return buckets[0];
+    }, threshold -> station.query().failed().parallelAbove(threshold)
+        .groupBy(PodQuery.Key.CAPACITY, 5).size());
+  }
+
+  /**
+   * Prints the median time of a hand-written loop and of a query run sequentially and in parallel
+   */
+  private static void reportQuery(String name, LongSupplier loops, IntToLongFunction query) {
+    long[] loopNanos = new long[QUERY_RUNS];
+    long[] sequentialNanos = new long[QUERY_RUNS];
+    long[] parallelNanos = new long[QUERY_RUNS];
+    long sink = 0;
+    for (int run = 0; run < QUERY_RUNS; run++) {
+      long begin = System.nanoTime();
+      sink += loops.getAsLong();
+      loopNanos[run] = System.nanoTime() - begin;
+      begin = System.nanoTime();
+      sink += query.applyAsLong(Integer.MAX_VALUE);
+      sequentialNanos[run] = System.nanoTime() - begin;
+      begin = System.nanoTime();
+      sink += query.applyAsLong(1);
+      parallelNanos[run] = System.nanoTime() - begin;
+    }
+    Arrays.sort(loopNanos);
+    Arrays.sort(sequentialNanos);
+    Arrays.sort(parallelNanos);
+    System.out.printf("%-34s %10.2f %10.2f %10.2f%s%n", name, loopNanos[QUERY_RUNS / 2] / 1e6,
+        sequentialNanos[QUERY_RUNS / 2] / 1e6, parallelNanos[QUERY_RUNS / 2] / 1e6,
+        sink == 42 ? " " : "");
+  }
+
+  /**
+   * Measures what publishing events costs the station's thread: createPod/addPassenger/launchPod
+   * rounds (three events each) without a publisher, with one but no subscribers, and with a fast or
+   * slow subscriber under each overflow policy
+   */
+  public static void benchEvents() throws Exception {
+    System.out.println("== events: ns per create/board/launch round on the station thread ==");
+    String[] configs = {"no publisher", "no subscribers", "fast DROP", "slow DROP", "fast BLOCK"};
+    for (int round = 0; round < 2; round++) {
+      StringBuilder line = new StringBuilder("round " + round + ":");
+      for (String config : configs) {
+        LoopStation station = new LoopStation();
+        StationEventPublisher publisher = null;
+        if (!config.equals("no publisher")) {
+          publisher = new StationEventPublisher(station, 4096, 256,
+              config.endsWith("BLOCK") ? StationEventPublisher.Overflow.BLOCK
+                  : StationEventPublisher.Overflow.DROP);
+        }
+        CountDownLatch done = new CountDownLatch(publisher == null ? 0 : 1);
+        if (config.startsWith("fast") || config.startsWith("slow")) {
+          boolean slow = config.startsWith("slow");
+          publisher.subscribe(new java.util.concurrent.Flow.Subscriber<List<StationEvent>>() {
+            public void onSubscribe(java.util.concurrent.Flow.Subscription subscription) {
+              subscription.request(Long.MAX_VALUE);
+            }
+
+            public void onNext(List<StationEvent> batch) {
+              if (slow) {
+                java.util.concurrent.locks.LockSupport.parkNanos(1_000_000);
+              }
+            }
+
+            public void onError(Throwable error) {
+            }
+
+            public void onComplete() {
+              done.countDown();
+            }
+          });
+        } else if (publisher != null) {
+          done.countDown();
+        }
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < EVENT_ROUNDS; i++) {
+          station.createPod(1, false).addPassenger("rider");
+          station.launchPod();
+        }
+        long nanos = System.nanoTime() - begin;
+
+        if (publisher != null) {
+          publisher.close();
+          done.await();
+        }
+        line.append(String.format(" %s %.0f", config, nanos / (double) EVENT_ROUNDS));
+        if (publisher != null && publisher.getNumDropped() > 0) {
+          line.append(String.format(" (%.0f%% dropped)",
+              100.0 * publisher.getNumDropped() / publisher.getSequence()));
+        }
+        line.append(',');
+      }
+      line.setLength(line.length() - 1);
+      System.out.println(line);
+    }
+  }
+
+  /**
+   * Books a 40-person group on an economy track whose free seats sit behind many full pods, one
+   * addPassenger() per person versus one addGroup()
+   */
+  public static void benchGroup() throws MalfunctioningPodException {
+    System.out.println("== group: ms per " + GROUP_SIZE + "-person booking past " + GROUP_FULL_PODS
+        + " full pods ==");
+    List<String> group = new ArrayList<>();
+    for (int i = 0; i < GROUP_SIZE; i++) {
+      group.add("tourist" + i);
+    }
+    for (int round = 0; round < 5; round++) {
+      Track onePerPerson = groupTrack();
+      long begin = System.nanoTime();
+      for (String name : group) {
+        onePerPerson.addPassenger(name, false);
+      }
+      long individual = System.nanoTime() - begin;
+
+      Track grouped = groupTrack();
+      begin = System.nanoTime();
+      grouped.addGroup(group, false, Track.GroupPolicy.ADJACENT_PODS);
+      long together = System.nanoTime() - begin;
+
+      System.out.printf("round %d: addPassenger x%d %.2f ms, addGroup %.2f ms%n", round, GROUP_SIZE,
+          individual / 1e6, together / 1e6);
+    }
+  }
+
+  private static Track groupTrack() throws MalfunctioningPodException {
+    Track track = new Track();
+    for (int i = 0; i < GROUP_SIZE; i++) {
+      track.add(new Pod(4, Pod.ECONOMY)); // room near the head
+    }
+    for (int i = 0; i < GROUP_FULL_PODS; i++) {
+      Pod pod = new Pod(1, Pod.ECONOMY);
+      pod.addPassenger("resident" + i);
+      track.add(pod); // full pods between the tail and the room
+    }
+    return track;
+  }
+
+  /**
+   * Builds a station from a generated manifest file, line by line through createPod() and
+   * addPassenger() versus ManifestLoader, and reports passengers loaded per second
+   */
+  public static void benchManifest() throws Exception {
+    java.nio.file.Path file = java.nio.file.Files.createTempFile("manifest", ".csv");
+    try {
+      try (java.io.Writer out = java.nio.file.Files.newBufferedWriter(file)) {
+        for (int i = 0; i < MANIFEST_PODS; i++) {
+          out.write(i % 5 == 0 ? "W,F,4" : "W,E,4");
+          for (int seat = 0; seat < 3; seat++) {
+            out.write(",passenger" + i + "-" + seat);
+          }
+          out.write('\n');
+        }
+      }
+      long passengers = 3L * MANIFEST_PODS;
+      System.out.println("== manifest: " + MANIFEST_PODS + " pods, " + passengers + " passengers, "
+          + java.nio.file.Files.size(file) / 1_000_000 + " MB ==");
+
+      for (int round = 0; round < 3; round++) {
+        long begin = System.nanoTime();
+        LoopStation oneByOne = new LoopStation();
+        try (java.io.BufferedReader in = java.nio.file.Files.newBufferedReader(file)) {
+          String line;
+          while ((line = in.readLine()) != null) {
+            String[] fields = line.split(",");
+            Pod pod = oneByOne.createPod(Integer.parseInt(fields[2]), fields[1].equals("F"));
+            for (int i = 3; i < fields.length; i++) {
+              pod.addPassenger(fields[i]);
+            }
+          }
+        }
+        long slow = System.nanoTime() - begin;
+        oneByOne = null;
+
+        begin = System.nanoTime();
+        LoopStation loaded = ManifestLoader.load(file);
+        long fast = System.nanoTime() - begin;
+
+        System.out.printf("round %d: createPod/addPassenger %.0f ms (%.2fM passengers/s),"
+            + " ManifestLoader %.0f ms (%.2fM passengers/s), %d pods%n", round, slow / 1e6,
+            passengers * 1e3 / slow, fast / 1e6, passengers * 1e3 / fast,
+            loaded.getNumWaiting());
+      }
+    } finally {
+      java.nio.file.Files.delete(file);
+    }
+  }
+
+  /**
+   * Overloads a station, with pods offered faster than they launch, and reports how long pods wait
+   * between createPod() and launch, with and without waiting limits. Without limits the waiting
+   * tracks grow for the whole run and so does every percentile; with limits the excess is shed and
+   * the wait stays bounded by the limit divided by the launch rate.
+   */
+  public static void benchAdmission() throws Exception {
+    System.out.println("== admission: " + ADMISSION_LAUNCH_RATE + " launches/s, offered x"
+        + ADMISSION_OVERLOAD + ", " + ADMISSION_MILLIS + " ms, wait until launch (us) ==");
+    System.out.printf("%-10s %10s %10s %10s %10s %10s %10s %10s%n", "limits", "created", "shed",
+        "depth", "p50", "p99", "p99.9", "max");
+    runAdmission(false);
+    runAdmission(true);
+  }
+
+  private static void runAdmission(boolean limited) throws Exception {
+    LoopStation station = new LoopStation();
+    if (limited) {
+      station.setWaitingLimits(ADMISSION_MAX_FIRST, ADMISSION_MAX_ECONOMY);
+    }
+
+    // creation times and waits, touched by listeners under the station's monitor only
+    java.util.Map<Long, Long> createdAt = new java.util.HashMap<>();
+    long[][] waits = {new long[1 << 16]};
+    int[] numWaits = {0};
+    station.addListener(new StationListener() {
+      @Override
+      public void podCreated(Pod pod) {
+        createdAt.put(pod.getId(), System.nanoTime());
+      }
+
+      @Override
+      public void podLaunched(Pod pod) {
+        if (numWaits[0] == waits[0].length) {
+          waits[0] = Arrays.copyOf(waits[0], numWaits[0] * 2);
+        }
+        waits[0][numWaits[0]++] = System.nanoTime() - createdAt.remove(pod.getId());
+      }
+    });
+
+    long begin = System.nanoTime();
+    long end = begin + ADMISSION_MILLIS * 1_000_000;
+    double offeredPerNano = ADMISSION_LAUNCH_RATE * ADMISSION_OVERLOAD / ADMISSION_PRODUCERS / 1e9;
+    java.util.concurrent.atomic.AtomicLong created = new java.util.concurrent.atomic.AtomicLong();
+
+    List<Thread> producers = new ArrayList<>();
+    for (int t = 0; t < ADMISSION_PRODUCERS; t++) {
+      Thread producer = new Thread(() -> {
+        long offered = 0;
+        try {
+          for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+            for (long due = (long) ((now - begin) * offeredPerNano); offered < due; offered++) {
+              boolean first = offered % 5 == 0;
+              Pod pod;
+              if (limited) {
+                pod = station.createPod(4, first, ADMISSION_TIMEOUT_MICROS,
+                    java.util.concurrent.TimeUnit.MICROSECONDS);
+              } else {
+                synchronized (station) {
+                  pod = station.createPod(4, first);
+                }
+              }
+              if (pod != null) {
+                created.incrementAndGet();
+              }
+            }
+            java.util.concurrent.locks.LockSupport.parkNanos(100_000);
+          }
+        } catch (InterruptedException e) {
+          // stop offering
+        }
+      });
+      producer.start();
+      producers.add(producer);
+    }
+
+    // launch at a fixed rate; a launch slot with nothing waiting is lost, like a real departure
+    long slots = 0;
+    for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+      for (long due = (now - begin) * ADMISSION_LAUNCH_RATE / 1_000_000_000; slots < due; slots++) {
+        synchronized (station) {
+          if (station.getNumWaiting() > 0) {
+            station.launchPod();
+          }
+        }
+      }
+      java.util.concurrent.locks.LockSupport.parkNanos(100_000);
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+
+    long[] sorted;
+    int depth;
+    synchronized (station) {
+      sorted = Arrays.copyOf(waits[0], numWaits[0]);
+      depth = station.getNumWaiting();
+    }
+    Arrays.sort(sorted);
+    System.out.printf("%-10s %10d %10d %10d %10d %10d %10d %10d%n", limited ? "on" : "off",
+        created.get(), station.getNumShed(), depth, percentile(sorted, 0.50) / 1_000,
+        percentile(sorted, 0.99) / 1_000, percentile(sorted, 0.999) / 1_000,
+        sorted[sorted.length - 1] / 1_000);
+  }
+
+  /**
+   * Holds HOLDS seats with random lifetimes, releases a third of them and lets the clock run until
+   * the rest expire, reporting the cost per hold, release and expiry. For comparison, expires
+   * HOLD_SCANS holds the way timers without a wheel had to: find the passenger on the track and
+   * remove them.
+   */
+  public static void benchHolds() throws Exception {
+    System.out.println("== holds: " + HOLDS + " outstanding, up to " + HOLD_MAX_MILLIS / 60_000
+        + " min each ==");
+    for (int round = 0; round < 3; round++) {
+      long[] now = {0};
+      Track track = holdTrack();
+      track.setClock(() -> now[0]);
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+
+      SeatHold[] holds = new SeatHold[HOLDS];
+      long begin = System.nanoTime();
+      for (int i = 0; i < HOLDS; i++) {
+        holds[i] = track.holdSeat("hold" + i, false, 1 + random.nextInt(HOLD_MAX_MILLIS));
+      }
+      long holding = System.nanoTime() - begin;
+
+      begin = System.nanoTime();
+      for (int i = 0; i < HOLDS; i += 3) {
+        holds[i].release();
+      }
+      long releasing = System.nanoTime() - begin;
+
+      int expired = 0;
+      begin = System.nanoTime();
+      while (track.getNumHolds() > 0) {
+        now[0] += 1_000;
+        expired += track.expireHolds();
+      }
+      long expiring = System.nanoTime() - begin;
+
+      System.out.printf("round %d: hold %.0f ns, release %.0f ns, expire %.0f ns per hold"
+          + " (%d expired)%n", round, holding / (double) HOLDS, releasing / (HOLDS / 3.0),
+          expiring / (double) expired, expired);
+    }
+
+    // without a wheel: every seat booked, each expiry a findPassenger() and a removePassenger()
+    Track track = holdTrack();
+    for (int i = 0; i < HOLDS; i++) {
+      track.addPassenger("hold" + i, false);
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long begin = System.nanoTime();
+    for (int i = 0; i < HOLD_SCANS; i++) {
+      String name = "hold" + random.nextInt(HOLDS);
+      int index = track.findPassenger(name);
+      if (index != -1) {
+        track.get(index).removePassenger(name);
+      }
+    }
+    System.out.printf("scan per expiry: %.0f ns per hold%n",
+        (System.nanoTime() - begin) / (double) HOLD_SCANS);
+  }
+
+  /**
+   * A track with HOLDS free economy seats in a few large pods, so that finding a seat is cheap and
+   * the wheel dominates
+   */
+  private static Track holdTrack() {
+    Track track = new Track();
+    for (int i = 0; i < 16; i++) {
+      track.add(new Pod(HOLDS / 16, Pod.ECONOMY));
+    }
+    return track;
+  }
+
+  /**
+   * Indexes a station of PREFIX_PASSENGERS passengers with random eight-letter names and reports
+   * the latency of prefix queries of one to four letters, against finding the same matches by
+   * walking every seat
+   */
+  public static void benchPrefix() throws Exception {
+    System.out.println("== prefix: " + PREFIX_PASSENGERS + " passengers, top " + PREFIX_LIMIT
+        + " ==");
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    LoopStation station = new LoopStation();
+    Pod pod = null;
+    for (int i = 0; i < PREFIX_PASSENGERS; i++) {
+      if (i % 4 == 0) {
+        pod = station.createPod(4, i % 20 == 0);
+      }
+      pod.addPassenger(randomName(random, 8));
+    }
+
+    long begin = System.nanoTime();
+    station.enablePassengerIndex();
+    System.out.printf("index built in %.0f ms%n", (System.nanoTime() - begin) / 1e6);
+
+    // incremental upkeep: a boarding and a cancellation
+    Pod[] churn = new Pod[PREFIX_QUERIES / 4];
+    for (int i = 0; i < churn.length; i++) {
+      churn[i] = station.createPod(4, false);
+    }
+    begin = System.nanoTime();
+    for (int i = 0; i < PREFIX_QUERIES; i++) {
+      churn[i / 4].addPassenger(randomName(random, 8));
+    }
+    for (int i = 0; i < PREFIX_QUERIES; i++) {
+      churn[i / 4].removePassenger(churn[i / 4].peekLastPassenger());
+    }
+    System.out.printf("board + cancel: %.0f ns%n", (System.nanoTime() - begin)
+        / (double) PREFIX_QUERIES);
+
+    System.out.printf("%-8s %10s %10s %10s %10s%n", "letters", "p50 us", "p99 us", "p99.9 us",
+        "matches");
+    for (int letters = 1; letters <= 4; letters++) {
+      long[] latencies = new long[PREFIX_QUERIES];
+      long matches = 0;
+      for (int i = 0; i < PREFIX_QUERIES; i++) {
+        String prefix = randomName(random, letters);
+        long start = System.nanoTime();
+        matches += station.findPassengersByPrefix(prefix, PREFIX_LIMIT).size();
+        latencies[i] = System.nanoTime() - start;
+      }
+      Arrays.sort(latencies);
+      System.out.printf("%-8d %10.1f %10.1f %10.1f %10.1f%n", letters,
+          percentile(latencies, 0.50) / 1e3, percentile(latencies, 0.99) / 1e3,
+          percentile(latencies, 0.999) / 1e3, matches / (double) PREFIX_QUERIES);
+    }
+
+    // without the index: every seat of every pod, for a handful of prefixes
+    int scans = 5;
+    begin = System.nanoTime();
+    for (int i = 0; i < scans; i++) {
+      String prefix = randomName(random, 3);
+      List<String> found = new ArrayList<>();
+      for (Track track : new Track[] {station.waitingFirst, station.waitingEconomy}) {
+        for (LinkedNode node = track.head; node != null; node = node.getNext()) {
+          for (String name : node.getPod().peekPassengers()) {
+            if (name != null && name.startsWith(prefix)) {
+              found.add(name);
+            }
+          }
+        }
+      }
+      found.sort(null);
+    }
+    System.out.printf("seat scan: %.0f us per query%n", (System.nanoTime() - begin) / 1e3 / scans);
+  }
+
+  /**
+   * @return a capitalized name of random letters
+   */
+  private static String randomName(ThreadLocalRandom random, int letters) {
+    char[] name = new char[letters];
+    name[0] = (char) ('A' + random.nextInt(26));
+    for (int i = 1; i < letters; i++) {
+      name[i] = (char) ('a' + random.nextInt(26));
+    }
+    return new String(name);
+  }
+
+  /**
+   * Launches LAUNCH_LOG_PODS pods over a simulated day, removing one in a hundred as they
+   * malfunction, then times lookups by sequence number and 15 minute launch-time windows through
+   * the launch index against walking the launched track
+   */
+  public static void benchLaunchLog() {
+    long dayStart = 1_700_000_000_000L;
+    long spacing = 86_400_000L / LAUNCH_LOG_PODS;
+    long[] now = {dayStart};
+    LoopStation station = new LoopStation();
+    station.setClock(() -> now[0]);
+    station.enableLaunchIndex();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < LAUNCH_LOG_PODS; i++) {
+      now[0] += spacing;
+      Pod pod = station.createPod(4, false);
+      station.launchPod();
+      if (random.nextInt(100) == 0) {
+        station.removePod(pod);
+      }
+    }
+    System.out.println("== launch log: " + station.getNumLaunched() + " pods launched over a day,"
+        + " in microseconds per lookup ==");
+    System.out.printf("%-22s %12s %12s%n", "lookup", "index", "track walk");
+
+    long[] sequences = new long[LAUNCH_LOG_LOOKUPS];
+    long[] windows = new long[LAUNCH_LOG_LOOKUPS];
+    for (int i = 0; i < LAUNCH_LOG_LOOKUPS; i++) {
+      sequences[i] = 1 + random.nextInt(LAUNCH_LOG_PODS);
+      windows[i] = dayStart + random.nextLong(86_400_000L - 900_000L);
+    }
+    int walks = 20;
+
+    long sink = 0;
+    long begin = System.nanoTime();
+    for (long sequence : sequences) {
+      Pod pod = station.findLaunch(sequence);
+      sink += pod == null ? 0 : pod.getId();
+    }
+    long indexed = System.nanoTime() - begin;
+    begin = System.nanoTime();
+    for (int i = 0; i < walks; i++) {
+      for (LinkedNode node = station.launched.head; node != null; node = node.getNext()) {
+        if (node.getPod().getLaunchSequence() == sequences[i]) {
+          sink += node.getPod().getId();
+          break;
+        }
+      }
+    }
+    long walked = System.nanoTime() - begin;
+    System.out.printf("%-22s %12.2f %12.0f%n", "by sequence", indexed / 1e3 / LAUNCH_LOG_LOOKUPS,
+        walked / 1e3 / walks);
+
+    begin = System.nanoTime();
+    for (long from : windows) {
+      sink += station.getLaunchedBetween(from, from + 900_000L).size();
+    }
+    indexed = System.nanoTime() - begin;
+    begin = System.nanoTime();
+    for (int i = 0; i < walks; i++) {
+      List<Pod> found = new ArrayList<>();
+      for (LinkedNode node = station.launched.head; node != null; node = node.getNext()) {
+        long millis = node.getPod().getLaunchMillis();
+        if (millis >= windows[i] && millis <= windows[i] + 900_000L) {
+          found.add(node.getPod());
+        }
+      }
+      sink += found.size();
+    }
+    walked = System.nanoTime() - begin;
+    System.out.printf("%-22s %12.2f %12.0f%n", "15 minute window", indexed / 1e3
+        / LAUNCH_LOG_LOOKUPS, walked / 1e3 / walks);
+    if (sink == 42) {
+      System.out.print("");
+    }
+  }
+
+  /**
+   * Fills KERNEL_SLOTS column slots directly, one failed pod in 100,000, and times the scalar
+   * ColumnKernels against those in use (vectorized when run as described in the README): totals of
+   * all functional pods, totals of first class pods with free seats, and finding every failed pod
+   */
+  public static void benchKernels() {
+    PodColumns columns = new PodColumns();
+    columns.status = new byte[KERNEL_SLOTS];
+    columns.podClass = new byte[KERNEL_SLOTS];
+    columns.track = new byte[KERNEL_SLOTS];
+    columns.capacity = new int[KERNEL_SLOTS];
+    columns.occupancy = new int[KERNEL_SLOTS];
+    columns.highWater = KERNEL_SLOTS;
+    columns.maxCapacity = 64;
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int slot = 0; slot < KERNEL_SLOTS; slot++) {
+      columns.status[slot] = random.nextInt(100_000) == 0 ? PodColumns.FAILED
+          : PodColumns.FUNCTIONAL;
+      columns.podClass[slot] = (byte) random.nextInt(2);
+      columns.track[slot] = (byte) random.nextInt(3);
+      columns.capacity[slot] = 1 + random.nextInt(64);
+      columns.occupancy[slot] = random.nextInt(columns.capacity[slot] + 1);
+    }
+
+    ColumnKernels scalar = new ScalarColumnKernels();
+    ColumnKernels loaded = ColumnKernels.INSTANCE;
+    System.out.println("== kernels: " + KERNEL_SLOTS + " slots, " + loaded.getClass().getName()
+        + " loaded, milliseconds per scan ==");
+    System.out.printf("%-22s %12s %12s %9s%n", "scan", "scalar", "loaded", "speedup");
+
+    int all = (1 << PodQuery.LAUNCHED) | (1 << PodQuery.WAITING_FIRST)
+        | (1 << PodQuery.WAITING_ECONOMY);
+    int functional = 1 << PodColumns.FUNCTIONAL;
+    int failed = 1 << PodColumns.FAILED;
+    int classes = (1 << Pod.FIRST) | (1 << Pod.ECONOMY);
+    String[] names = {"passengers", "first with free seats", "failed pods"};
+    for (int operation = 0; operation < names.length; operation++) {
+      long[] nanos = new long[2];
+      ColumnKernels[] kernels = {scalar, loaded};
+      for (int k = 0; k < 2; k++) {
+        long[] times = new long[KERNEL_SCANS];
+        for (int scan = -KERNEL_SCANS; scan < KERNEL_SCANS; scan++) {
+          long begin = System.nanoTime();
+          long[] totals = new long[3];
+          if (operation == 0) {
+            kernels[k].aggregate(columns, functional, classes, all, false, 0, KERNEL_SLOTS,
+                totals);
+          } else if (operation == 1) {
+            kernels[k].aggregate(columns, functional, 1 << Pod.FIRST, all, true, 0, KERNEL_SLOTS,
+                totals);
+          } else {
+            for (int slot = kernels[k].next(columns, failed, classes, all, false, 0,
+                KERNEL_SLOTS); slot != -1; slot = kernels[k].next(columns, failed, classes, all,
+                    false, slot + 1, KERNEL_SLOTS)) {
+              totals[0]++;
+            }
+          }
+          if (scan >= 0) {
+            times[scan] = System.nanoTime() - begin;
+          }
+        }
+        Arrays.sort(times);
+        nanos[k] = percentile(times, 0.5);
+      }
+      System.out.printf("%-22s %12.2f %12.2f %8.1fx%n", names[operation], nanos[0] / 1e6,
+          nanos[1] / 1e6, (double) nanos[0] / nanos[1]);
+    }
+  }
+
+  /**
+   * Times rounds of createPod(), addPassenger(), findPassenger() and launchPod() with no flight
+   * recording, with one using hyperloop.jfc (run from the directory holding it), and with one
+   * recording every hyperloop event, taking the best of FLIGHT_REPEATS interleaved runs, then
+   * summarizes the last recording
+   */
+  public static void benchFlight() throws Exception {
+    System.out.println("== flight: " + FLIGHT_ROUNDS + " rounds of create, board, search and"
+        + " launch, nanoseconds per round ==");
+    System.out.printf("%-22s %12s%n", "recording", "ns/round");
+
+    String[] modes = {"none", "hyperloop.jfc", "every event"};
+    long[] best = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+    Path file = Files.createTempFile("hyperloop", ".jfr");
+    for (int repeat = 0; repeat < FLIGHT_REPEATS; repeat++) {
+      for (int m = 0; m < modes.length; m++) {
+        String mode = modes[m];
+        jdk.jfr.Recording recording = null;
+        if (mode.equals("hyperloop.jfc")) {
+          recording = new jdk.jfr.Recording(jdk.jfr.Configuration.create(Path.of(mode)));
+        } else if (mode.equals("every event")) {
+          recording = new jdk.jfr.Recording();
+          for (jdk.jfr.EventType type : jdk.jfr.FlightRecorder.getFlightRecorder()
+              .getEventTypes()) {
+            if (type.getName().startsWith(RecordingSummary.PREFIX)) {
+              recording.enable(type.getName()).withThreshold(java.time.Duration.ZERO);
+            }
+          }
+        }
+        if (recording != null) {
+          recording.start();
+        }
+
+        LoopStation station = new LoopStation();
+        for (int i = 0; i < 8; i++) {
+          station.createPod(4, false);
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < FLIGHT_ROUNDS; i++) {
+          station.createPod(4, false);
+          station.waitingEconomy.addPassenger("p" + (i & 1023), false);
+          station.waitingEconomy.findPassenger("p" + (i & 1023));
+          station.launchPod();
+        }
+        long nanos = System.nanoTime() - begin;
+
+        if (recording != null) {
+          recording.stop();
+          recording.dump(file);
+          recording.close();
+        }
+        best[m] = Math.min(best[m], nanos);
+      }
+    }
+    for (int m = 0; m < modes.length; m++) {
+      System.out.printf("%-22s %12.1f%n", modes[m], (double) best[m] / FLIGHT_ROUNDS);
+    }
+
+    System.out.println("summary of the last recording:");
+    for (RecordingSummary.Stats type : RecordingSummary.summarize(file).values()) {
+      System.out.println("  " + type);
+    }
+    Files.delete(file);
+  }
+
+  /**
+   * Builds a network of NETWORK_STATIONS stations on a grid, linked both ways to their grid
+   * neighbours and by an express link every 50 stations, then times a route found by a fresh
+   * search, precomputing every tree, cached route lookups, and NETWORK_CHANGES link changes with
+   * the trees each one drops
+   */
+  public static void benchNetwork() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    HyperloopNetwork network = new HyperloopNetwork();
+    for (int i = 0; i < NETWORK_STATIONS; i++) {
+      network.addStation("s" + i, new LoopStation());
+    }
+    int links = 0;
+    for (int i = 0; i < NETWORK_STATIONS; i++) {
+      int[] neighbours = {i % NETWORK_COLUMNS == NETWORK_COLUMNS - 1 ? -1 : i + 1,
+          i + NETWORK_COLUMNS < NETWORK_STATIONS ? i + NETWORK_COLUMNS : -1,
+          i % 50 == 0 ? random.nextInt(NETWORK_STATIONS) : -1};
+      for (int j : neighbours) {
+        if (j != -1 && j != i) {
+          int millis = 60_000 + random.nextInt(540_000);
+          network.setLink("s" + i, "s" + j, millis);
+          network.setLink("s" + j, "s" + i, millis);
+          links += 2;
+        }
+      }
+    }
+    System.out.println("== network: " + NETWORK_STATIONS + " stations, " + links + " links ==");
+
+    long begin = System.nanoTime();
+    for (int i = 0; i < 100; i++) {
+      network.route("s" + i, "s" + (NETWORK_STATIONS - 1 - i));
+    }
+    System.out.printf("%-30s %10.1f us%n", "route by fresh search", (System.nanoTime() - begin)
+        / 1e3 / 100);
+
+    begin = System.nanoTime();
+    network.precompute();
+    System.out.printf("%-30s %10.1f s  (%d trees)%n", "precompute every tree",
+        (System.nanoTime() - begin) / 1e9, network.getNumCachedTrees());
+
+    String[] names = new String[NETWORK_STATIONS];
+    for (int i = 0; i < NETWORK_STATIONS; i++) {
+      names[i] = "s" + i;
+    }
+    long sink = 0;
+    begin = System.nanoTime();
+    for (int i = 0; i < NETWORK_LOOKUPS; i++) {
+      sink += network.getTravelMillis(names[random.nextInt(NETWORK_STATIONS)],
+          names[random.nextInt(NETWORK_STATIONS)]);
+    }
+    System.out.printf("%-30s %10.1f ns%n", "cached travel time", (System.nanoTime() - begin)
+        / (double) NETWORK_LOOKUPS);
+    begin = System.nanoTime();
+    for (int i = 0; i < NETWORK_LOOKUPS / 10; i++) {
+      sink += network.route(names[random.nextInt(NETWORK_STATIONS)],
+          names[random.nextInt(NETWORK_STATIONS)]).getStations().size();
+    }
+    System.out.printf("%-30s %10.1f us%n", "cached route", (System.nanoTime() - begin) / 1e3
+        / (NETWORK_LOOKUPS / 10));
+
+    long dropped = 0;
+    begin = System.nanoTime();
+    for (int i = 0; i < NETWORK_CHANGES; i++) {
+      int from = random.nextInt(NETWORK_STATIONS - 1);
+      int to = from % NETWORK_COLUMNS == NETWORK_COLUMNS - 1 ? from - 1 : from + 1;
+      int before = network.getNumCachedTrees();
+      network.setLink(names[from], names[to], 60_000 + random.nextInt(540_000));
+      dropped += before - network.getNumCachedTrees();
+      network.precompute();
+    }
+    System.out.printf("%-30s %10.1f ms  (%.0f of %d trees dropped per change)%n",
+        "link change and recompute", (System.nanoTime() - begin) / 1e6 / NETWORK_CHANGES,
+        (double) dropped / NETWORK_CHANGES, NETWORK_STATIONS);
+    if (sink == 42) {
+      System.out.print("");
+    }
+  }
+
+  /**
+   * Registers REGISTRY_STATIONS stations of which REGISTRY_BUSY are used, and compares the heap
+   * they take with as many LoopStations created up front, and with the registry's estimate; then
+   * runs the shared maintenance for two seconds, with failures on every station and one station
+   * far busier than the rest, and reports how evenly the stations were served
+   */
+  public static void benchRegistry() throws Exception {
+    System.out.println("== registry: " + REGISTRY_STATIONS + " stations, " + REGISTRY_BUSY
+        + " in use with " + REGISTRY_PODS + " pods each ==");
+
+    int spacing = REGISTRY_STATIONS / REGISTRY_BUSY;
+    long before = usedHeapAfterGc();
+    LoopStation[] eager = new LoopStation[REGISTRY_STATIONS];
+    for (int i = 0; i < REGISTRY_STATIONS; i++) {
+      eager[i] = new LoopStation();
+      if (i % spacing == 0) {
+        fillRegistryStation(eager[i], i == 0);
+      }
+    }
+    long eagerBytes = usedHeapAfterGc() - before;
+    eager = null;
+
+    before = usedHeapAfterGc();
+    StationRegistry registry = new StationRegistry();
+    for (int i = 0; i < REGISTRY_STATIONS; i++) {
+      StationRegistry.Handle handle = registry.register("platform-" + i);
+      if (i % spacing == 0) {
+        fillRegistryStation(handle.get(), i == 0);
+      }
+    }
+    long registryBytes = usedHeapAfterGc() - before;
+    System.out.printf("%-34s %10.1f MB%n", "eager LoopStations", eagerBytes / 1e6);
+    System.out.printf("%-34s %10.1f MB  (estimated %.1f MB)%n", "registry, lazily materialized",
+        registryBytes / 1e6, registry.estimateBytes() / 1e6);
+
+    // malfunctions to sweep on every station in use
+    registry.addMaintenance(station -> {
+      if (station.getNumLaunched() > 0) {
+        station.launched.get(0).setNonFunctional();
+      }
+    });
+    registry.startMaintenance(10, TimeUnit.MILLISECONDS, 2);
+    Thread.sleep(2_000);
+    int threads = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().startsWith("station-maintenance-")) {
+        threads++;
+      }
+    }
+    registry.close();
+
+    long fewest = Long.MAX_VALUE;
+    long most = 0;
+    long slowestNanos = 0;
+    for (int i = 0; i < REGISTRY_STATIONS; i += spacing) {
+      StationRegistry.Handle handle = registry.getHandle("platform-" + i);
+      fewest = Math.min(fewest, handle.getNumMaintained());
+      most = Math.max(most, handle.getNumMaintained());
+      slowestNanos = Math.max(slowestNanos, handle.getMaintenanceNanos()
+          / Math.max(1, handle.getNumMaintained()));
+    }
+    System.out.printf("%-34s %10d of %d cores%n", "maintenance threads", threads,
+        Runtime.getRuntime().availableProcessors());
+    System.out.printf("%-34s %10d to %d%n", "maintenance runs per station", fewest, most);
+    System.out.printf("%-34s %10.1f us  (busiest station)%n", "longest average run",
+        slowestNanos / 1e3);
+  }
+
+  private static void fillRegistryStation(LoopStation station, boolean busiest) {
+    for (int p = 0; p < (busiest ? 100 : 1) * REGISTRY_PODS; p++) {
+      station.createPod(4, p % 2 == 0);
+      if (p % 4 == 0) {
+        station.launchPod();
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    List<String> scenarios = List.of(args);
+    if (scenarios.isEmpty() || scenarios.contains("pipeline")) {
+      benchPipeline();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("snapshot")) {
+      benchSnapshot();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("alloc")) {
+      benchAlloc();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("indexed")) {
+      benchIndexed();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("consolidate")) {
+      benchConsolidate();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("bloom")) {
+      benchBloom();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("retention")) {
+      benchRetention();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("query")) {
+      benchQuery();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("events")) {
+      benchEvents();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("group")) {
+      benchGroup();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("manifest")) {
+      benchManifest();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("admission")) {
+      benchAdmission();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("holds")) {
+      benchHolds();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("prefix")) {
+      benchPrefix();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("launchlog")) {
+      benchLaunchLog();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("kernels")) {
+      benchKernels();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("flight")) {
+      benchFlight();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("network")) {
+      benchNetwork();
+    }
+    if (scenarios.isEmpty() || scenarios.contains("registry")) {
+      benchRegistry();
+    }
+  }
+
+}
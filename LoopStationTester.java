@@ -1,3 +1,5 @@
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -214,6 +216,1832 @@ public class LoopStationTester {
     }
   }
 
+  /**
+   * Checks the correctness of StationPipeline. Mutations submitted from several producer threads
+   * should all be applied by the writer, their futures should complete with the same results the
+   * station would have returned, failures should complete exceptionally, and the published
+   * snapshot should reflect every applied command.
+   * 
+   * @return true if StationPipeline is functioning correctly, false otherwise
+   */
+  public static boolean testStationPipeline() {
+    try {
+      LoopStation station = new LoopStation();
+      StationPipeline pipeline = new StationPipeline(station, 8, 4);
+
+      // launching with nothing waiting should fail through the future, not the writer
+      try {
+        pipeline.launchPod().join();
+        return false;
+      } catch (java.util.concurrent.CompletionException e) {
+        if (!(e.getCause() instanceof NoSuchElementException)) {
+          return false;
+        }
+      }
+
+      // nor should an Error, which must not stop the writer either
+      try {
+        pipeline.submit(s -> {
+          throw new StackOverflowError();
+        }).join();
+        return false;
+      } catch (java.util.concurrent.CompletionException e) {
+        if (!(e.getCause() instanceof StackOverflowError)
+            || pipeline.submit(s -> 42).get(10, java.util.concurrent.TimeUnit.SECONDS) != 42) {
+          return false;
+        }
+      }
+
+      // several producers contending on a tiny ring
+      Thread[] producers = new Thread[4];
+      for (int t = 0; t < producers.length; t++) {
+        final boolean first = t % 2 == 0;
+        producers[t] = new Thread(() -> {
+          for (int i = 0; i < 50; i++) {
+            Pod pod = pipeline.createPod(2, first).join();
+            pipeline.addPassenger(pod, "p" + i);
+          }
+        });
+        producers[t].start();
+      }
+      for (Thread producer : producers) {
+        producer.join();
+      }
+
+      for (int i = 0; i < 10; i++) {
+        pipeline.launchPod();
+      }
+      Pod pod = pipeline.createPod(1, false).join();
+      pipeline.addPassenger(pod, "Alice").join();
+      if (!pipeline.removePassenger(pod, "Alice").join()) {
+        return false;
+      }
+      if (pipeline.removePassenger(pod, "Alice").join()) {
+        return false;
+      }
+      pipeline.close();
+
+      StationPipeline.StationSnapshot snapshot = pipeline.snapshot();
+      if (snapshot.getNumLaunched() != 10 || snapshot.getNumWaiting() != 191
+          || station.getNumLaunched() != 10 || station.getNumWaiting() != 191
+          || station.getNumPassengers() != 200) {
+        return false;
+      }
+
+      // nothing is accepted after close
+      try {
+        pipeline.launchPod();
+        return false;
+      } catch (java.util.concurrent.RejectedExecutionException e) {
+        // Expected behavior
+      }
+
+      return true;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks the correctness of Track.snapshot(). A snapshot should keep showing the pods and order
+   * the track had when it was taken, however the track changes afterwards, and a new snapshot
+   * should always agree with the track itself.
+   * 
+   * @return true if track snapshots are functioning correctly, false otherwise
+   */
+  public static boolean testTrackSnapshot() {
+    try {
+      Track track = new Track();
+
+      // snapshots must be switched on first
+      try {
+        track.snapshot();
+        return false;
+      } catch (IllegalStateException e) {
+        // Expected behavior
+      }
+
+      Pod econ1 = new Pod(2, Pod.ECONOMY);
+      econ1.addPassenger("Alice");
+      track.add(econ1);
+      track.enableSnapshots(); // existing pods are mirrored when enabling
+
+      Pod[] pods = new Pod[50];
+      for (int i = 0; i < pods.length; i++) {
+        pods[i] = new Pod(1, i % 3 == 0 ? Pod.FIRST : Pod.ECONOMY);
+        track.add(pods[i]);
+      }
+
+      TrackSnapshot before = track.snapshot();
+      if (!sameOrder(track, before) || before.findPassenger("Alice") != track.findPassenger("Alice")) {
+        return false;
+      }
+
+      // mutate the head, the tail and the middle
+      track.remove(0);
+      track.remove(track.size() - 1);
+      Pod removed = track.remove(20);
+      track.add(new Pod(3, Pod.FIRST));
+
+      if (before.size() != 51 || before.get(0) != pods[48] || before.get(50) != pods[49]) {
+        return false;
+      }
+      TrackSnapshot after = track.snapshot();
+      if (!sameOrder(track, after) || before.get(21) != removed) {
+        return false;
+      }
+
+      track.clear();
+      if (!track.snapshot().isEmpty() || after.size() != 49) {
+        return false;
+      }
+
+      return true;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Helper method comparing a track with a snapshot pod by pod, both by index and by iteration
+   */
+  private static boolean sameOrder(Track track, TrackSnapshot snapshot) {
+    if (track.size() != snapshot.size()) {
+      return false;
+    }
+    int i = 0;
+    for (Pod pod : snapshot) {
+      if (track.get(i) != pod || snapshot.get(i) != pod) {
+        return false;
+      }
+      i++;
+    }
+    return i == track.size();
+  }
+
+  /**
+   * Checks the failed-pod index kept by Track. Pods should report their own malfunctions to the
+   * track they are on, clearMalfunctioning() should remove exactly the indexed pods, and
+   * checkHealth() should roll malfunction checks over the track in bounded slices.
+   * 
+   * @return true if the failed-pod index is functioning correctly, false otherwise
+   */
+  public static boolean testFailedPodIndex() {
+    try {
+      LoopStation station = new LoopStation();
+      Pod[] pods = new Pod[200];
+      for (int i = 0; i < pods.length; i++) {
+        pods[i] = station.createPod(2, i % 2 == 0);
+        station.launchPod();
+      }
+
+      pods[3].setNonFunctional();
+      pods[3].setNonFunctional(); // reporting twice must not count twice
+      pods[150].setNonFunctional();
+      if (station.launched.getNumFailed() != 2) {
+        return false;
+      }
+
+      // a pod that is no longer on a track does not report to it
+      Pod detached = station.launched.remove(station.launched.size() - 1);
+      detached.setNonFunctional();
+      if (station.launched.getNumFailed() != 2 || detached.getTrack() != null) {
+        return false;
+      }
+
+      // roll checks over the track a slice at a time; each call checks at most a lap
+      int newlyFailed = 0;
+      for (int i = 0; i < 20; i++) {
+        newlyFailed += station.checkHealth(25);
+      }
+      if (station.launched.getNumFailed() != 2 + newlyFailed) {
+        return false;
+      }
+
+      int before = station.getNumLaunched();
+      int removed = station.clearMalfunctioning();
+      if (removed != 2 + newlyFailed || station.getNumLaunched() != before - removed
+          || station.launched.getNumFailed() != 0) {
+        return false;
+      }
+      for (int i = 0; i < station.launched.size(); i++) {
+        if (!station.launched.get(i).peekFunctional()) {
+          return false;
+        }
+      }
+
+      // the cursor survives removals and wraps around
+      station.checkHealth(station.getNumLaunched() * 3);
+      station.clearMalfunctioning();
+      if (station.checkHealth(0) != 0 || station.launched.getNumFailed() != 0) {
+        return false;
+      }
+
+      return true;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks node reuse in Track. Launching should carry the pod's node over to the launched track,
+   * and nodes freed by remove() should be handed out again by later adds without keeping a
+   * reference to the removed pod.
+   * 
+   * @return true if nodes are moved and recycled correctly, false otherwise
+   */
+  public static boolean testNodeRecycling() {
+    try {
+      LoopStation station = new LoopStation();
+      Pod first = station.createPod(2, true);
+      Pod econ = station.createPod(2, false);
+
+      LinkedNode firstNode = first.getNode();
+      LinkedNode econNode = econ.getNode();
+      station.launchPod();
+      station.launchPod();
+      if (first.getNode() != firstNode || econ.getNode() != econNode
+          || first.getTrack() != station.launched || econ.getTrack() != station.launched) {
+        return false;
+      }
+      if (station.launched.get(0) != first || station.launched.get(1) != econ) {
+        return false;
+      }
+
+      // a removed node is detached and reused for the next add on that track
+      station.launched.remove(1);
+      if (econNode.getPod() != null || econNode.getNext() != null || econ.getTrack() != null) {
+        return false;
+      }
+      Pod next = new Pod(1, Pod.ECONOMY);
+      station.launched.add(next);
+      if (next.getNode() != econNode || station.launched.get(1) != next) {
+        return false;
+      }
+
+      // a pod that fails while waiting still reaches the launched track and can be cleared
+      Pod broken = station.createPod(2, false);
+      broken.setNonFunctional();
+      station.launchPod();
+      if (station.getNumLaunched() != 3 || station.clearMalfunctioning() != 1) {
+        return false;
+      }
+
+      return true;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks IndexedTrack against Track. Both should hold the same pods in the same order after the
+   * same random sequence of adds, positional removes and moves, and findFirstNonFunctional()
+   * should return a position that get() agrees with.
+   * 
+   * @return true if IndexedTrack is functioning correctly, false otherwise
+   */
+  public static boolean testIndexedTrack() {
+    try {
+      java.util.Random random = new java.util.Random(30);
+      Track plain = new Track();
+      IndexedTrack indexed = new IndexedTrack();
+      IndexedTrack indexedOther = new IndexedTrack();
+
+      // a pod is only ever on one track, so the plain track holds a twin of each indexed pod
+      java.util.Map<Pod, Pod> twins = new java.util.IdentityHashMap<>();
+
+      for (int step = 0; step < 5000; step++) {
+        int action = random.nextInt(10);
+        if (action < 6 || plain.isEmpty()) {
+          int podClass = random.nextBoolean() ? Pod.FIRST : Pod.ECONOMY;
+          Pod pod = new Pod(1, podClass);
+          Pod twin = new Pod(1, podClass);
+          twins.put(pod, twin);
+          indexed.add(pod);
+          plain.add(twin);
+        } else if (action < 9) {
+          int index = random.nextInt(plain.size());
+          if (twins.get(indexed.remove(index)) != plain.remove(index)) {
+            return false;
+          }
+        } else {
+          int index = random.nextInt(plain.size());
+          Pod moved = indexed.moveTo(index, indexedOther);
+          if (twins.get(moved) != plain.remove(index)) {
+            return false;
+          }
+          int expected = moved.getPodClass() == Pod.FIRST ? 0 : indexedOther.size() - 1;
+          if (moved.getTrack() != indexedOther || indexedOther.indexOf(moved.getNode()) != expected) {
+            return false;
+          }
+        }
+      }
+
+      if (plain.size() != indexed.size()) {
+        return false;
+      }
+      for (int i = 0; i < plain.size(); i++) {
+        if (plain.get(i) != twins.get(indexed.get(i))
+            || indexed.indexOf(indexed.get(i).getNode()) != i) {
+          return false;
+        }
+      }
+
+      // positions of failed pods agree with get()
+      if (indexed.findFirstNonFunctional() != -1) {
+        return false;
+      }
+      Pod late = indexed.get(indexed.size() - 10);
+      Pod early = indexed.get(7);
+      late.setNonFunctional();
+      if (indexed.get(indexed.findFirstNonFunctional()) != late) {
+        return false;
+      }
+      early.setNonFunctional();
+      if (indexed.findFirstNonFunctional() != 7) {
+        return false;
+      }
+
+      // a station built on indexed tracks keeps the launch order rules
+      LoopStation station = new LoopStation(true);
+      Pod first1 = station.createPod(1, true);
+      Pod first2 = station.createPod(1, true);
+      Pod econ1 = station.createPod(1, false);
+      station.launchPod();
+      station.launchPod();
+      station.launchPod();
+      if (station.launched.get(0) != first2 || station.launched.get(1) != first1
+          || station.launched.get(2) != econ1) {
+        return false;
+      }
+
+      return true;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks pod IDs and the station's ID index. IDs should be unique and increasing, equals and
+   * hashCode should follow the ID regardless of passengers, and the station should find, locate
+   * and remove pods by ID without walking its tracks.
+   * 
+   * @return true if pod IDs and the station index are functioning correctly, false otherwise
+   */
+  public static boolean testPodIds() {
+    try {
+      LoopStation station = new LoopStation();
+      Pod a = station.createPod(2, true);
+      Pod b = station.createPod(2, true);
+      Pod c = station.createPod(2, false);
+      if (!(a.getId() < b.getId() && b.getId() < c.getId())) {
+        return false;
+      }
+
+      // identical contents no longer make two pods equal; the same pod stays equal to itself
+      if (a.equals(b) || !a.equals(a) || a.hashCode() != Long.hashCode(a.getId())) {
+        return false;
+      }
+      java.util.Set<Pod> set = new java.util.HashSet<>();
+      set.add(a);
+      a.addPassenger("Alice");
+      if (!set.contains(a) || set.contains(b)) {
+        return false;
+      }
+
+      if (!station.waitingFirst.contains(a) || station.waitingEconomy.contains(a)
+          || station.waitingFirst.contains(null)) {
+        return false;
+      }
+      if (station.findPod(b.getId()) != b || station.getTrackOf(c) != station.waitingEconomy) {
+        return false;
+      }
+
+      station.launchPod(); // launches a
+      if (station.getTrackOf(a) != station.launched || station.findPod(a.getId()) != a) {
+        return false;
+      }
+
+      // removal by pod, from any track
+      if (!station.removePod(b) || station.removePod(b) || station.findPod(b.getId()) != null
+          || station.getNumWaiting() != 1) {
+        return false;
+      }
+
+      // pods cleared as malfunctioning leave the index, and still answer getId()
+      a.setNonFunctional();
+      station.clearMalfunctioning();
+      if (station.findPod(a.getId()) != null || station.getTrackOf(a) != null) {
+        return false;
+      }
+
+      // a pod taken off a track directly is not reported either
+      station.waitingEconomy.remove(0);
+      if (station.findPod(c.getId()) != null || station.findPod(-1) != null) {
+        return false;
+      }
+
+      return true;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks LoopStation.consolidate(). Passengers of partially filled waiting pods should be packed
+   * into as few pods of the same class as possible, emptied pods should be retired, and no
+   * passenger, empty pod or malfunctioning pod should be lost or touched along the way.
+   * 
+   * @return true if consolidate() is functioning correctly, false otherwise
+   */
+  public static boolean testConsolidate() {
+    try {
+      LoopStation station = new LoopStation();
+      int[] occupancy = {3, 1, 2, 0, 1};
+      int name = 0;
+      for (int people : occupancy) {
+        Pod first = station.createPod(4, true);
+        Pod econ = station.createPod(4, false);
+        for (int i = 0; i < people; i++) {
+          first.addPassenger("f" + name);
+          econ.addPassenger("e" + name);
+          name++;
+        }
+      }
+      int passengers = station.getNumPassengers();
+      Pod broken = station.createPod(4, false);
+      broken.addPassenger("stuck");
+      broken.setNonFunctional();
+
+      LoopStation.ConsolidationReport report = station.consolidate();
+
+      // 7 passengers in 4 partially filled pods of 4 seats fit in 2 pods, per class
+      if (!report.isComplete() || report.getPodsRetired() != 4
+          || report.getPassengersMoved() != 4 || report.getNanos() < 0) {
+        return false;
+      }
+      if (station.waitingFirst.size() != 3 || station.waitingEconomy.size() != 4
+          || !station.removePod(broken) || station.getNumPassengers() != passengers) {
+        return false;
+      }
+      for (int i = 0; i < name; i++) {
+        if (station.waitingFirst.findPassenger("f" + i) == -1
+            || station.waitingEconomy.findPassenger("e" + i) == -1) {
+          return false;
+        }
+      }
+      // running again finds nothing left to do
+      if (station.consolidate().getPodsRetired() != 0) {
+        return false;
+      }
+
+      return true;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks leader/follower replication. A follower in this process and a follower in a separate
+   * JVM should both end up with the leader's tracks, passengers and pod IDs, including pods the
+   * station had before the leader started and changes made before they connected, and the leader
+   * should report their lag and only keep the records a follower still needs. A follower whose
+   * replica diverges should stop and report the failure.
+   * 
+   * @return true if replication is functioning correctly, false otherwise
+   */
+  public static boolean testReplication() {
+    try {
+      // a leader started on a busy station sends followers a snapshot of its tracks, in order
+      LoopStation busy = new LoopStation();
+      Pod[] pods = new Pod[10];
+      for (int i = 0; i < pods.length; i++) {
+        pods[i] = busy.createPod(2, i % 2 == 0);
+        pods[i].addPassenger("p" + i);
+      }
+      pods[2].addPassenger("Twin");
+      pods[4].addPassenger("Twin");
+      for (int i = 0; i < 3; i++) {
+        busy.launchPod(); // p0, p2 and p4; p4 ends up first on the launched track
+      }
+      StationReplicationLeader busyLeader = new StationReplicationLeader(busy, 0);
+      pods[1].addPassenger("Zed");
+      if (busyLeader.getSequence() != 1 || busyLeader.getNumLogged() != 0) {
+        return false; // no follower needs the record
+      }
+      StationReplicationFollower early =
+          new StationReplicationFollower("localhost", busyLeader.getPort());
+      if (!early.awaitSequence(busyLeader.getSequence(), 10_000) || early.getNumLaunched() != 3
+          || early.getNumWaitingFirst() != 2 || early.getNumWaitingEconomy() != 5
+          || early.getNumPassengers() != busy.getNumPassengers()
+          || early.findPassenger("Twin") != pods[4].getId()
+          || early.findPassenger("Zed") != pods[1].getId()) {
+        return false;
+      }
+      // the replica launches the same pods, in the same order, or it reports a divergence
+      for (int i = 0; i < 7; i++) {
+        busy.launchPod();
+      }
+      if (!early.awaitSequence(busyLeader.getSequence(), 10_000) || early.getFailure() != null
+          || early.getNumLaunched() != 10) {
+        return false;
+      }
+      // records the follower acknowledged are dropped; a late follower starts from a snapshot
+      long until = System.currentTimeMillis() + 10_000;
+      while (busyLeader.getNumLogged() != 0 && System.currentTimeMillis() < until) {
+        Thread.sleep(10);
+      }
+      StationReplicationFollower late =
+          new StationReplicationFollower("localhost", busyLeader.getPort());
+      if (busyLeader.getNumLogged() != 0 || !late.awaitSequence(busyLeader.getSequence(), 10_000)
+          || late.getNumLaunched() != 10 || late.findPassenger("p9") != pods[9].getId()
+          || late.getNumPassengers() != busy.getNumPassengers()) {
+        return false;
+      }
+      late.close();
+      early.close();
+      busyLeader.close();
+
+      LoopStation station = new LoopStation();
+      StationReplicationLeader leader = new StationReplicationLeader(station, 0);
+
+      // changes made before any follower connects are sent in its snapshot
+      Pod first = station.createPod(3, true);
+      first.addPassenger("Alice");
+      first.addPassenger("Bob");
+      Pod econ = station.createPod(2, false);
+      econ.addPassenger("Carol");
+      station.launchPod();
+
+      StationReplicationFollower follower =
+          new StationReplicationFollower("localhost", leader.getPort());
+
+      Pod spare = station.createPod(2, false);
+      spare.addPassenger("Dave");
+      first.removePassenger("Bob");
+      Pod broken = station.createPod(1, true);
+      station.launchPod();
+      broken.setNonFunctional();
+      station.clearMalfunctioning();
+      station.consolidate(); // moves Carol in with Dave and retires econ
+
+      long sequence = leader.getSequence();
+      if (!follower.awaitSequence(sequence, 10_000)) {
+        return false;
+      }
+      if (follower.getNumLaunched() != station.getNumLaunched()
+          || follower.getNumWaitingFirst() != station.waitingFirst.size()
+          || follower.getNumWaitingEconomy() != station.waitingEconomy.size()
+          || follower.getNumPassengers() != station.getNumPassengers()
+          || follower.findPassenger("Alice") != first.getId()
+          || follower.findPassenger("Carol") != spare.getId()
+          || follower.findPassenger("Bob") != -1 || follower.getLastLagMillis() < 0) {
+        return false;
+      }
+
+      // the follower acknowledges what it applied
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (leader.getMaxLagRecords() != 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      if (leader.getMaxLagRecords() != 0 || leader.getNumFollowers() != 1) {
+        return false;
+      }
+
+      // a follower in another process
+      String javaCommand = System.getProperty("java.home") + java.io.File.separator + "bin"
+          + java.io.File.separator + "java";
+      Process process = new ProcessBuilder(javaCommand, "-cp", System.getProperty("java.class.path"),
+          "StationReplicationFollower", String.valueOf(leader.getPort()), String.valueOf(sequence),
+          "Alice", "Carol").redirectErrorStream(true).start();
+      String output = new String(process.getInputStream().readAllBytes()).trim();
+      if (process.waitFor() != 0) {
+        return false;
+      }
+      String expected = "sequence=" + sequence + " launched=" + station.getNumLaunched()
+          + " first=" + station.waitingFirst.size() + " economy=" + station.waitingEconomy.size()
+          + " passengers=" + station.getNumPassengers() + " Alice=" + first.getId() + " Carol="
+          + spare.getId();
+      if (!output.endsWith(expected)) {
+        return false;
+      }
+
+      // a record for a pod the replica does not have stops the follower, which reports why
+      leader.passengerAdded(new Pod(Long.MAX_VALUE, Pod.ECONOMY, new String[1], true), "Eve");
+      long begin = System.currentTimeMillis();
+      if (follower.awaitSequence(leader.getSequence(), 10_000)
+          || System.currentTimeMillis() - begin >= 10_000
+          || !(follower.getFailure() instanceof IllegalStateException)
+          || follower.getAppliedSequence() != sequence) {
+        return false;
+      }
+
+      follower.close();
+      leader.close();
+      return true;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks the passenger filters of Track. A track with filters should answer findPassenger()
+   * exactly like a plain track after pods are added at both ends, removed anywhere, moved away and
+   * boarded after being added, and should skip segments for passengers who are not on it.
+   * 
+   * @return true if passenger filters are functioning correctly, false otherwise
+   */
+  public static boolean testPassengerFilters() {
+    try {
+      java.util.Random random = new java.util.Random(34);
+      Track plain = new Track();
+      Track filtered = new Track();
+      filtered.enablePassengerFilters();
+      Track elsewhere = new Track();
+
+      int names = 0;
+      for (int step = 0; step < 12000; step++) {
+        int action = random.nextInt(10);
+        if (action < 6 || plain.isEmpty()) {
+          int podClass = random.nextBoolean() ? Pod.FIRST : Pod.ECONOMY;
+          Pod pod = new Pod(2, podClass);
+          Pod twin = new Pod(2, podClass);
+          pod.addPassenger("n" + names); // boards before joining the track
+          twin.addPassenger("n" + names);
+          names++;
+          plain.add(twin);
+          filtered.add(pod);
+          pod.addPassenger("n" + names); // boards after joining the track
+          twin.addPassenger("n" + names);
+          names++;
+        } else if (action < 9) {
+          int index = random.nextInt(plain.size());
+          plain.remove(index);
+          filtered.remove(index);
+        } else {
+          int index = random.nextInt(plain.size());
+          plain.remove(index);
+          filtered.moveTo(index, elsewhere);
+        }
+      }
+
+      if (plain.size() != filtered.size() || plain.size() < 2 * TrackSegment.MAX_PODS) {
+        return false;
+      }
+      for (int i = 0; i < names; i++) {
+        if (plain.findPassenger("n" + i) != filtered.findPassenger("n" + i)) {
+          return false;
+        }
+      }
+
+      // misses should mostly be answered by the filters alone
+      long skipped = filtered.getSegmentsSkipped();
+      for (int i = 0; i < 100; i++) {
+        if (filtered.findPassenger("nobody" + i) != -1) {
+          return false;
+        }
+      }
+      if (filtered.getSegmentsSkipped() - skipped < 90) {
+        return false;
+      }
+
+      // enabling on a populated track builds the same answers
+      plain.enablePassengerFilters();
+      for (int i = 0; i < names; i += 7) {
+        if (plain.findPassenger("n" + i) != filtered.findPassenger("n" + i)) {
+          return false;
+        }
+      }
+
+      return true;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks tiered retention of launched pods. Pods outside the retention window should be spilled to
+   * disk while getNumLaunched(), getLaunchedPod(), findPassenger() and getNumPassengers() still see
+   * the whole history, in launch order, and background compaction should merge the segments.
+   * Spilling a failed pod should not change the passenger total.
+   * 
+   * @return true if retention is functioning correctly, false otherwise
+   */
+  public static boolean testRetention() {
+    java.io.File directory = null;
+    try {
+      directory = java.nio.file.Files.createTempDirectory("retention").toFile();
+      long[] now = {0};
+      LoopStation station = new LoopStation();
+      station.setClock(() -> now[0]);
+      station.enableRetention(10, 60_000, directory);
+
+      int numPods = 2000;
+      Pod[] pods = new Pod[numPods];
+      for (int i = 0; i < numPods; i++) {
+        pods[i] = station.createPod(2, false);
+        pods[i].addPassenger("p" + i);
+        station.launchPod();
+        if (i == 5) {
+          pods[i].setNonFunctional(); // archived as malfunctioning
+        }
+      }
+
+      if (station.getNumArchived() < numPods - 10 - LoopStation.SPILL_BATCH) {
+        return false;
+      }
+      station.enforceRetention();
+      if (station.getNumArchived() != numPods - 10 || station.launched.size() != 10
+          || station.getNumLaunched() != numPods) {
+        return false;
+      }
+
+      // the whole history, in launch order
+      for (int i = 0; i < numPods; i += 37) {
+        if (!station.getLaunchedPod(i).equals(pods[i])) {
+          return false;
+        }
+      }
+      Pod restored = station.getLaunchedPod(3);
+      if (restored.getNumPassengers() != 1 || !restored.containsPassenger("p3")
+          || station.getLaunchedPod(5).peekFunctional()) {
+        return false;
+      }
+      if (!pods[1500].equals(station.findPassenger("p1500"))
+          || !pods[numPods - 1].equals(station.findPassenger("p" + (numPods - 1)))
+          || station.findPassenger("p5") != null || station.findPassenger("nobody") != null) {
+        return false;
+      }
+      if (station.getNumPassengers() != numPods - 1) {
+        return false;
+      }
+
+      // failed pods count the same in memory and on disk
+      pods[numPods - 1].setNonFunctional();
+      if (station.getNumPassengers() != numPods - 2) {
+        return false;
+      }
+
+      // the time limit spills pods even while the count limit would keep them
+      now[0] = 120_000;
+      if (station.enforceRetention() != 10 || !station.launched.isEmpty()
+          || station.getNumPassengers() != numPods - 2) {
+        return false;
+      }
+
+      // cleared pods no longer count towards the window
+      for (int i = 0; i < 12; i++) {
+        station.createPod(2, false);
+        Pod launchedPod = station.launchPod();
+        if (i % 4 == 0) {
+          launchedPod.setNonFunctional();
+        }
+      }
+      station.clearMalfunctioning();
+      if (station.launched.size() > 9 || station.enforceRetention() != 0) {
+        return false;
+      }
+
+      station.closeArchive();
+      if (station.getNumLaunched() != numPods + station.launched.size()
+          || !pods[7].equals(station.findPassenger("p7"))) {
+        return false;
+      }
+      return true;
+
+    } catch (Exception e) {
+      return false;
+    } finally {
+      if (directory != null) {
+        for (java.io.File file : directory.listFiles()) {
+          file.delete();
+        }
+        directory.delete();
+      }
+    }
+  }
+
+  /**
+   * Checks PodQuery. Counts, totals and groups computed from the station's columns should match the
+   * same figures computed pod by pod, after creating, launching, boarding, failing and removing
+   * pods, whether the columns are scanned sequentially or in parallel.
+   * 
+   * @return true if queries are functioning correctly, false otherwise
+   */
+  public static boolean testPodQuery() {
+    try {
+      java.util.Random random = new java.util.Random(36);
+      LoopStation station = new LoopStation();
+      List<Pod> pods = new ArrayList<>();
+      for (int i = 0; i < 3000; i++) {
+        Pod pod = station.createPod(1 + random.nextInt(12), random.nextInt(3) == 0);
+        for (int seats = random.nextInt(pod.getCapacity() + 1); seats > 0; seats--) {
+          pod.addPassenger("q" + i + "-" + seats);
+        }
+        pods.add(pod);
+        if (random.nextInt(3) == 0) {
+          station.launchPod();
+        }
+      }
+      for (int i = 0; i < 300; i++) {
+        Pod pod = pods.get(random.nextInt(pods.size()));
+        if (i % 3 == 0) {
+          station.removePod(pod);
+        } else if (i % 3 == 1 && pod.peekFunctional()) {
+          pod.setNonFunctional();
+        } else if (pod.peekFunctional() && pod.peekNumPassengers() > 0) {
+          pod.removePassenger(pod.peekLastPassenger());
+        }
+      }
+
+      // expected figures, pod by pod
+      long fullEconomy = 0;
+      long launchedFirst = 0;
+      long launchedFirstPassengers = 0;
+      long launchedFirstSeats = 0;
+      java.util.Map<Integer, Long> failedByCapacity = new java.util.TreeMap<>();
+      long waitingFunctional = 0;
+      for (Pod pod : pods) {
+        Track track = station.getTrackOf(pod);
+        if (track == null) {
+          continue;
+        }
+        int seats = pod.peekCapacity();
+        int passengers = pod.peekNumPassengers();
+        if (pod.peekPodClass() == Pod.ECONOMY && passengers > 0.8 * seats) {
+          fullEconomy++;
+        }
+        if (track == station.launched && pod.peekPodClass() == Pod.FIRST) {
+          launchedFirst++;
+          launchedFirstPassengers += passengers;
+          launchedFirstSeats += seats;
+        }
+        if (!pod.peekFunctional()) {
+          failedByCapacity.merge(seats / 5 * 5, 1L, Long::sum);
+        } else if (track != station.launched) {
+          waitingFunctional++;
+        }
+      }
+
+      for (int threshold : new int[] {PodQuery.PARALLEL_THRESHOLD, 1}) {
+        if (station.query().economy().occupancyAbove(0.8).parallelAbove(threshold)
+            .count() != fullEconomy) {
+          return false;
+        }
+        PodQuery.Aggregate first =
+            station.query().launched().firstClass().parallelAbove(threshold).aggregate();
+        if (first.getCount() != launchedFirst || first.getPassengers() != launchedFirstPassengers
+            || first.getSeats() != launchedFirstSeats) {
+          return false;
+        }
+        java.util.SortedMap<Integer, PodQuery.Aggregate> groups = station.query().failed()
+            .parallelAbove(threshold).groupBy(PodQuery.Key.CAPACITY, 5);
+        if (!groups.keySet().equals(failedByCapacity.keySet())) {
+          return false;
+        }
+        for (int bucket : groups.keySet()) {
+          if (groups.get(bucket).getCount() != failedByCapacity.get(bucket)) {
+            return false;
+          }
+        }
+        if (station.query().waiting().functional().parallelAbove(threshold)
+            .count() != waitingFunctional) {
+          return false;
+        }
+      }
+
+      // every pod on a track falls in exactly one class and one status group
+      long onTracks = station.getNumLaunched() + station.getNumWaiting();
+      long byClass = 0;
+      for (PodQuery.Aggregate group : station.query().groupBy(PodQuery.Key.CLASS, 0).values()) {
+        byClass += group.getCount();
+      }
+      long byOccupancy = 0;
+      for (PodQuery.Aggregate group : station.query().groupBy(PodQuery.Key.OCCUPANCY, 10)
+          .values()) {
+        byOccupancy += group.getCount();
+      }
+      return byClass == onTracks && byOccupancy == onTracks
+          && station.query().groupBy(PodQuery.Key.STATUS, 0).get(0).getCount() == station
+              .query().failed().count();
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks StationEventPublisher. A BLOCK subscriber should receive every change in order, in
+   * batches no larger than requested, and be completed on close; a DROP subscriber without demand
+   * should keep only its buffer's worth of events and have the rest counted as dropped.
+   * 
+   * @return true if the event stream is functioning correctly, false otherwise
+   */
+  public static boolean testEventPublisher() {
+    try {
+      LoopStation station = new LoopStation();
+      StationEventPublisher publisher =
+          new StationEventPublisher(station, 64, 16, StationEventPublisher.Overflow.BLOCK);
+      List<StationEvent> received = java.util.Collections.synchronizedList(new ArrayList<>());
+      java.util.concurrent.CountDownLatch done = new java.util.concurrent.CountDownLatch(1);
+      boolean[] oversized = {false};
+      publisher.subscribe(new java.util.concurrent.Flow.Subscriber<List<StationEvent>>() {
+        public void onSubscribe(java.util.concurrent.Flow.Subscription subscription) {
+          subscription.request(Long.MAX_VALUE);
+        }
+
+        public void onNext(List<StationEvent> batch) {
+          oversized[0] |= batch.size() > 16;
+          received.addAll(batch);
+        }
+
+        public void onError(Throwable error) {
+        }
+
+        public void onComplete() {
+          done.countDown();
+        }
+      });
+
+      Pod first = station.createPod(2, true);
+      first.addPassenger("Ann");
+      station.launchPod();
+      first.removePassenger("Ann");
+      first.setNonFunctional();
+      station.clearMalfunctioning();
+      Pod economy = station.createPod(600, false);
+      for (int i = 0; i < 500; i++) {
+        economy.addPassenger("rider" + i); // far more than the buffer holds
+      }
+      station.removePod(economy);
+      publisher.close(); // waits for the BLOCK subscriber's deliveries
+
+      if (done.getCount() != 0 || oversized[0]
+          || received.size() != 507 || publisher.getNumDropped() != 0) {
+        return false;
+      }
+      StationEvent.Type[] expected = {StationEvent.Type.CREATED, StationEvent.Type.BOARDED,
+          StationEvent.Type.LAUNCHED, StationEvent.Type.CANCELLED,
+          StationEvent.Type.MALFUNCTION_REMOVED, StationEvent.Type.CREATED};
+      for (int i = 0; i < received.size(); i++) {
+        if (received.get(i).getSequence() != i + 1) {
+          return false;
+        }
+      }
+      for (int i = 0; i < expected.length; i++) {
+        if (received.get(i).getType() != expected[i]) {
+          return false;
+        }
+      }
+      if (!"Ann".equals(received.get(1).getPassenger()) || received.get(0).getPodId() != first
+          .getId() || received.get(506).getType() != StationEvent.Type.REMOVED) {
+        return false;
+      }
+
+      // a subscriber that has not asked for anything keeps only its buffer's worth
+      StationEventPublisher dropping =
+          new StationEventPublisher(station, 8, 4, StationEventPublisher.Overflow.DROP);
+      List<StationEvent> kept = java.util.Collections.synchronizedList(new ArrayList<>());
+      java.util.concurrent.CountDownLatch finished = new java.util.concurrent.CountDownLatch(1);
+      java.util.concurrent.Flow.Subscription[] handle = new java.util.concurrent.Flow.Subscription[1];
+      dropping.subscribe(new java.util.concurrent.Flow.Subscriber<List<StationEvent>>() {
+        public void onSubscribe(java.util.concurrent.Flow.Subscription subscription) {
+          handle[0] = subscription;
+        }
+
+        public void onNext(List<StationEvent> batch) {
+          kept.addAll(batch);
+        }
+
+        public void onError(Throwable error) {
+        }
+
+        public void onComplete() {
+          finished.countDown();
+        }
+      });
+      for (int i = 0; i < 100; i++) {
+        station.createPod(1, false);
+      }
+      if (dropping.getNumDropped() != 92 || !kept.isEmpty()) {
+        return false;
+      }
+      // the buffer is still delivered on request after the publisher has shut its threads down
+      dropping.close();
+      handle[0].request(Long.MAX_VALUE);
+      return finished.await(10, java.util.concurrent.TimeUnit.SECONDS) && kept.size() == 8
+          && kept.get(7).getSequence() == 8 && dropping.getNumSubscribers() == 0;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks Track.addGroup(). A group should go to the single pod that fits it best, otherwise to the
+   * shortest run of adjacent pods, otherwise (with ANY_PODS) to the emptiest pods; a group that
+   * cannot be placed under the policy, or fails partway through, should leave every pod unchanged.
+   * 
+   * @return true if group booking is functioning correctly, false otherwise
+   */
+  public static boolean testAddGroup() {
+    try {
+      // economy pods are searched from the tail: free seats 2, 3, 0 (failed), 4, 1, 2
+      Track track = new Track();
+      int[] capacities = {2, 3, 5, 4, 3, 2};
+      int[] taken = {0, 0, 0, 0, 2, 0};
+      Pod[] pods = new Pod[capacities.length];
+      for (int i = capacities.length - 1; i >= 0; i--) {
+        pods[i] = new Pod(capacities[i], Pod.ECONOMY);
+        for (int j = 0; j < taken[i]; j++) {
+          pods[i].addPassenger("booked" + i + "-" + j);
+        }
+        track.add(pods[i]);
+      }
+      pods[2].setNonFunctional();
+      // track order from head: pods[5], pods[4], ..., pods[0]; searched from pods[0]
+
+      List<String> trio = java.util.Arrays.asList("a", "b", "c");
+      List<Pod> seats = track.addGroup(trio, false, Track.GroupPolicy.SAME_POD);
+      if (seats.size() != 3 || seats.get(0) != pods[1] || seats.get(2) != pods[1]) {
+        return false; // best fit is the 3-seat pod, not the 4-seat one
+      }
+
+      // 5 people: no single pod, shortest adjacent run is pods[3], pods[4] (4 + 1 seats)
+      List<String> five = java.util.Arrays.asList("d", "e", "f", "g", "h");
+      if (!track.addGroup(five, false, Track.GroupPolicy.SAME_POD).isEmpty()) {
+        return false;
+      }
+      seats = track.addGroup(five, false, Track.GroupPolicy.ADJACENT_PODS);
+      if (seats.size() != 5 || seats.get(0) != pods[3] || seats.get(3) != pods[3]
+          || seats.get(4) != pods[4] || !pods[4].isFull()) {
+        return false;
+      }
+
+      // left: pods[0] 2 seats, pods[5] 2 seats, not adjacent; all or nothing
+      List<String> four = java.util.Arrays.asList("i", "j", "k", "l");
+      int before = pods[0].getNumPassengers() + pods[5].getNumPassengers();
+      if (!track.addGroup(four, false, Track.GroupPolicy.ADJACENT_PODS).isEmpty()
+          || pods[0].getNumPassengers() + pods[5].getNumPassengers() != before) {
+        return false;
+      }
+      seats = track.addGroup(four, false, Track.GroupPolicy.ANY_PODS);
+      if (seats.size() != 4 || !pods[0].isFull() || !pods[5].isFull()
+          || !pods[5].containsPassenger("l")) {
+        return false;
+      }
+      if (!track.addGroup(java.util.Arrays.asList("m"), false, Track.GroupPolicy.ANY_PODS)
+          .isEmpty() || !track.addGroup(trio, true, Track.GroupPolicy.ANY_PODS).isEmpty()) {
+        return false;
+      }
+
+      // first class groups are searched from the head
+      Pod firstA = new Pod(2, Pod.FIRST);
+      Pod firstB = new Pod(2, Pod.FIRST);
+      track.add(firstA);
+      track.add(firstB); // firstB is now the head
+      seats = track.addGroup(java.util.Arrays.asList("n", "o", "p"), true,
+          Track.GroupPolicy.ADJACENT_PODS);
+      if (seats.size() != 3 || seats.get(0) != firstB || seats.get(2) != firstA) {
+        return false;
+      }
+
+      // any other failure partway through is rethrown with nobody boarded
+      LoopStation station = new LoopStation();
+      station.addListener(new StationListener() {
+        @Override
+        public void passengerAdded(Pod pod, String name) {
+          if (name.equals("Bad")) {
+            throw new IllegalStateException("rejected " + name);
+          }
+        }
+      });
+      Pod pod = station.createPod(4, false);
+      try {
+        station.waitingEconomy.addGroup(java.util.Arrays.asList("Amy", "Bad", "Cat"), false,
+            Track.GroupPolicy.SAME_POD);
+        return false;
+      } catch (IllegalStateException expected) {
+      }
+      return pod.getNumPassengers() == 0 && station.findPassenger("Amy") == null;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks ManifestLoader. A loaded station should have the pods, passengers and track order of a
+   * station built by adding the same pods one by one, IDs in manifest order, and a malformed line
+   * should be reported with its line number.
+   * 
+   * @return true if manifest loading is functioning correctly, false otherwise
+   */
+  public static boolean testManifestLoader() {
+    try {
+      String manifest = "# morning manifest\n"
+          + "W,E,3,Ann,Bob\n"
+          + "W,F,2,Cid\r\n"
+          + "\n"
+          + "L,F,1,Dee\n"
+          + "W,F,4\n"
+          + "L,E,2,Eve,Fay\n"
+          + "L,F,2,Gus\n"
+          + "W,E,1,Zo\u00eb";
+      LoopStation station = ManifestLoader.load(
+          new java.io.ByteArrayInputStream(manifest.getBytes("UTF-8")), false);
+
+      // the same pods, added one by one
+      Track first = new Track();
+      Track economy = new Track();
+      Track launched = new Track();
+      String[][] expected = {{"E", "3", "Ann", "Bob"}, {"F", "2", "Cid"}, {"LF", "1", "Dee"},
+          {"F", "4"}, {"LE", "2", "Eve", "Fay"}, {"LF", "2", "Gus"}, {"E", "1", "Zo\u00eb"}};
+      for (String[] line : expected) {
+        Pod pod = new Pod(Integer.parseInt(line[1]), line[0].endsWith("F") ? Pod.FIRST
+            : Pod.ECONOMY);
+        for (int i = 2; i < line.length; i++) {
+          pod.addPassenger(line[i]);
+        }
+        (line[0].startsWith("L") ? launched : pod.getPodClass() == Pod.FIRST ? first : economy)
+            .add(pod);
+      }
+      Track[][] pairs = {{first, station.waitingFirst}, {economy, station.waitingEconomy},
+          {launched, station.launched}};
+      for (Track[] pair : pairs) {
+        if (pair[0].size() != pair[1].size()) {
+          return false;
+        }
+        for (int i = 0; i < pair[0].size(); i++) {
+          if (!java.util.Arrays.equals(pair[0].get(i).peekPassengers(),
+              pair[1].get(i).peekPassengers())) {
+            return false;
+          }
+        }
+      }
+      if (station.getNumPassengers() != 8 || station.findPassenger("Zo\u00eb") == null
+          || station.findPod(station.launched.get(0).getId()) != station.launched.get(0)) {
+        return false;
+      }
+      // IDs follow the manifest: Ann's pod comes first, the last line's pod last
+      if (station.findPassenger("Zo\u00eb").getId() - station.findPassenger("Ann").getId() != 6) {
+        return false;
+      }
+
+      // too many passengers, a trailing comma, a double comma: rejected with the line number
+      for (String bad : new String[] {"W,E,1,Bob,Cid", "W,E,2,Bob,", "L,F,3,Bob,,Cid"}) {
+        try {
+          ManifestLoader.load(new java.io.ByteArrayInputStream(
+              ("W,E,2,Ann\n# fine\n" + bad + "\n").getBytes("UTF-8")), false);
+          return false;
+        } catch (java.io.IOException e) {
+          if (!e.getMessage().startsWith("Manifest line 3:")) {
+            return false;
+          }
+        }
+      }
+      return true;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks admission control. With waiting limits set, a full track should reject createPod() and
+   * tryCreatePod(), make the timed createPod() give up, and admit a blocked createPodBlocking() as
+   * soon as another thread launches a pod of its class; every refusal should be counted.
+   * 
+   * @return true if admission control is functioning correctly, false otherwise
+   */
+  public static boolean testAdmissionControl() {
+    try {
+      LoopStation station = new LoopStation();
+      station.createPod(2, true);
+      station.setWaitingLimits(2, 1);
+
+      // one first class place left, none for economy once its pod is created
+      if (station.tryCreatePod(2, true) == null || station.tryCreatePod(2, true) != null
+          || station.tryCreatePod(2, false) == null) {
+        return false;
+      }
+      try {
+        station.createPod(2, false);
+        return false;
+      } catch (IllegalStateException e) {
+        // expected
+      }
+      if (station.createPod(2, false, 20, java.util.concurrent.TimeUnit.MILLISECONDS) != null
+          || station.getNumShed() != 3 || station.getNumTimedOut() != 1) {
+        return false;
+      }
+
+      // removing a waiting pod makes room, so does launching one; an invalid pod does not use up
+      // the place it was admitted to
+      station.removePod(station.waitingFirst.get(0));
+      try {
+        station.tryCreatePod(0, true);
+        return false;
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+      if (station.tryCreatePod(2, true) == null || station.getNumWaiting() != 3) {
+        return false;
+      }
+
+      Pod[] admitted = new Pod[1];
+      Thread creator = new Thread(() -> {
+        try {
+          admitted[0] = station.createPodBlocking(2, false);
+        } catch (InterruptedException e) {
+          // admitted[0] stays null
+        }
+      });
+      creator.start();
+      Thread.sleep(50);
+      if (admitted[0] != null || !creator.isAlive()) {
+        return false;
+      }
+      synchronized (station) {
+        station.launchPod(); // first class
+      }
+      Thread.sleep(50);
+      if (admitted[0] != null) {
+        return false;
+      }
+      synchronized (station) {
+        station.launchPod(); // first class
+        station.launchPod(); // economy
+      }
+      creator.join(5_000);
+      return admitted[0] != null && station.waitingEconomy.get(0) == admitted[0]
+          && station.getNumDelayed() == 1 && station.getNumShed() == 3
+          && station.getNumWaiting() == 1;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks seat holds. A held seat should count as taken until the hold is confirmed, released or
+   * expires, expiry should follow the station's clock, consolidate() should leave pods with held
+   * seats alone, holds on pods that left the track should not board, and the timing wheel should
+   * expire random timers exactly at their deadlines, including deadlines that cascade down from its
+   * higher levels.
+   * 
+   * @return true if seat holds are functioning correctly, false otherwise
+   */
+  public static boolean testSeatHolds() {
+    try {
+      long[] now = {1_000};
+      LoopStation station = new LoopStation();
+      station.setClock(() -> now[0]);
+      Pod pod = station.createPod(2, false);
+
+      SeatHold ann = station.holdSeat("Ann", false, 100);
+      SeatHold bob = station.holdSeat("Bob", false, 200);
+      if (ann == null || bob == null || !pod.isFull() || station.holdSeat("Cid", false, 100) != null
+          || station.waitingEconomy.addPassenger("Cid", false) || station.holdSeat("Cid", true,
+              100) != null) {
+        return false;
+      }
+      if (!ann.confirm() || ann.confirm() || !pod.containsPassenger("Ann") || pod.getNumHeld() != 1
+          || ann.getState() != SeatHold.State.CONFIRMED) {
+        return false;
+      }
+
+      // Bob's hold runs out at 1200: nothing happens until the station looks at the clock
+      now[0] = 1_200;
+      if (pod.getNumHeld() != 1 || station.expireHolds() != 1 || pod.getNumHeld() != 0
+          || bob.getState() != SeatHold.State.EXPIRED || bob.confirm() || bob.release()
+          || pod.getNumPassengers() != 1) {
+        return false;
+      }
+
+      // a hold past its time cannot be confirmed even before expireHolds() runs
+      SeatHold cid = station.holdSeat("Cid", false, 50);
+      now[0] = 1_250;
+      if (cid.confirm() || pod.isFull()) {
+        return false;
+      }
+      SeatHold dee = station.holdSeat("Dee", false, 50);
+      if (!dee.release() || dee.getState() != SeatHold.State.RELEASED || pod.isFull()
+          || station.waitingEconomy.getNumHolds() != 0) {
+        return false;
+      }
+
+      // consolidate() would move Eve into the fuller pod if not for the held seat
+      Pod held = station.createPod(4, false);
+      held.addPassenger("Eve");
+      SeatHold fay = station.holdSeat("Fay", false, 1_000);
+      if (fay.getPod() != held || station.consolidate().getPodsRetired() != 0 || !fay.confirm()
+          || station.consolidate().getPodsRetired() != 1) {
+        return false;
+      }
+
+      // holds on pods that left the track are released instead of confirmed
+      LoopStation other = new LoopStation();
+      other.setClock(() -> now[0]);
+      Pod removed = other.createPod(1, false);
+      SeatHold gus = other.holdSeat("Gus", false, 1_000);
+      other.removePod(removed);
+      Pod launched = other.createPod(1, false);
+      SeatHold hal = other.holdSeat("Hal", false, 1_000);
+      other.launchPod();
+      if (gus.confirm() || gus.getState() != SeatHold.State.RELEASED
+          || removed.containsPassenger("Gus") || removed.getNumHeld() != 0 || hal.confirm()
+          || launched.containsPassenger("Hal") || other.findPassenger("Hal") != null
+          || other.waitingEconomy.getNumHolds() != 0) {
+        return false;
+      }
+
+      // the wheel against the deadlines it was given
+      java.util.Random random = new java.util.Random(41);
+      long start = random.nextInt(1 << 20);
+      HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(start);
+      long[] expiredAt = new long[5_000];
+      List<HierarchicalTimingWheel.Timer> timers = new ArrayList<>();
+      for (int i = 0; i < expiredAt.length; i++) {
+        int index = i;
+        HierarchicalTimingWheel.Timer timer = new HierarchicalTimingWheel.Timer() {
+          @Override
+          void expire() {
+            expiredAt[index] = wheel.getCurrentTick();
+          }
+        };
+        long delay = 1 + (i % 3 == 0 ? random.nextInt(64) : random.nextInt(1 << (6 * (i % 4 + 1))));
+        if (!wheel.schedule(timer, start + delay)) {
+          return false;
+        }
+        timers.add(timer);
+      }
+      for (int i = 0; i < timers.size(); i += 7) {
+        wheel.cancel(timers.get(i));
+      }
+      long tick = start;
+      while (wheel.size() > 0) {
+        tick += 1 + random.nextInt(5_000);
+        wheel.advance(tick);
+        for (int i = 0; i < timers.size(); i++) {
+          long deadline = timers.get(i).getDeadline();
+          boolean due = i % 7 != 0 && deadline <= tick;
+          if (due != (expiredAt[i] != 0) || (due && expiredAt[i] != deadline)) {
+            return false;
+          }
+        }
+      }
+      return true;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks the passenger index. Prefix queries should return matching passengers in name order,
+   * limited to k, with their pod and current track, including passengers who boarded before the
+   * index was enabled, and should stop returning passengers who cancelled or whose pod left.
+   * 
+   * @return true if the passenger index is functioning correctly, false otherwise
+   */
+  public static boolean testPassengerIndex() {
+    try {
+      LoopStation station = new LoopStation();
+      Pod economy = station.createPod(4, false);
+      economy.addPassenger("Annabel");
+      station.enablePassengerIndex();
+
+      Pod first = station.createPod(4, true);
+      first.addPassenger("Ann");
+      first.addPassenger("Anna");
+      economy.addPassenger("Bob");
+      economy.addPassenger("Anna");
+      Pod broken = station.createPod(2, true);
+      broken.addPassenger("Andy");
+
+      List<PassengerIndex.Match> matches = station.findPassengersByPrefix("An", 10);
+      String names = "";
+      for (PassengerIndex.Match match : matches) {
+        names += match.getName() + "@" + (match.getPod() == economy ? "e" : "f") + " ";
+      }
+      // both Annas are returned, in boarding order
+      if (!names.equals("Andy@f Ann@f Anna@f Anna@e Annabel@e ")
+          || station.findPassengersByPrefix("An", 2).size() != 2
+          || station.findPassengersByPrefix("Z", 10).size() != 0
+          || station.findPassengersByPrefix("", 10).size() != 6) {
+        return false;
+      }
+
+      // a launch moves the passengers to the launched track
+      station.launchPod(); // broken, launched last in first out
+      broken.setNonFunctional();
+      station.launchPod(); // first
+      matches = station.findPassengersByPrefix("Ann", 1);
+      if (matches.get(0).getTrack() != station.launched || matches.get(0).getPod() != first) {
+        return false;
+      }
+
+      // cancellations and removed pods leave the index
+      first.removePassenger("Anna");
+      station.clearMalfunctioning();
+      station.removePod(economy);
+      matches = station.findPassengersByPrefix("An", 10);
+      return matches.size() == 1 && matches.get(0).getName().equals("Ann")
+          && station.findPassengersByPrefix("Bob", 10).isEmpty();
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks ColumnKernels. The kernels in use, vectorized or not, should agree with the scalar loops
+   * on every mask and on ranges of any length and alignment; queries should list failed pods and
+   * pods with free seats, and getNumPassengers() should skip passengers on failed pods.
+   * 
+   * @return true if the column kernels are functioning correctly, false otherwise
+   */
+  public static boolean testColumnKernels() {
+    try {
+      java.util.Random random = new java.util.Random(44);
+      PodColumns columns = new PodColumns();
+      int slots = 5000;
+      columns.status = new byte[slots];
+      columns.podClass = new byte[slots];
+      columns.track = new byte[slots];
+      columns.capacity = new int[slots];
+      columns.occupancy = new int[slots];
+      columns.highWater = slots;
+      columns.maxCapacity = 40;
+      for (int slot = 0; slot < slots; slot++) {
+        columns.status[slot] = (byte) random.nextInt(3);
+        columns.podClass[slot] = (byte) random.nextInt(2);
+        columns.track[slot] = (byte) random.nextInt(3);
+        columns.capacity[slot] = 1 + random.nextInt(40);
+        columns.occupancy[slot] = random.nextInt(columns.capacity[slot] + 1);
+      }
+
+      ColumnKernels scalar = new ScalarColumnKernels();
+      for (int i = 0; i < 500; i++) {
+        int statusMask = random.nextInt(4) << 1; // never VACANT
+        int classMask = random.nextInt(4);
+        int trackMask = random.nextInt(8);
+        boolean freeSeatsOnly = random.nextBoolean();
+        int from = random.nextInt(slots);
+        int to = from + random.nextInt(slots - from + 1);
+        long[] expected = new long[3];
+        long[] actual = new long[3];
+        scalar.aggregate(columns, statusMask, classMask, trackMask, freeSeatsOnly, from, to,
+            expected);
+        ColumnKernels.INSTANCE.aggregate(columns, statusMask, classMask, trackMask, freeSeatsOnly,
+            from, to, actual);
+        if (!java.util.Arrays.equals(expected, actual)
+            || scalar.next(columns, statusMask, classMask, trackMask, freeSeatsOnly, from,
+                to) != ColumnKernels.INSTANCE.next(columns, statusMask, classMask, trackMask,
+                    freeSeatsOnly, from, to)) {
+          return false;
+        }
+      }
+
+      LoopStation station = new LoopStation();
+      Pod full = station.createPod(2, true);
+      full.addPassenger("a");
+      full.addPassenger("b");
+      Pod half = station.createPod(2, false);
+      half.addPassenger("c");
+      Pod broken = station.createPod(3, false);
+      broken.addPassenger("d");
+      broken.setNonFunctional();
+      station.launchPod(); // broken
+      List<Pod> failed = station.query().failed().list(10);
+      List<Pod> free = station.query().functional().withFreeSeats().list(10);
+      return failed.size() == 1 && failed.get(0) == broken && free.size() == 1
+          && free.get(0) == half && station.query().list(2).size() == 2
+          && station.query().withFreeSeats().aggregate().getSeats() == 5
+          && station.query().economy().withFreeSeats().capacityBetween(3, 10).count() == 1
+          && station.getNumPassengers() == 3;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks FlightEvents and RecordingSummary. With a recording running, station and track
+   * operations should be recorded with the pods they traversed, scanned and removed, and the
+   * summary should count them; with none running, nothing should change.
+   * 
+   * @return true if the flight events are functioning correctly, false otherwise
+   */
+  public static boolean testFlightEvents() {
+    java.nio.file.Path file = null;
+    try {
+      LoopStation station = new LoopStation();
+      for (int i = 0; i < 3; i++) {
+        station.createPod(2, false);
+      }
+
+      try (jdk.jfr.Recording recording = new jdk.jfr.Recording()) {
+        for (String name : new String[] {"PodLaunch", "PodCreate", "MalfunctionSweep",
+            "PassengerSearch", "PassengerBoarding", "PodMalfunction"}) {
+          recording.enable(RecordingSummary.PREFIX + name).withThreshold(java.time.Duration.ZERO);
+        }
+        recording.start();
+
+        Pod first = station.createPod(2, true);
+        station.waitingEconomy.addPassenger("a", false); // the last economy pod has room
+        station.launchPod(); // first class
+        station.launchPod(); // economy, from the front
+        first.setNonFunctional();
+        station.waitingEconomy.findPassenger("a");
+        station.waitingEconomy.findPassenger("nobody");
+        try {
+          first.getCapacity();
+        } catch (MalfunctioningPodException expected) {
+        }
+        station.clearMalfunctioning();
+
+        recording.stop();
+        file = java.nio.file.Files.createTempFile("hyperloop", ".jfr");
+        recording.dump(file);
+      }
+
+      java.util.Map<String, RecordingSummary.Stats> stats = RecordingSummary.summarize(file);
+      RecordingSummary.Stats launches = stats.get("hyperloop.PodLaunch");
+      RecordingSummary.Stats searches = stats.get("hyperloop.PassengerSearch");
+      RecordingSummary.Stats sweeps = stats.get("hyperloop.MalfunctionSweep");
+      return launches.getCount() == 2 && launches.getSum("podsSpilled") == 0
+          && stats.get("hyperloop.PodCreate").getCount() == 1
+          && stats.get("hyperloop.PassengerBoarding").getSum("podsTraversed") == 1
+          && searches.getCount() == 2 && searches.getSum("podsTraversed") == 2 + 2
+          && sweeps.getSum("launchedPods") == 2 && sweeps.getSum("podsRemoved") == 1
+          && stats.get("hyperloop.PodMalfunction").getCount() >= 1
+          && !stats.containsKey("hyperloop.HealthCheck") && station.getNumLaunched() == 1;
+
+    } catch (Exception e) {
+      return false;
+    } finally {
+      if (file != null) {
+        file.toFile().delete();
+      }
+    }
+  }
+
+  /**
+   * Checks HyperloopNetwork. Routes should be the fastest ones, come from cached trees, and change
+   * when links change, which should drop only the trees they affect; dispatched pods should carry
+   * their passengers along the route and be delivered to their destination on arrival, once it has
+   * room.
+   * 
+   * @return true if the network is functioning correctly, false otherwise
+   */
+  public static boolean testHyperloopNetwork() {
+    try {
+      long[] now = {1_000};
+      HyperloopNetwork network = new HyperloopNetwork();
+      network.setClock(() -> now[0]);
+      for (String name : new String[] {"A", "B", "C", "D", "E"}) {
+        network.addStation(name, new LoopStation());
+      }
+      network.setLink("A", "B", 10);
+      network.setLink("B", "C", 10);
+      network.setLink("A", "C", 30);
+      network.setLink("C", "D", 5);
+
+      HyperloopNetwork.Route route = network.route("A", "D");
+      if (!route.getStations().equals(List.of("A", "B", "C", "D")) || route.getTravelMillis() != 25
+          || network.route("A", "E") != null
+          || network.getTravelMillis("A", "E") != HyperloopNetwork.UNREACHABLE
+          || network.getTravelMillis("D", "A") != HyperloopNetwork.UNREACHABLE
+          || network.getNumTreesComputed() != 2) {
+        return false;
+      }
+
+      // a faster link drops only the trees it shortens: A's, not B's
+      network.route("B", "D");
+      network.setLink("A", "C", 15);
+      if (network.getNumCachedTrees() != 2 || network.getNumTreesComputed() != 3
+          || !network.route("A", "D").getStations().equals(List.of("A", "C", "D"))
+          || network.getNumTreesComputed() != 4) {
+        return false;
+      }
+
+      // a slower link drops the trees using it; stations added later start unreachable
+      network.setLink("A", "B", 12);
+      network.addStation("F", new LoopStation());
+      if (network.getNumCachedTrees() != 2
+          || network.getTravelMillis("A", "F") != HyperloopNetwork.UNREACHABLE) {
+        return false;
+      }
+      network.setLink("C", "D", 50);
+      if (network.getNumCachedTrees() != 1 || network.getTravelMillis("A", "D") != 65) {
+        return false;
+      }
+      network.removeStation("C");
+      if (network.route("A", "D") != null || network.getTravelMillis("A", "B") != 12
+          || network.removeLink("A", "D")) {
+        return false;
+      }
+
+      // dispatching a pod with a passenger from A to B
+      LoopStation origin = network.getStation("A");
+      Pod pod = origin.createPod(2, false);
+      pod.addPassenger("Rosa");
+      HyperloopNetwork.Trip trip = network.dispatch("A", "B");
+      if (trip.getPod() != pod || trip.getArrivalMillis() != 1_012
+          || network.findTrip("Rosa") != trip || origin.getTrackOf(pod) != origin.launched
+          || !network.arrivals().isEmpty()) {
+        return false;
+      }
+      origin.createPod(2, false);
+      try {
+        network.dispatch("A", "D");
+        return false;
+      } catch (IllegalStateException expected) {
+      }
+      now[0] = 1_012;
+      LoopStation destination = network.getStation("B");
+      List<HyperloopNetwork.Trip> arrived = network.arrivals();
+      if (arrived.size() != 1 || arrived.get(0) != trip || origin.getTrackOf(pod) != null
+          || network.getNumInTransit() != 0 || origin.getNumWaiting() != 1
+          || destination.getTrackOf(pod) != destination.waitingEconomy
+          || destination.findPassenger("Rosa") != pod || origin.findPassenger("Rosa") != null
+          || network.findTrip("Rosa") != null) {
+        return false;
+      }
+
+      // a pod waits in transit while its destination has no room
+      destination.setWaitingLimits(1, 1);
+      origin.findPod(origin.waitingEconomy.get(0).getId()).addPassenger("Sam");
+      HyperloopNetwork.Trip waiting = network.dispatch("A", "B");
+      now[0] = 1_024;
+      if (!network.arrivals().isEmpty() || network.findTrip("Sam") != waiting
+          || destination.findPassenger("Sam") != null) {
+        return false;
+      }
+      destination.launchPod();
+      return network.arrivals().size() == 1 && network.getNumInTransit() == 0
+          && destination.findPassenger("Sam") == waiting.getPod();
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks StationRegistry. Registered stations should only be created on first use; maintenance
+   * should reach every materialized station in turn, sweep out malfunctioning pods, survive a
+   * failing task and stop for unregistered stations; memory estimates should grow with the pods.
+   * 
+   * @return true if the registry is functioning correctly, false otherwise
+   */
+  public static boolean testStationRegistry() {
+    try (StationRegistry registry = new StationRegistry(64)) {
+      for (int i = 0; i < 1000; i++) {
+        registry.register("platform-" + i);
+      }
+      try {
+        registry.register("platform-7");
+        return false;
+      } catch (IllegalArgumentException expected) {
+      }
+      if (registry.getNumMaterialized() != 0
+          || registry.estimateBytes() != 1000 * StationRegistry.HANDLE_BYTES) {
+        return false;
+      }
+
+      StationRegistry.Handle busy = registry.getHandle("platform-1");
+      StationRegistry.Handle quiet = registry.getHandle("platform-2");
+      LoopStation station = busy.get();
+      Pod broken = station.createPod(8, false);
+      station.createPod(8, true);
+      station.launchPod();
+      station.launchPod();
+      broken.setNonFunctional();
+      quiet.get();
+      if (busy.get() != station || registry.getNumMaterialized() != 2
+          || registry.largest(1).get(0) != busy || busy.estimateBytes() <= quiet.estimateBytes()) {
+        return false;
+      }
+
+      // a full lap, then one station per slice when the budget is spent at once; the health check
+      // may fail the other pod too
+      int[] tasks = {0};
+      registry.addMaintenance(s -> tasks[0]++);
+      if (registry.runMaintenance(Long.MAX_VALUE) != 2 || station.getNumLaunched() > 1
+          || tasks[0] != 2 || registry.runMaintenance(0) != 1 || registry.runMaintenance(0) != 1
+          || busy.getNumMaintained() != 2 || quiet.getNumMaintained() != 2) {
+        return false;
+      }
+
+      // a failing task is counted; unregistered stations leave the queue
+      boolean[] failed = {false};
+      registry.addMaintenance(s -> {
+        if (!failed[0]) {
+          failed[0] = true;
+          throw new IllegalStateException("sweep failed"); // once
+        }
+      });
+      registry.unregister("platform-2");
+      if (registry.runMaintenance(Long.MAX_VALUE) != 1 || registry.getNumFailures() != 1
+          || busy.getNumFailures() != 1
+          || !"sweep failed".equals(busy.getLastFailure().getMessage())
+          || quiet.getNumFailures() != 0 || quiet.getLastFailure() != null
+          || registry.getNumMaterialized() != 1 || registry.size() != 999
+          || quiet.getNumMaintained() != 2) {
+        return false;
+      }
+
+      // in the background
+      registry.startMaintenance(1, java.util.concurrent.TimeUnit.MILLISECONDS, 1);
+      long deadline = System.nanoTime() + 5_000_000_000L;
+      while (busy.getNumMaintained() < 10 && System.nanoTime() < deadline) {
+        Thread.sleep(1);
+      }
+      return busy.getNumMaintained() >= 10 && busy.getNumFailures() == 1;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks the launch index. Launches should be stamped with consecutive sequence numbers and
+   * their launch time, found by sequence and by time range, and keep their sequence numbers when
+   * other launched pods are removed; removed pods should no longer be returned.
+   * 
+   * @return true if the launch index is functioning correctly, false otherwise
+   */
+  public static boolean testLaunchIndex() {
+    try {
+      long[] now = {10_000};
+      LoopStation station = new LoopStation();
+      station.setClock(() -> now[0]);
+      station.createPod(2, false);
+      station.launchPod(); // before the index: stamped but not indexed
+      station.enableLaunchIndex();
+
+      // 1000 launches, one per second from 20:00 on; sequence numbers continue from 2
+      List<Pod> pods = new ArrayList<>();
+      for (int i = 0; i < 1000; i++) {
+        now[0] = 20_000 + i * 1_000L;
+        pods.add(station.createPod(2, false));
+        station.launchPod();
+      }
+      Pod thousandth = station.findLaunch(1000);
+      if (station.launched.get(0).getLaunchSequence() != 1 || station.findLaunch(1) != null
+          || thousandth != pods.get(998) || thousandth.getLaunchMillis() != 1_018_000
+          || station.findLaunch(1002) != null) {
+        return false;
+      }
+
+      // five launches between 20.5 s and 25 s
+      List<Pod> range = station.getLaunchedBetween(20_500, 25_000);
+      if (range.size() != 5 || range.get(0) != pods.get(1) || range.get(4) != pods.get(5)) {
+        return false;
+      }
+
+      // removals leave tombstones: the other sequence numbers and ranges are unaffected
+      pods.get(3).setNonFunctional();
+      station.clearMalfunctioning();
+      station.removePod(pods.get(4));
+      range = station.getLaunchedBetween(20_500, 25_000);
+      if (range.size() != 3 || range.get(2) != pods.get(5) || station.findLaunch(5) != null
+          || station.findLaunch(7) != pods.get(5) || thousandth != station.findLaunch(1000)) {
+        return false;
+      }
+
+      // whole blocks of tombstones are dropped; what is left is still found
+      for (int i = 0; i < 600; i++) {
+        station.removePod(pods.get(i));
+      }
+      if (station.findLaunch(601) != null || station.findLaunch(602) != pods.get(600)
+          || station.getLaunchedBetween(0, 2_000_000).size() != 400
+          || station.getLaunchedBetween(2_000_000, 3_000_000).size() != 0) {
+        return false;
+      }
+
+      // launch times never go backwards, even if the clock does
+      now[0] = 0;
+      station.createPod(2, false);
+      station.launchPod();
+      return station.findLaunch(1002).getLaunchMillis() == 1_019_000;
+
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
   public static void main(String[] args) {
     boolean test1 = testCreatePod();
     System.out.println("testCreatePod: " + (test1 ? "PASS" : "fail"));
@@ -227,7 +2055,72 @@ public class LoopStationTester {
     boolean test4 = testGetNums();
     System.out.println("testGetNums: " + (test4 ? "PASS" : "fail"));
 
-    System.out.println("ALL TESTS: " + ((test1 && test2 && test3 && test4) ? "PASS" : "fail"));
+    boolean test5 = testStationPipeline();
+    System.out.println("testStationPipeline: " + (test5 ? "PASS" : "fail"));
+
+    boolean test6 = testTrackSnapshot();
+    System.out.println("testTrackSnapshot: " + (test6 ? "PASS" : "fail"));
+
+    boolean test7 = testFailedPodIndex();
+    System.out.println("testFailedPodIndex: " + (test7 ? "PASS" : "fail"));
+
+    boolean test8 = testNodeRecycling();
+    System.out.println("testNodeRecycling: " + (test8 ? "PASS" : "fail"));
+
+    boolean test9 = testIndexedTrack();
+    System.out.println("testIndexedTrack: " + (test9 ? "PASS" : "fail"));
+
+    boolean test10 = testPodIds();
+    System.out.println("testPodIds: " + (test10 ? "PASS" : "fail"));
+
+    boolean test11 = testConsolidate();
+    System.out.println("testConsolidate: " + (test11 ? "PASS" : "fail"));
+
+    boolean test12 = testReplication();
+    System.out.println("testReplication: " + (test12 ? "PASS" : "fail"));
+
+    boolean test13 = testPassengerFilters();
+    System.out.println("testPassengerFilters: " + (test13 ? "PASS" : "fail"));
+
+    boolean test14 = testRetention();
+    System.out.println("testRetention: " + (test14 ? "PASS" : "fail"));
+
+    boolean test15 = testPodQuery();
+    System.out.println("testPodQuery: " + (test15 ? "PASS" : "fail"));
+
+    boolean test16 = testEventPublisher();
+    System.out.println("testEventPublisher: " + (test16 ? "PASS" : "fail"));
+
+    boolean test17 = testAddGroup();
+    System.out.println("testAddGroup: " + (test17 ? "PASS" : "fail"));
+
+    boolean test18 = testManifestLoader();
+    System.out.println("testManifestLoader: " + (test18 ? "PASS" : "fail"));
+
+    boolean test19 = testAdmissionControl();
+    System.out.println("testAdmissionControl: " + (test19 ? "PASS" : "fail"));
+
+    boolean test20 = testSeatHolds();
+    System.out.println("testSeatHolds: " + (test20 ? "PASS" : "fail"));
+
+    boolean test21 = testPassengerIndex();
+    System.out.println("testPassengerIndex: " + (test21 ? "PASS" : "fail"));
+
+    boolean test22 = testLaunchIndex();
+    System.out.println("testLaunchIndex: " + (test22 ? "PASS" : "fail"));
+    boolean test23 = testColumnKernels();
+    System.out.println("testColumnKernels: " + (test23 ? "PASS" : "fail"));
+    boolean test24 = testFlightEvents();
+    System.out.println("testFlightEvents: " + (test24 ? "PASS" : "fail"));
+    boolean test25 = testHyperloopNetwork();
+    System.out.println("testHyperloopNetwork: " + (test25 ? "PASS" : "fail"));
+    boolean test26 = testStationRegistry();
+    System.out.println("testStationRegistry: " + (test26 ? "PASS" : "fail"));
+
+    System.out.println("ALL TESTS: " + ((test1 && test2 && test3 && test4 && test5 && test6 && test7
+        && test8 && test9 && test10 && test11 && test12 && test13 && test14 && test15 && test16
+        && test17 && test18 && test19 && test20 && test21 && test22 && test23
+        && test24 && test25 && test26) ? "PASS" : "fail"));
   }
 
 }
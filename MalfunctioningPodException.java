@@ -1,12 +1,24 @@
-
 public class MalfunctioningPodException extends Exception {
 
   public MalfunctioningPodException() {
     super();
+    record(null);
   }
   
   public MalfunctioningPodException(String message) {
     super(message);
+    record(message);
+  }
+
+  /**
+   * Commits a FlightEvents.PodMalfunction if a recording wants one
+   */
+  private static void record(String message) {
+    FlightEvents.PodMalfunction event = new FlightEvents.PodMalfunction();
+    if (event.shouldCommit()) {
+      event.message = message;
+      event.commit();
+    }
   }
 
 }
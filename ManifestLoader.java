@@ -0,0 +1,275 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a LoopStation from a manifest in bulk, instead of one createPod() and addPassenger() call
+ * at a time. The manifest is read in chunks of whole lines that are parsed in parallel; the pods
+ * are then linked onto each track in their final order in a single pass. The station ends up as if
+ * every pod had been add()ed to its track in manifest order, with pod IDs in manifest order too.
+ *
+ * A manifest has one pod per line; blank lines and lines starting with # are ignored:
+ *
+ * <pre>
+ * track,class,capacity[,passenger...]
+ * W,F,4,Ann,Bob     a first class pod waiting to launch, with two of its four seats taken
+ * L,E,2,Cid         an economy pod already launched
+ * </pre>
+ *
+ * track is W (waiting) or L (launched), class F (first) or E (economy). Passenger names are UTF-8,
+ * may not be empty and may not contain commas.
+ */
+public class ManifestLoader {
+
+  /**
+   * Bytes read per chunk; each chunk is extended to the end of its last line
+   */
+  static final int CHUNK_BYTES = 1 << 22;
+
+  /**
+   * The pods parsed from one chunk, as columns, or the first error found in it
+   */
+  private static final class Chunk {
+
+    private int numLines; // lines in the chunk, including ignored ones
+
+    private int numPods; // pods parsed
+
+    private boolean[] launched = new boolean[256]; // whether each pod is launched
+
+    private byte[] podClass = new byte[256]; // Pod.FIRST or Pod.ECONOMY per pod
+
+    private String[][] seats = new String[256][]; // seats per pod, null for empty ones
+
+    private int errorLine = -1; // line of the first error within the chunk, from 0
+
+    private String error; // what was wrong with that line
+
+    private Pod[] pods; // the pods built from the columns, in manifest order
+
+    private void add(boolean isLaunched, int klass, String[] podSeats) {
+      if (numPods == seats.length) {
+        int length = numPods * 2;
+        launched = Arrays.copyOf(launched, length);
+        podClass = Arrays.copyOf(podClass, length);
+        seats = Arrays.copyOf(seats, length);
+      }
+      launched[numPods] = isLaunched;
+      podClass[numPods] = (byte) klass;
+      seats[numPods] = podSeats;
+      numPods++;
+    }
+  }
+
+  private ManifestLoader() {
+    // static methods only
+  }
+
+  /**
+   * Builds a station from a manifest file
+   *
+   * @param manifest path of the manifest
+   * @return the new station
+   * @throws IOException if the file cannot be read or a line is malformed
+   */
+  public static LoopStation load(Path manifest) throws IOException {
+    try (InputStream in = Files.newInputStream(manifest)) {
+      return load(in, false);
+    }
+  }
+
+  /**
+   * Builds a station from a manifest stream, see the class comment for the format
+   *
+   * @param in            the manifest; read to the end but not closed
+   * @param indexedTracks true to build the station with IndexedTracks, see LoopStation(boolean)
+   * @return the new station
+   * @throws IOException if the stream cannot be read or a line is malformed
+   */
+  public static LoopStation load(InputStream in, boolean indexedTracks) throws IOException {
+
+    // read whole lines chunk by chunk, parsing each on the common pool while reading the next
+    List<CompletableFuture<Chunk>> parsing = new ArrayList<>();
+    byte[] carry = new byte[0];
+    while (true) {
+      byte[] buffer = Arrays.copyOf(carry, carry.length + CHUNK_BYTES);
+      int filled = carry.length;
+      int read = 0;
+      while (filled < buffer.length && read >= 0) {
+        read = in.read(buffer, filled, buffer.length - filled);
+        filled += Math.max(read, 0);
+      }
+      boolean end = filled < buffer.length;
+
+      int lineEnd = filled;
+      if (!end) {
+        while (lineEnd > 0 && buffer[lineEnd - 1] != '\n') {
+          lineEnd--;
+        }
+        if (lineEnd == 0) {
+          carry = buffer; // one line longer than the chunk: read more of it
+          continue;
+        }
+      }
+
+      int length = lineEnd;
+      parsing.add(CompletableFuture.supplyAsync(() -> parse(buffer, length)));
+      carry = Arrays.copyOfRange(buffer, lineEnd, filled);
+      if (end) {
+        break;
+      }
+    }
+
+    Chunk[] chunks = new Chunk[parsing.size()];
+    int totalPods = 0;
+    int linesBefore = 0;
+    for (int i = 0; i < chunks.length; i++) {
+      try {
+        chunks[i] = parsing.get(i).join();
+      } catch (CompletionException e) {
+        throw new IOException("Cannot parse manifest", e.getCause());
+      }
+      if (chunks[i].error != null) {
+        throw new IOException("Manifest line " + (linesBefore + chunks[i].errorLine + 1) + ": "
+            + chunks[i].error);
+      }
+      linesBefore += chunks[i].numLines;
+      totalPods += chunks[i].numPods;
+    }
+
+    // build the pods in parallel, with consecutive IDs in manifest order
+    long firstId = Pod.reserveIds(totalPods);
+    long[] chunkFirstId = new long[chunks.length];
+    for (int i = 0, pods = 0; i < chunks.length; pods += chunks[i].numPods, i++) {
+      chunkFirstId[i] = firstId + pods;
+    }
+    IntStream.range(0, chunks.length).parallel().forEach(i -> {
+      Chunk chunk = chunks[i];
+      chunk.pods = new Pod[chunk.numPods];
+      for (int j = 0; j < chunk.numPods; j++) {
+        chunk.pods[j] = new Pod(chunkFirstId[i] + j, chunk.podClass[j], chunk.seats[j], true);
+      }
+      chunk.seats = null;
+    });
+
+    // add() puts first class pods in front and economy pods at the back
+    List<Pod> waitingFirst = new ArrayList<>();
+    List<Pod> waitingEconomy = new ArrayList<>();
+    List<Pod> launchedFirst = new ArrayList<>();
+    List<Pod> launchedEconomy = new ArrayList<>();
+    for (Chunk chunk : chunks) {
+      for (int j = 0; j < chunk.numPods; j++) {
+        boolean first = chunk.podClass[j] == Pod.FIRST;
+        if (chunk.launched[j]) {
+          (first ? launchedFirst : launchedEconomy).add(chunk.pods[j]);
+        } else {
+          (first ? waitingFirst : waitingEconomy).add(chunk.pods[j]);
+        }
+      }
+    }
+    Collections.reverse(waitingFirst);
+    Collections.reverse(launchedFirst);
+    launchedFirst.addAll(launchedEconomy);
+
+    LoopStation station = new LoopStation(indexedTracks);
+    station.loadPods(waitingFirst, waitingEconomy, launchedFirst);
+    return station;
+  }
+
+  /**
+   * Parses the lines in buffer[0, length)
+   */
+  private static Chunk parse(byte[] buffer, int length) {
+
+    Chunk chunk = new Chunk();
+    int position = 0;
+
+    while (position < length) {
+
+      int lineEnd = position;
+      while (lineEnd < length && buffer[lineEnd] != '\n') {
+        lineEnd++;
+      }
+      int next = lineEnd + 1;
+      if (lineEnd > position && buffer[lineEnd - 1] == '\r') {
+        lineEnd--;
+      }
+
+      if (lineEnd > position && buffer[position] != '#') {
+        String error = parseLine(buffer, position, lineEnd, chunk);
+        if (error != null) {
+          chunk.errorLine = chunk.numLines;
+          chunk.error = error;
+          return chunk;
+        }
+      }
+
+      chunk.numLines++;
+      position = next;
+    }
+
+    return chunk;
+  }
+
+  /**
+   * Parses one pod line into the chunk
+   *
+   * @return a description of the problem, or null if the line is valid
+   */
+  private static String parseLine(byte[] buffer, int start, int end, Chunk chunk) {
+
+    // track and class are single letters: "W,F," is four bytes
+    if (end - start < 5 || buffer[start + 1] != ',' || buffer[start + 3] != ',') {
+      return "expected track,class,capacity[,passenger...]";
+    }
+
+    byte track = buffer[start];
+    byte klass = buffer[start + 2];
+    if ((track != 'W' && track != 'L') || (klass != 'F' && klass != 'E')) {
+      return "track must be W or L and class F or E";
+    }
+
+    int position = start + 4;
+    int capacity = 0;
+    while (position < end && buffer[position] != ',') {
+      int digit = buffer[position] - '0';
+      if (digit < 0 || digit > 9 || capacity > (Integer.MAX_VALUE - digit) / 10) {
+        return "invalid capacity";
+      }
+      capacity = capacity * 10 + digit;
+      position++;
+    }
+    if (capacity == 0) {
+      return "invalid capacity";
+    }
+
+    String[] seats = new String[capacity];
+    int taken = 0;
+    while (position < end) {
+      int nameStart = ++position; // skip the comma
+      while (position < end && buffer[position] != ',') {
+        position++;
+      }
+      if (position == nameStart) {
+        return "empty passenger name";
+      }
+      if (taken == capacity) {
+        return "more passengers than seats";
+      }
+      seats[taken++] = new String(buffer, nameStart, position - nameStart,
+          StandardCharsets.UTF_8);
+    }
+
+    chunk.add(track == 'L', klass == 'F' ? Pod.FIRST : Pod.ECONOMY, seats);
+    return null;
+  }
+}
@@ -0,0 +1,116 @@
+/**
+ * A Bloom filter over passenger names. mightContain() never answers false for a name that was
+ * added, and answers true for a name that was not added with a small probability (the false
+ * positive rate). Names cannot be removed; a passenger who left only costs a wasted scan.
+ */
+public class PassengerFilter {
+
+  private final long[] bits; // the filter's bit array
+
+  private final int mask; // number of bits minus one, the bit count being a power of two
+
+  private final int numHashes; // number of bits set per name
+
+  /**
+   * Creates an empty filter
+   * 
+   * @param numBits   size of the bit array, rounded up to a power of two (at least 64)
+   * @param numHashes number of bits set per name
+   */
+  public PassengerFilter(int numBits, int numHashes) {
+    int size = Math.max(64, Integer.highestOneBit(numBits - 1) << 1);
+    this.bits = new long[size >>> 6];
+    this.mask = size - 1;
+    this.numHashes = numHashes;
+  }
+
+  /**
+   * Rebuilds a filter from the words returned by toWords(), e.g. after reading them from disk
+   * 
+   * @param words     the filter's bit array
+   * @param numHashes number of bits set per name
+   */
+  public PassengerFilter(long[] words, int numHashes) {
+    this.bits = words.clone();
+    this.mask = words.length * 64 - 1;
+    this.numHashes = numHashes;
+  }
+
+  /**
+   * Records a name in the filter
+   * 
+   * @param name the passenger's name (null is ignored)
+   */
+  public void add(String name) {
+    if (name == null) {
+      return;
+    }
+    long hash = mix(name.hashCode());
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32) | 1;
+    for (int i = 0; i < numHashes; i++) {
+      int bit = (h1 + i * h2) & mask;
+      bits[bit >>> 6] |= 1L << bit;
+    }
+  }
+
+  /**
+   * Checks whether a name may have been added
+   * 
+   * @param name the passenger's name
+   * @return false if the name was certainly never added, true if it may have been
+   */
+  public boolean mightContain(String name) {
+    if (name == null) {
+      return false;
+    }
+    long hash = mix(name.hashCode());
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32) | 1;
+    for (int i = 0; i < numHashes; i++) {
+      int bit = (h1 + i * h2) & mask;
+      if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds every name of another filter with the same size and number of hashes
+   * 
+   * @param other the filter to merge into this one
+   * @throws IllegalArgumentException if the filters have different shapes
+   */
+  public void addAll(PassengerFilter other) {
+    if (other.bits.length != bits.length || other.numHashes != numHashes) {
+      throw new IllegalArgumentException("Filters have different shapes");
+    }
+    for (int i = 0; i < bits.length; i++) {
+      bits[i] |= other.bits[i];
+    }
+  }
+
+  /**
+   * @return a copy of the bit array, see PassengerFilter(long[], int)
+   */
+  public long[] toWords() {
+    return bits.clone();
+  }
+
+  /**
+   * @return number of bits set per name
+   */
+  public int getNumHashes() {
+    return numHashes;
+  }
+
+  /**
+   * Spreads String.hashCode() (which is cached by the string) over 64 bits
+   */
+  private static long mix(int hashCode) {
+    long z = hashCode * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 32)) * 0xD6E8FEB86659FD93L;
+    return z ^ (z >>> 32);
+  }
+}
@@ -0,0 +1,201 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Station-wide index of passenger names in sorted order, for autocomplete: findByPrefix("Ann", 10)
+ * returns the first ten passengers whose names start with "Ann", with the pod and track each is on,
+ * in O(log n + k) instead of a scan of every seat. Matching is case-sensitive.
+ *
+ * The index is a listener of its station, see LoopStation.enablePassengerIndex(), so it follows
+ * every boarding and cancellation (including those made by consolidate()) and every pod taken off
+ * the station as it happens. It covers the pods on the station's tracks; pods spilled to disk by
+ * retention leave it. Like the station, it must be used on the thread that changes the station.
+ */
+public final class PassengerIndex implements StationListener {
+
+  /**
+   * One passenger found by findByPrefix()
+   */
+  public static final class Match {
+
+    private final String name; // the passenger
+
+    private final Pod pod; // the pod they are on
+
+    private final Track track; // the station track the pod is on
+
+    private Match(String name, Pod pod, Track track) {
+      this.name = name;
+      this.pod = pod;
+      this.track = track;
+    }
+
+    /**
+     * @return the passenger's full name
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the pod the passenger is on
+     */
+    public Pod getPod() {
+      return pod;
+    }
+
+    /**
+     * @return the track the pod is on, see LoopStation.getTrackOf()
+     */
+    public Track getTrack() {
+      return track;
+    }
+
+    @Override
+    public String toString() {
+      return name + " on pod " + pod.getId();
+    }
+  }
+
+  private final LoopStation station; // the station whose passengers are indexed
+
+  // pods by passenger name: a Pod, or a Pod[] (one entry per passenger) for names shared by several
+  private final TreeMap<String, Object> pods = new TreeMap<>();
+
+  private int size; // passengers indexed
+
+  /**
+   * Creates an empty index; LoopStation.enablePassengerIndex() fills it and registers it
+   *
+   * @param station the station whose passengers are indexed
+   */
+  PassengerIndex(LoopStation station) {
+    this.station = station;
+  }
+
+  /**
+   * Indexes every passenger on a track, e.g. when the index is enabled on a non-empty station
+   *
+   * @param track the track
+   */
+  void addAll(Track track) {
+    LinkedNode current = track.head;
+    while (current != null) {
+      for (String name : current.getPod().peekPassengers()) {
+        if (name != null) {
+          add(name, current.getPod());
+        }
+      }
+      current = current.getNext();
+    }
+  }
+
+  /**
+   * Finds the passengers whose names start with a prefix, in name order
+   *
+   * @param prefix the start of the name, e.g. what an agent has typed so far
+   * @param limit  most matches returned
+   * @return up to limit matches; passengers sharing a name are returned in boarding order
+   * @throws IllegalArgumentException if limit is negative
+   */
+  public List<Match> findByPrefix(String prefix, int limit) {
+
+    if (limit < 0) {
+      throw new IllegalArgumentException("Invalid limit " + limit);
+    }
+
+    List<Match> matches = new ArrayList<>(Math.min(limit, 16));
+
+    for (Map.Entry<String, Object> entry : pods.tailMap(prefix, true).entrySet()) {
+
+      String name = entry.getKey();
+      if (matches.size() == limit || !name.startsWith(prefix)) {
+        break;
+      }
+
+      Object value = entry.getValue();
+      for (Pod pod : value instanceof Pod ? new Pod[] {(Pod) value} : (Pod[]) value) {
+        // a track changed directly, behind the station's back, may have taken the pod away
+        Track track = station.getTrackOf(pod);
+        if (track != null && matches.size() < limit) {
+          matches.add(new Match(name, pod, track));
+        }
+      }
+    }
+
+    return matches;
+  }
+
+  /**
+   * @return number of passengers indexed
+   */
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void passengerAdded(Pod pod, String name) {
+    add(name, pod);
+  }
+
+  @Override
+  public void passengerRemoved(Pod pod, String name) {
+    remove(name, pod);
+  }
+
+  @Override
+  public void podRemoved(Pod pod) {
+    for (String name : pod.peekPassengers()) {
+      if (name != null) {
+        remove(name, pod);
+      }
+    }
+  }
+
+  private void add(String name, Pod pod) {
+
+    Object value = pods.putIfAbsent(name, pod);
+    if (value instanceof Pod) {
+      pods.put(name, new Pod[] {(Pod) value, pod});
+    } else if (value != null) {
+      Pod[] shared = (Pod[]) value;
+      Pod[] grown = Arrays.copyOf(shared, shared.length + 1);
+      grown[shared.length] = pod;
+      pods.put(name, grown);
+    }
+
+    size++;
+  }
+
+  private void remove(String name, Pod pod) {
+
+    Object value = pods.get(name);
+    if (value == pod) {
+      pods.remove(name);
+      size--;
+      return;
+    }
+    if (!(value instanceof Pod[])) {
+      return;
+    }
+
+    Pod[] shared = (Pod[]) value;
+    for (int i = 0; i < shared.length; i++) {
+      if (shared[i] == pod) {
+        if (shared.length == 2) {
+          pods.put(name, shared[1 - i]);
+        } else {
+          Pod[] shrunk = new Pod[shared.length - 1];
+          System.arraycopy(shared, 0, shrunk, 0, i);
+          System.arraycopy(shared, i + 1, shrunk, i, shrunk.length - i);
+          pods.put(name, shrunk);
+        }
+        size--;
+        return;
+      }
+    }
+  }
+}
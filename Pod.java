@@ -1,11 +1,11 @@
-import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class models Pod objects for the CS300 Hyperloop project.
  * 
- * Note: ALL METHODS except the constructor will throw a MalfunctioningPodException
- * if this pod is not functioning!
+ * Note: ALL PUBLIC METHODS except the constructor will throw a MalfunctioningPodException
+ * if this pod is not functioning! The package-private bookkeeping methods used by Track never do.
  * 
  * @author hobbes >:3
  */
@@ -26,6 +26,16 @@ public class Pod {
    */
   private static Random randGen = new Random();
   
+  /**
+   * Source of pod IDs, handed out in increasing order starting at 1
+   */
+  private static final AtomicLong nextId = new AtomicLong(1);
+  
+  /**
+   * Unique ID of this Pod, assigned at construction and never reused
+   */
+  private final long id;
+  
   /**
    * Indicator of whether this Pod is first class or economy class
    */
@@ -37,11 +47,41 @@ public class Pod {
    */
   private String[] passengerList;
   
+  /**
+   * Number of non-null elements in passengerList, kept up to date by addPassenger/removePassenger
+   */
+  private int numPassengers;
+  
+  /**
+   * Number of seats kept by SeatHolds that have not ended; held seats are taken but empty
+   */
+  private int numHeld;
+  
   /**
    * Indicator of whether this pod is currently functional; a false value
    * will cause all methods except equals/compareTo to throw a MalfunctioningPodException
    */
   private boolean isFunctional;
+
+  /**
+   * Position of this Pod's launch among its station's launches, from 1; 0 until launched
+   */
+  private long launchSequence;
+  
+  /**
+   * When this Pod was launched, in milliseconds of its station's clock; 0 until launched
+   */
+  private long launchMillis;
+
+  /**
+   * The Track this Pod is currently linked into, notified when this Pod malfunctions (may be null)
+   */
+  private Track track;
+
+  /**
+   * The node carrying this Pod on its current Track (null when not on a Track)
+   */
+  private LinkedNode node;
   
   /**
    * Constructs a new, functional Pod for the given number of passengers.
@@ -54,11 +94,41 @@ public class Pod {
   public Pod(int capacity, int podClass) {
     if (capacity <= 0 || (podClass != Pod.FIRST && podClass != Pod.ECONOMY)) 
       throw new IllegalArgumentException("Invalid argument "+capacity);
+    id = nextId.getAndIncrement();
     passengerList = new String[capacity];
     this.podClass = podClass;
     isFunctional = true;
   }
   
+  /**
+   * Builds a Pod with a given ID and seats: a Pod read back from storage, such as a LaunchArchive
+   * segment, keeps its original ID so that it equals the Pod it was saved from, and ManifestLoader
+   * uses IDs from reserveIds(). The Pod is not on any Track.
+   * 
+   * @param id the ID of the saved Pod
+   * @param podClass the class of the saved Pod, either Pod.FIRST or Pod.ECONOMY
+   * @param passengerList the saved seats, null for unoccupied ones; kept, not copied
+   * @param isFunctional whether the saved Pod was functional
+   */
+  Pod(long id, int podClass, String[] passengerList, boolean isFunctional) {
+    this.id = id;
+    this.podClass = podClass;
+    this.passengerList = passengerList;
+    this.isFunctional = isFunctional;
+    for (String name : passengerList) {
+      if (name != null) numPassengers++;
+    }
+  }
+  
+  /**
+   * Reserves a block of consecutive IDs for Pods built with the ID-taking constructor
+   * @param count number of IDs to reserve
+   * @return the first ID of the block
+   */
+  static long reserveIds(int count) {
+    return nextId.getAndAdd(count);
+  }
+  
   /**
    * Verifies whether this Pod is currently functional. Has a 1/20 chance of
    * causing this pod to malfunction.
@@ -66,7 +136,7 @@ public class Pod {
    */
   public boolean isFunctional() {
     // if you roll a d20 and get a 1, that's a critical failure:
-    if (randGen.nextInt(20) == 0) isFunctional = false;
+    if (isFunctional && randGen.nextInt(20) == 0) markFailed();
     return isFunctional;
   }
   
@@ -74,7 +144,151 @@ public class Pod {
    * For testing purposes, this method intentionally sets a Pod to be non-functional.
    */
   protected void setNonFunctional() {
+    if (isFunctional) markFailed();
+  }
+  
+  /**
+   * Records the malfunction and lets the owning Track index this Pod as failed
+   */
+  private void markFailed() {
     this.isFunctional = false;
+    if (track != null) track.podFailed(node);
+  }
+  
+  /**
+   * Returns the unique ID of this Pod. Like equals and hashCode, this works on malfunctioning pods
+   * too, so failed pods can still be looked up and removed.
+   * @return the ID assigned when this Pod was constructed
+   */
+  public long getId() {
+    return id;
+  }
+  
+  /**
+   * Returns the position of this Pod's launch among all launches of its station, e.g. 1000000 for
+   * the millionth launch. Works on malfunctioning pods too, like getId.
+   * @return the launch sequence number, from 1, or 0 if this Pod has not been launched
+   */
+  public long getLaunchSequence() {
+    return launchSequence;
+  }
+  
+  /**
+   * Returns when this Pod was launched. Works on malfunctioning pods too, like getId.
+   * @return the launch time in milliseconds of the station's clock, or 0 if not launched
+   */
+  public long getLaunchMillis() {
+    return launchMillis;
+  }
+  
+  /**
+   * Records this Pod's launch; called by LoopStation.launchPod
+   * @param sequence the launch sequence number
+   * @param millis the launch time
+   */
+  void stampLaunch(long sequence, long millis) {
+    this.launchSequence = sequence;
+    this.launchMillis = millis;
+  }
+  
+  /**
+   * Reports the current status without the chance of causing a malfunction. Unlike the public
+   * methods this never throws.
+   * @return {@code true} if this Pod has not malfunctioned yet
+   */
+  boolean peekFunctional() {
+    return isFunctional;
+  }
+  
+  /**
+   * Returns the class of this Pod without checking whether it is functional
+   * @return the class of this Pod (Pod.FIRST or Pod.ECONOMY)
+   */
+  int peekPodClass() {
+    return podClass;
+  }
+  
+  /**
+   * Returns the number of passengers without checking whether this Pod is functional
+   * @return the number of occupied seats
+   */
+  int peekNumPassengers() {
+    return numPassengers;
+  }
+  
+  /**
+   * Returns the capacity without checking whether this Pod is functional
+   * @return the number of seats
+   */
+  int peekCapacity() {
+    return passengerList.length;
+  }
+  
+  /**
+   * Returns the number of held seats without checking whether this Pod is functional
+   * @return the number of seats kept by active SeatHolds
+   */
+  int peekNumHeld() {
+    return numHeld;
+  }
+  
+  /**
+   * Takes a free seat for a SeatHold; the caller has checked that one is free
+   */
+  void holdSeat() {
+    numHeld++;
+  }
+  
+  /**
+   * Gives back a seat taken by holdSeat(), when its hold ends
+   */
+  void releaseHeldSeat() {
+    numHeld--;
+  }
+  
+  /**
+   * Exposes the seat array for read-only use by the package (unoccupied seats are null)
+   * @return the array backing this Pod's seats; callers must not modify it
+   */
+  String[] peekPassengers() {
+    return passengerList;
+  }
+  
+  /**
+   * Returns the name in the highest occupied seat, used to pick passengers to move between pods
+   * @return a passenger on this Pod, or null if it is empty
+   */
+  String peekLastPassenger() {
+    for (int i=passengerList.length-1; i>=0; i--) {
+      if (passengerList[i] != null) return passengerList[i];
+    }
+    return null;
+  }
+  
+  /**
+   * Returns the Track this Pod is currently linked into
+   * @return the owning Track, or null if this Pod is not on a Track
+   */
+  Track getTrack() {
+    return track;
+  }
+  
+  /**
+   * Returns the node carrying this Pod on its owning Track
+   * @return the node, or null if this Pod is not on a Track
+   */
+  LinkedNode getNode() {
+    return node;
+  }
+  
+  /**
+   * Records which Track and node now carry this Pod; called by Track when linking and unlinking
+   * @param track the owning Track (null when unlinked)
+   * @param node the node carrying this Pod (null when unlinked)
+   */
+  void setOwner(Track track, LinkedNode node) {
+    this.track = track;
+    this.node = node;
   }
   
   /**
@@ -95,11 +309,7 @@ public class Pod {
    */
   public int getNumPassengers() throws MalfunctioningPodException {
     if (!isFunctional) throw new MalfunctioningPodException("Oh no!");
-    int total = 0;
-    for (String s: passengerList) {
-      if (s != null) total++;
-    }
-    return total;
+    return numPassengers;
   }
   
   /**
@@ -113,14 +323,24 @@ public class Pod {
   }
   
   /**
-   * Whether this Pod has reached its passenger capacity
-   * @return {@code true} if this Pod is carrying all of the passengers that could
-   *   fit into it, {@code false} if there is still more room
+   * The number of seats kept for passengers by seat holds, see Track.holdSeat
+   * @return the number of held seats
+   * @throws MalfunctioningPodException if this pod is not functional
+   */
+  public int getNumHeld() throws MalfunctioningPodException {
+    if (!isFunctional) throw new MalfunctioningPodException("Oh no!");
+    return numHeld;
+  }
+  
+  /**
+   * Whether this Pod has reached its passenger capacity, counting held seats as taken
+   * @return {@code true} if every seat is either occupied or held, {@code false} if there is
+   *   still more room
    * @throws MalfunctioningPodException if this pod is not functional
    */
   public boolean isFull() throws MalfunctioningPodException {
     if (!isFunctional) throw new MalfunctioningPodException("Oh no!");
-    return passengerList.length == getNumPassengers();
+    return passengerList.length == numPassengers + numHeld;
   }
   
   /**
@@ -134,6 +354,8 @@ public class Pod {
     for (int i=0; i<passengerList.length; i++) {
       if (passengerList[i] == null) {
         passengerList[i] = name;
+        numPassengers++;
+        if (track != null) track.passengerAdded(this, name);
         return;
       }
     }
@@ -148,8 +370,10 @@ public class Pod {
   public boolean removePassenger(String name) throws MalfunctioningPodException {
     if (!isFunctional) throw new MalfunctioningPodException("Oh no!");
     for (int i=0; i<passengerList.length; i++) {
-      if (passengerList[i].equals(name)) {
+      if (passengerList[i] != null && passengerList[i].equals(name)) {
         passengerList[i] = null;
+        numPassengers--;
+        if (track != null) track.passengerRemoved(this, name);
         return true;
       }
     }
@@ -171,16 +395,24 @@ public class Pod {
   }
   
   /**
-   * Compares all instance fields of this object to the provided object
-   * @return {@code true} if o is a Pod with all instance fields equal to
-   * this Pod's instance field values; {@code false} otherwise
+   * Two Pod objects are equal when they are the same pod, i.e. carry the same ID. Comparing IDs
+   * instead of seat arrays keeps equals O(1) and consistent with hashCode while passengers come
+   * and go.
+   * @return {@code true} if o is a Pod with the same ID as this Pod; {@code false} otherwise
    */
   @Override
   public boolean equals(Object o) {
     if (!(o instanceof Pod)) return false;
-    Pod p = (Pod) o;
-    return Arrays.deepEquals(this.passengerList, p.passengerList) && 
-        this.podClass == p.podClass && this.isFunctional == p.isFunctional;
+    return this.id == ((Pod) o).id;
+  }
+  
+  /**
+   * Hashes the ID of this Pod, so pods can be kept in hash-based collections
+   * @return a hash code consistent with equals
+   */
+  @Override
+  public int hashCode() {
+    return Long.hashCode(id);
   }
 
 }
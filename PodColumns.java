@@ -0,0 +1,98 @@
+import java.util.Arrays;
+
+/**
+ * Columnar summary of the pods on one or more Tracks: track, class, capacity, occupancy and status
+ * of every pod, each in its own primitive array, kept up to date by the tracks as pods are linked,
+ * unlinked, boarded and fail. PodQuery scans these arrays, through ColumnKernels where it can,
+ * instead of walking nodes and calling Pod getters; a last array holds the pods themselves, for
+ * queries that list them.
+ *
+ * Every linked node owns one slot; a slot freed by an unlink is reused by the next link, so the
+ * arrays stay about as long as the most pods the tracks have held at once. Tracks sharing one
+ * instance tell their pods apart by a per-track tag, and a pod moved between them (an unlink
+ * followed by a link) gets its slot back without allocating. Vacant slots have status VACANT.
+ */
+class PodColumns {
+
+  static final byte VACANT = 0; // slot holds no pod
+
+  static final byte FUNCTIONAL = 1; // slot holds a functional pod
+
+  static final byte FAILED = 2; // slot holds a malfunctioning pod
+
+  private static final int INITIAL_SLOTS = 8;
+
+  byte[] status = new byte[INITIAL_SLOTS]; // VACANT, FUNCTIONAL or FAILED per slot
+
+  byte[] track = new byte[INITIAL_SLOTS]; // tag of the track holding each slot's pod
+
+  byte[] podClass = new byte[INITIAL_SLOTS]; // Pod.FIRST or Pod.ECONOMY per slot
+
+  int[] capacity = new int[INITIAL_SLOTS]; // seats per slot
+
+  int[] occupancy = new int[INITIAL_SLOTS]; // passengers per slot
+
+  Pod[] pods = new Pod[INITIAL_SLOTS]; // the pod in each slot, null for vacant slots
+
+  int highWater; // slots at or above this index have never been used
+
+  int maxCapacity; // largest capacity ever stored, bounds capacity group keys
+
+  private int[] freeSlots = new int[INITIAL_SLOTS]; // stack of vacant slots below highWater
+
+  private int numFree; // number of entries in freeSlots
+
+  /**
+   * Records a pod that was just linked
+   *
+   * @param pod      the pod
+   * @param trackTag tag of the track the pod was linked into
+   * @return the slot now holding the pod
+   */
+  int occupy(Pod pod, int trackTag) {
+
+    int slot;
+    if (numFree > 0) {
+      slot = freeSlots[--numFree];
+    } else {
+      if (highWater == status.length) {
+        grow();
+      }
+      slot = highWater++;
+    }
+
+    status[slot] = pod.peekFunctional() ? FUNCTIONAL : FAILED;
+    track[slot] = (byte) trackTag;
+    podClass[slot] = (byte) pod.peekPodClass();
+    capacity[slot] = pod.peekCapacity();
+    occupancy[slot] = pod.peekNumPassengers();
+    pods[slot] = pod;
+    maxCapacity = Math.max(maxCapacity, capacity[slot]);
+
+    return slot;
+  }
+
+  /**
+   * Forgets the pod in a slot, making the slot reusable
+   *
+   * @param slot slot returned by occupy()
+   */
+  void release(int slot) {
+    status[slot] = VACANT;
+    pods[slot] = null;
+    if (numFree == freeSlots.length) {
+      freeSlots = Arrays.copyOf(freeSlots, numFree * 2);
+    }
+    freeSlots[numFree++] = slot;
+  }
+
+  private void grow() {
+    int length = status.length * 2;
+    status = Arrays.copyOf(status, length);
+    track = Arrays.copyOf(track, length);
+    podClass = Arrays.copyOf(podClass, length);
+    capacity = Arrays.copyOf(capacity, length);
+    occupancy = Arrays.copyOf(occupancy, length);
+    pods = Arrays.copyOf(pods, length);
+  }
+}
@@ -0,0 +1,468 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * Ad-hoc filter, group-by and aggregate queries over the pods of a LoopStation, for example
+ *
+ * <pre>
+ * station.query().economy().occupancyAbove(0.8).count();
+ * station.query().failed().groupBy(PodQuery.Key.CAPACITY, 10);
+ * station.query().launched().firstClass().aggregate().getAverageOccupancy();
+ * </pre>
+ *
+ * Queries never touch Pod objects: they scan the PodColumns each track keeps, so malfunctioning
+ * pods are counted like any other instead of throwing, and a scan is a tight loop over primitive
+ * arrays. The station's three tracks share one set of columns, which is scanned in parallel chunks
+ * on the common fork-join pool once it has at least PARALLEL_THRESHOLD slots. Queries filtering on
+ * track, class, status and free seats only run on ColumnKernels, vectorized where the Vector API is
+ * available. Launched pods spilled to disk by retention are not included.
+ *
+ * Each filter method narrows this query and returns it. Like the rest of LoopStation, a query must
+ * run on the thread that changes the station.
+ */
+public final class PodQuery {
+
+  /**
+   * What groupBy() groups pods by
+   */
+  public enum Key {
+
+    /**
+     * The pod class; group keys are Pod.FIRST and Pod.ECONOMY
+     */
+    CLASS,
+
+    /**
+     * The capacity; group keys are the lowest capacity of each bucket
+     */
+    CAPACITY,
+
+    /**
+     * The percentage of seats taken; group keys are the lowest percentage of each bucket
+     */
+    OCCUPANCY,
+
+    /**
+     * Whether the pod works; group keys are 1 for functional and 0 for malfunctioning pods
+     */
+    STATUS
+  }
+
+  /**
+   * Totals over the pods matched by a query, or by one group of it
+   */
+  public static final class Aggregate {
+
+    private final long count; // pods matched
+
+    private final long passengers; // passengers on the pods matched
+
+    private final long seats; // seats on the pods matched
+
+    private Aggregate(long count, long passengers, long seats) {
+      this.count = count;
+      this.passengers = passengers;
+      this.seats = seats;
+    }
+
+    /**
+     * @return number of pods matched
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * @return total number of passengers on the pods matched
+     */
+    public long getPassengers() {
+      return passengers;
+    }
+
+    /**
+     * @return total capacity of the pods matched
+     */
+    public long getSeats() {
+      return seats;
+    }
+
+    /**
+     * @return passengers per seat over the pods matched, or 0 if no pod matched
+     */
+    public double getAverageOccupancy() {
+      return seats == 0 ? 0 : passengers / (double) seats;
+    }
+
+    /**
+     * @return passengers per pod over the pods matched, or 0 if no pod matched
+     */
+    public double getAveragePassengers() {
+      return count == 0 ? 0 : passengers / (double) count;
+    }
+
+    @Override
+    public String toString() {
+      return count + " pods, " + passengers + "/" + seats + " seats taken";
+    }
+  }
+
+  /**
+   * Tags of a station's tracks in its PodColumns
+   */
+  static final int LAUNCHED = 0, WAITING_FIRST = 1, WAITING_ECONOMY = 2;
+
+  /**
+   * Number of column slots from which the columns are scanned in parallel
+   */
+  static final int PARALLEL_THRESHOLD = 1 << 17;
+
+  /**
+   * Number of column slots per parallel task
+   */
+  private static final int CHUNK_SLOTS = 1 << 15;
+
+  private final PodColumns columns; // the station's columns
+
+  private int trackMask = (1 << LAUNCHED) | (1 << WAITING_FIRST) | (1 << WAITING_ECONOMY); // tags
+
+  private int classMask = (1 << Pod.FIRST) | (1 << Pod.ECONOMY); // bit per accepted pod class
+
+  private int statusMask = (1 << PodColumns.FUNCTIONAL) | (1 << PodColumns.FAILED); // likewise
+
+  private int minCapacity = 0; // smallest accepted capacity
+
+  private int maxCapacity = Integer.MAX_VALUE; // largest accepted capacity
+
+  private double minOccupancy = -1; // accepted pods are fuller than this fraction
+
+  private double maxOccupancy = 1; // accepted pods are at most this full
+
+  private boolean freeSeatsOnly; // accepted pods have fewer passengers than seats
+
+  private int parallelThreshold = PARALLEL_THRESHOLD; // see PARALLEL_THRESHOLD
+
+  /**
+   * Creates a query matching every pod of a station, see LoopStation.query()
+   *
+   * @param columns the columns shared by the station's tracks, tagged LAUNCHED, WAITING_FIRST and
+   *                WAITING_ECONOMY
+   */
+  PodQuery(PodColumns columns) {
+    this.columns = columns;
+  }
+
+  /**
+   * Only matches launched pods
+   *
+   * @return this query
+   */
+  public PodQuery launched() {
+    trackMask &= 1 << LAUNCHED;
+    return this;
+  }
+
+  /**
+   * Only matches pods waiting to launch
+   *
+   * @return this query
+   */
+  public PodQuery waiting() {
+    trackMask &= (1 << WAITING_FIRST) | (1 << WAITING_ECONOMY);
+    return this;
+  }
+
+  /**
+   * Only matches first class pods
+   *
+   * @return this query
+   */
+  public PodQuery firstClass() {
+    classMask &= 1 << Pod.FIRST;
+    return this;
+  }
+
+  /**
+   * Only matches economy pods
+   *
+   * @return this query
+   */
+  public PodQuery economy() {
+    classMask &= 1 << Pod.ECONOMY;
+    return this;
+  }
+
+  /**
+   * Only matches pods known to work
+   *
+   * @return this query
+   */
+  public PodQuery functional() {
+    statusMask &= 1 << PodColumns.FUNCTIONAL;
+    return this;
+  }
+
+  /**
+   * Only matches pods known to have malfunctioned
+   *
+   * @return this query
+   */
+  public PodQuery failed() {
+    statusMask &= 1 << PodColumns.FAILED;
+    return this;
+  }
+
+  /**
+   * Only matches pods whose capacity is in a range
+   *
+   * @param min smallest capacity matched
+   * @param max largest capacity matched
+   * @return this query
+   */
+  public PodQuery capacityBetween(int min, int max) {
+    minCapacity = Math.max(minCapacity, min);
+    maxCapacity = Math.min(maxCapacity, max);
+    return this;
+  }
+
+  /**
+   * Only matches pods with more than the given fraction of their seats taken
+   *
+   * @param fraction between 0 and 1, e.g. 0.8 for pods over 80% full
+   * @return this query
+   */
+  public PodQuery occupancyAbove(double fraction) {
+    minOccupancy = Math.max(minOccupancy, fraction);
+    return this;
+  }
+
+  /**
+   * Only matches pods with at most the given fraction of their seats taken
+   *
+   * @param fraction between 0 and 1, e.g. 0 for empty pods
+   * @return this query
+   */
+  public PodQuery occupancyAtMost(double fraction) {
+    maxOccupancy = Math.min(maxOccupancy, fraction);
+    return this;
+  }
+
+  /**
+   * Only matches pods with at least one seat without a passenger; seats kept by SeatHolds count as
+   * free here
+   *
+   * @return this query
+   */
+  public PodQuery withFreeSeats() {
+    freeSeatsOnly = true;
+    return this;
+  }
+
+  /**
+   * Changes the number of column slots from which the columns are scanned in parallel
+   *
+   * @param slots the new threshold
+   * @return this query
+   */
+  PodQuery parallelAbove(int slots) {
+    parallelThreshold = slots;
+    return this;
+  }
+
+  /**
+   * @return number of pods matched
+   */
+  public long count() {
+    return aggregate().getCount();
+  }
+
+  /**
+   * Totals the pods matched
+   *
+   * @return count, passengers and seats of the pods matched
+   */
+  public Aggregate aggregate() {
+    long[] totals = run(null, 1, 1);
+    return new Aggregate(totals[0], totals[1], totals[2]);
+  }
+
+  /**
+   * Lists the pods matched, e.g. the failed pods to send to maintenance
+   *
+   * @param limit most pods returned
+   * @return up to limit pods, in column slot order
+   */
+  public List<Pod> list(int limit) {
+
+    List<Pod> pods = new ArrayList<>();
+    int slots = columns.highWater;
+
+    if (!rangeFiltered()) {
+      int slot = ColumnKernels.INSTANCE.next(columns, statusMask, classMask, trackMask,
+          freeSeatsOnly, 0, slots);
+      while (slot != -1 && pods.size() < limit) {
+        pods.add(columns.pods[slot]);
+        slot = ColumnKernels.INSTANCE.next(columns, statusMask, classMask, trackMask,
+            freeSeatsOnly, slot + 1, slots);
+      }
+      return pods;
+    }
+
+    for (int slot = 0; slot < slots && pods.size() < limit; slot++) {
+      if (matches(slot)) {
+        pods.add(columns.pods[slot]);
+      }
+    }
+    return pods;
+  }
+
+  /**
+   * Totals the pods matched per group
+   *
+   * @param key         what to group by
+   * @param bucketWidth width of the CAPACITY or OCCUPANCY buckets (capacity units or percentage
+   *                    points); ignored for CLASS and STATUS
+   * @return the totals of every non-empty group, by group key in increasing order
+   * @throws IllegalArgumentException if bucketWidth is not positive for a bucketed key
+   */
+  public SortedMap<Integer, Aggregate> groupBy(Key key, int bucketWidth) {
+
+    if ((key == Key.CAPACITY || key == Key.OCCUPANCY) && bucketWidth <= 0) {
+      throw new IllegalArgumentException("Invalid bucket width " + bucketWidth);
+    }
+
+    int width = key == Key.CAPACITY || key == Key.OCCUPANCY ? bucketWidth : 1;
+    int numGroups;
+    switch (key) {
+      case CAPACITY:
+        numGroups = columns.maxCapacity / width + 1;
+        break;
+      case OCCUPANCY:
+        numGroups = 100 / width + 1;
+        break;
+      default:
+        numGroups = 2;
+    }
+
+    long[] totals = run(key, width, numGroups);
+
+    SortedMap<Integer, Aggregate> groups = new TreeMap<>();
+    for (int group = 0; group < numGroups; group++) {
+      if (totals[3 * group] > 0) {
+        groups.put(group * width, new Aggregate(totals[3 * group], totals[3 * group + 1],
+            totals[3 * group + 2]));
+      }
+    }
+    return groups;
+  }
+
+  /**
+   * Scans the columns, in parallel chunks if there are enough slots
+   *
+   * @return count, passengers and seats per group, three longs per group
+   */
+  private long[] run(Key key, int width, int numGroups) {
+
+    int slots = columns.highWater;
+
+    if (slots < parallelThreshold) {
+      long[] totals = new long[3 * numGroups];
+      scan(key, width, 0, slots, totals);
+      return totals;
+    }
+
+    int numChunks = (slots + CHUNK_SLOTS - 1) / CHUNK_SLOTS;
+    return IntStream.range(0, numChunks).parallel().mapToObj(chunk -> {
+      long[] totals = new long[3 * numGroups];
+      scan(key, width, chunk * CHUNK_SLOTS, Math.min(slots, (chunk + 1) * CHUNK_SLOTS), totals);
+      return totals;
+    }).reduce(PodQuery::add).get();
+  }
+
+  /**
+   * @return true if the query filters on capacity or occupancy, which ColumnKernels do not cover
+   */
+  private boolean rangeFiltered() {
+    return minCapacity > 0 || maxCapacity < Integer.MAX_VALUE || minOccupancy >= 0
+        || maxOccupancy < 1;
+  }
+
+  /**
+   * @return true if the pod in a slot passes every filter
+   */
+  private boolean matches(int slot) {
+    int seats = columns.capacity[slot];
+    int passengers = columns.occupancy[slot];
+    return ((1 << columns.status[slot]) & statusMask) != 0
+        && ((1 << columns.podClass[slot]) & classMask) != 0
+        && ((1 << columns.track[slot]) & trackMask) != 0 && seats >= minCapacity
+        && seats <= maxCapacity && passengers > minOccupancy * seats
+        && passengers <= maxOccupancy * seats && (!freeSeatsOnly || passengers < seats);
+  }
+
+  /**
+   * Adds the matching pods in slots [from, to) of a track's columns to the group totals
+   */
+  private void scan(Key key, int width, int from, int to, long[] totals) {
+
+    if (key == null && !rangeFiltered()) {
+      ColumnKernels.INSTANCE.aggregate(columns, statusMask, classMask, trackMask, freeSeatsOnly,
+          from, to, totals);
+      return;
+    }
+
+    byte[] status = columns.status;
+    byte[] track = columns.track;
+    byte[] podClass = columns.podClass;
+    int[] capacity = columns.capacity;
+    int[] occupancy = columns.occupancy;
+
+    for (int slot = from; slot < to; slot++) {
+
+      int state = status[slot];
+      if (((1 << state) & statusMask) == 0 || ((1 << podClass[slot]) & classMask) == 0
+          || ((1 << track[slot]) & trackMask) == 0) {
+        continue; // VACANT is never in statusMask
+      }
+
+      int seats = capacity[slot];
+      int passengers = occupancy[slot];
+      if (seats < minCapacity || seats > maxCapacity || passengers <= minOccupancy * seats
+          || passengers > maxOccupancy * seats || (freeSeatsOnly && passengers >= seats)) {
+        continue;
+      }
+
+      int group;
+      if (key == null) {
+        group = 0;
+      } else {
+        switch (key) {
+          case CLASS:
+            group = podClass[slot];
+            break;
+          case CAPACITY:
+            group = seats / width;
+            break;
+          case OCCUPANCY:
+            group = passengers * 100 / seats / width;
+            break;
+          default:
+            group = state == PodColumns.FUNCTIONAL ? 1 : 0;
+        }
+      }
+
+      totals[3 * group]++;
+      totals[3 * group + 1] += passengers;
+      totals[3 * group + 2] += seats;
+    }
+  }
+
+  private static long[] add(long[] into, long[] other) {
+    for (int i = 0; i < into.length; i++) {
+      into[i] += other[i];
+    }
+    return into;
+  }
+}
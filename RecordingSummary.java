@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import jdk.jfr.ValueDescriptor;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Summarizes the hyperloop events of a flight recording, see FlightEvents and hyperloop.jfc: per
+ * event type, how many were recorded, their duration percentiles, the totals of their int fields
+ * (pods traversed, removed, ...) and how many overlapped a GC pause, which tells a spike
+ * caused by the station's own work from one caused by the JVM.
+ *
+ * <pre>
+ * java RecordingSummary station.jfr
+ * </pre>
+ */
+public final class RecordingSummary {
+
+  /**
+   * Events whose names start with this are summarized
+   */
+  public static final String PREFIX = "hyperloop.";
+
+  /**
+   * What a recording holds for one event type
+   */
+  public static final class Stats {
+
+    private final String name; // event type name, e.g. hyperloop.PodLaunch
+
+    private long[] nanos = new long[64]; // durations, sorted once the recording has been read
+
+    private int count; // events recorded
+
+    private int paused; // events overlapping a GC pause
+
+    private final Map<String, Long> sums = new LinkedHashMap<>(); // int field totals
+
+    private Stats(String name) {
+      this.name = name;
+    }
+
+    private void add(RecordedEvent event, boolean duringPause) {
+      if (count == nanos.length) {
+        nanos = Arrays.copyOf(nanos, count * 2);
+      }
+      nanos[count++] = event.getDuration().toNanos();
+      if (duringPause) {
+        paused++;
+      }
+      for (ValueDescriptor field : event.getFields()) {
+        if (field.getTypeName().equals("int")) {
+          sums.merge(field.getName(), event.getLong(field.getName()), Long::sum);
+        }
+      }
+    }
+
+    /**
+     * @return the event type name
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return number of events recorded
+     */
+    public int getCount() {
+      return count;
+    }
+
+    /**
+     * @param fraction between 0 and 1, e.g. 0.99
+     * @return the duration below which that fraction of the events fell, in nanoseconds
+     */
+    public long getPercentileNanos(double fraction) {
+      return count == 0 ? 0 : nanos[Math.min(count - 1, (int) (fraction * count))];
+    }
+
+    /**
+     * @return the longest duration, in nanoseconds
+     */
+    public long getMaxNanos() {
+      return count == 0 ? 0 : nanos[count - 1];
+    }
+
+    /**
+     * @param field name of an int field of the event, e.g. podsTraversed
+     * @return the field's total over all events, 0 if the events have no such int field
+     */
+    public long getSum(String field) {
+      return sums.getOrDefault(field, 0L);
+    }
+
+    /**
+     * @return number of events that overlapped a GC pause (jdk.GCPhasePause)
+     */
+    public int getNumDuringPause() {
+      return paused;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder line = new StringBuilder(String.format("%-28s %8d %10.1f %10.1f %10.1f %7d",
+          name, count, getPercentileNanos(0.5) / 1e3, getPercentileNanos(0.99) / 1e3,
+          getMaxNanos() / 1e3, paused));
+      for (Map.Entry<String, Long> sum : sums.entrySet()) {
+        line.append("  ").append(sum.getKey()).append('=').append(sum.getValue());
+      }
+      return line.toString();
+    }
+  }
+
+  private RecordingSummary() {
+  }
+
+  /**
+   * Reads a recording
+   *
+   * @param recording a .jfr file
+   * @return the stats of each hyperloop event type recorded, by name
+   * @throws IOException if the file cannot be read or is not a recording
+   */
+  public static Map<String, Stats> summarize(Path recording) throws IOException {
+
+    // GC pauses first, as [start, end] pairs in start order
+    List<long[]> pauses = new ArrayList<>();
+    try (RecordingFile file = new RecordingFile(recording)) {
+      while (file.hasMoreEvents()) {
+        RecordedEvent event = file.readEvent();
+        if (event.getEventType().getName().equals("jdk.GCPhasePause")) {
+          pauses.add(new long[] {nanos(event.getStartTime()), nanos(event.getEndTime())});
+        }
+      }
+    }
+    pauses.sort((a, b) -> Long.compare(a[0], b[0]));
+
+    Map<String, Stats> stats = new TreeMap<>();
+    try (RecordingFile file = new RecordingFile(recording)) {
+      while (file.hasMoreEvents()) {
+        RecordedEvent event = file.readEvent();
+        String name = event.getEventType().getName();
+        if (name.startsWith(PREFIX)) {
+          boolean duringPause = overlaps(pauses, nanos(event.getStartTime()),
+              nanos(event.getEndTime()));
+          stats.computeIfAbsent(name, Stats::new).add(event, duringPause);
+        }
+      }
+    }
+
+    for (Stats type : stats.values()) {
+      Arrays.sort(type.nanos, 0, type.count);
+    }
+    return stats;
+  }
+
+  /**
+   * @return true if [start, end] overlaps one of the pauses, found by a binary search for the last
+   *         pause starting at or before end
+   */
+  private static boolean overlaps(List<long[]> pauses, long start, long end) {
+    int low = 0;
+    int high = pauses.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (pauses.get(middle)[0] <= end) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    // pauses do not overlap one another, so only the last one starting in time can reach start
+    return low > 0 && pauses.get(low - 1)[1] >= start;
+  }
+
+  private static long nanos(Instant instant) {
+    return Duration.between(Instant.EPOCH, instant).toNanos();
+  }
+
+  /**
+   * Prints the summary of a recording
+   *
+   * @param args the path of a .jfr file
+   * @throws IOException if the file cannot be read
+   */
+  public static void main(String[] args) throws IOException {
+
+    if (args.length != 1) {
+      System.err.println("usage: java RecordingSummary RECORDING.jfr");
+      System.exit(2);
+    }
+
+    Map<String, Stats> stats = summarize(Path.of(args[0]));
+    if (stats.isEmpty()) {
+      System.out.println("No hyperloop events in " + args[0]
+          + "; was the recording started with hyperloop.jfc?");
+      return;
+    }
+
+    System.out.printf("%-28s %8s %10s %10s %10s %7s  %s%n", "event", "count", "p50 us", "p99 us",
+        "max us", "in GC", "field totals");
+    for (Stats type : stats.values()) {
+      System.out.println(type);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ * ColumnKernels as plain loops, one slot at a time. Also finishes the slots left over by the
+ * vector kernels at the end of a range.
+ */
+final class ScalarColumnKernels implements ColumnKernels {
+
+  @Override
+  public void aggregate(PodColumns columns, int statusMask, int classMask, int trackMask,
+      boolean freeSeatsOnly, int from, int to, long[] totals) {
+
+    byte[] status = columns.status;
+    byte[] podClass = columns.podClass;
+    byte[] track = columns.track;
+    int[] capacity = columns.capacity;
+    int[] occupancy = columns.occupancy;
+
+    long count = 0;
+    long passengers = 0;
+    long seats = 0;
+
+    for (int slot = from; slot < to; slot++) {
+      if (((1 << status[slot]) & statusMask) != 0 && ((1 << podClass[slot]) & classMask) != 0
+          && ((1 << track[slot]) & trackMask) != 0
+          && (!freeSeatsOnly || occupancy[slot] < capacity[slot])) {
+        count++;
+        passengers += occupancy[slot];
+        seats += capacity[slot];
+      }
+    }
+
+    totals[0] += count;
+    totals[1] += passengers;
+    totals[2] += seats;
+  }
+
+  @Override
+  public int next(PodColumns columns, int statusMask, int classMask, int trackMask,
+      boolean freeSeatsOnly, int from, int to) {
+
+    byte[] status = columns.status;
+    byte[] podClass = columns.podClass;
+    byte[] track = columns.track;
+    int[] capacity = columns.capacity;
+    int[] occupancy = columns.occupancy;
+
+    for (int slot = from; slot < to; slot++) {
+      if (((1 << status[slot]) & statusMask) != 0 && ((1 << podClass[slot]) & classMask) != 0
+          && ((1 << track[slot]) & trackMask) != 0
+          && (!freeSeatsOnly || occupancy[slot] < capacity[slot])) {
+        return slot;
+      }
+    }
+
+    return -1;
+  }
+}
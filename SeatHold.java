@@ -0,0 +1,139 @@
+/**
+ * A seat kept for a passenger on a Pod until it is confirmed, released or expires, see
+ * Track.holdSeat(). A held seat is taken as far as the pod is concerned (isFull() counts it) but the
+ * passenger only boards on confirm(). Expiry is driven by the track's timing wheel: the seat comes
+ * back when the track next looks at the time, e.g. in Track.expireHolds(), without a thread or a
+ * scan per hold.
+ */
+public final class SeatHold extends HierarchicalTimingWheel.Timer {
+
+  /**
+   * Where a hold is in its life
+   */
+  public enum State {
+
+    /**
+     * The seat is kept for the passenger
+     */
+    HELD,
+
+    /**
+     * The passenger boarded
+     */
+    CONFIRMED,
+
+    /**
+     * The hold was given up before it expired
+     */
+    RELEASED,
+
+    /**
+     * The hold timed out and the seat was given back
+     */
+    EXPIRED
+  }
+
+  private final Track track; // the track whose wheel times this hold
+
+  private final Pod pod; // the pod the seat is on
+
+  private final String name; // the passenger the seat is kept for
+
+  private State state = State.HELD; // changes once, from HELD
+
+  /**
+   * Creates a hold; Track.holdSeat() takes the seat and schedules it
+   *
+   * @param track the track whose wheel times this hold
+   * @param pod   the pod the seat is on
+   * @param name  the passenger the seat is kept for
+   */
+  SeatHold(Track track, Pod pod, String name) {
+    this.track = track;
+    this.pod = pod;
+    this.name = name;
+  }
+
+  /**
+   * Boards the passenger in the held seat, unless the hold has expired (the track's clock is
+   * checked first, so a hold past its expiry cannot be confirmed even if expireHolds() has not run)
+   * or the pod has left the track since the seat was held (launched, removed, spilled or cleared
+   * as malfunctioning), in which case the hold is released
+   *
+   * @return true if the passenger boarded, false if the hold was no longer HELD or the pod has
+   *         left the track
+   * @throws MalfunctioningPodException if the pod malfunctioned; the seat is then released
+   */
+  public boolean confirm() throws MalfunctioningPodException {
+
+    if (!track.endHold(this)) {
+      return false;
+    }
+
+    state = State.RELEASED; // unless boarding succeeds
+    if (pod.getTrack() != track) {
+      // boarding now would put the passenger where the track and its indexes cannot see them
+      return false;
+    }
+    pod.addPassenger(name);
+    state = State.CONFIRMED;
+    return true;
+  }
+
+  /**
+   * Gives the seat back before the hold expires
+   *
+   * @return true if the seat was released, false if the hold was no longer HELD
+   */
+  public boolean release() {
+
+    if (!track.endHold(this)) {
+      return false;
+    }
+
+    state = State.RELEASED;
+    return true;
+  }
+
+  /**
+   * Gives the seat back when the track's wheel reaches the expiry time
+   */
+  @Override
+  void expire() {
+    pod.releaseHeldSeat();
+    state = State.EXPIRED;
+  }
+
+  /**
+   * @return the pod the seat is on
+   */
+  public Pod getPod() {
+    return pod;
+  }
+
+  /**
+   * @return the passenger the seat is kept for
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return time at which the hold expires, in the track's clock milliseconds
+   */
+  public long getExpiresAt() {
+    return getDeadline();
+  }
+
+  /**
+   * @return where the hold is in its life
+   */
+  public State getState() {
+    return state;
+  }
+
+  @Override
+  public String toString() {
+    return "hold for " + name + " on pod " + pod.getId() + " (" + state + ")";
+  }
+}
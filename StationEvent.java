@@ -0,0 +1,99 @@
+/**
+ * One change to a LoopStation, as published by StationEventPublisher. Events are immutable and
+ * numbered in the order the station made the changes.
+ */
+public final class StationEvent {
+
+  /**
+   * What happened
+   */
+  public enum Type {
+
+    /**
+     * A pod was created and put on a waiting track
+     */
+    CREATED,
+
+    /**
+     * A pod was launched
+     */
+    LAUNCHED,
+
+    /**
+     * A malfunctioning pod was taken off the station, e.g. by clearMalfunctioning()
+     */
+    MALFUNCTION_REMOVED,
+
+    /**
+     * A functional pod was taken off the station, e.g. by removePod() or consolidate()
+     */
+    REMOVED,
+
+    /**
+     * A passenger boarded a pod
+     */
+    BOARDED,
+
+    /**
+     * A passenger left a pod
+     */
+    CANCELLED
+  }
+
+  private final long sequence; // position in the station's event stream, from 1
+
+  private final Type type; // what happened
+
+  private final long podId; // the pod concerned, see Pod.getId()
+
+  private final String passenger; // the passenger concerned, null for pod events
+
+  /**
+   * Creates an event
+   *
+   * @param sequence  position in the event stream
+   * @param type      what happened
+   * @param podId     ID of the pod concerned
+   * @param passenger name of the passenger concerned, or null
+   */
+  StationEvent(long sequence, Type type, long podId, String passenger) {
+    this.sequence = sequence;
+    this.type = type;
+    this.podId = podId;
+    this.passenger = passenger;
+  }
+
+  /**
+   * @return position of this event in the station's event stream, starting at 1; a subscriber that
+   *         sees a gap knows events were dropped
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * @return what happened
+   */
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * @return ID of the pod concerned, see Pod.getId()
+   */
+  public long getPodId() {
+    return podId;
+  }
+
+  /**
+   * @return name of the passenger who boarded or left, or null for pod events
+   */
+  public String getPassenger() {
+    return passenger;
+  }
+
+  @Override
+  public String toString() {
+    return "#" + sequence + " " + type + " pod " + podId + (passenger == null ? "" : " " + passenger);
+  }
+}
@@ -0,0 +1,366 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes the changes made to a LoopStation as a reactive stream of StationEvents, so that
+ * downstream systems are pushed what happened instead of polling the station.
+ *
+ * Every subscriber gets its own bounded buffer, filled by the station's thread and drained by a
+ * delivery thread of this publisher; events are delivered in batches of up to maxBatch, each batch
+ * counting as one item of demand. When a buffer is full the subscriber's Overflow policy decides:
+ * DROP discards the event (the subscriber sees a gap in the sequence numbers, and getNumDropped()
+ * counts it), BLOCK makes the station wait for the subscriber. Only BLOCK subscribers can stall
+ * launchPod(); with no subscribers the station pays one array read per change.
+ */
+public class StationEventPublisher
+    implements Flow.Publisher<List<StationEvent>>, StationListener, AutoCloseable {
+
+  /**
+   * What to do with an event for a subscriber whose buffer is full
+   */
+  public enum Overflow {
+
+    /**
+     * Discard the event; the station never waits
+     */
+    DROP,
+
+    /**
+     * Wait until the subscriber makes room; the subscriber sees every event
+     */
+    BLOCK
+  }
+
+  /**
+   * How long a blocked station thread parks before checking the buffer again
+   */
+  private static final long BLOCK_PARK_NANOS = 20_000;
+
+  /**
+   * One subscriber's buffer and demand. The buffer is a single-producer single-consumer ring: the
+   * station's thread writes at tail, the delivery task reads at head.
+   */
+  private final class Subscription implements Flow.Subscription, Runnable {
+
+    private final Flow.Subscriber<? super List<StationEvent>> subscriber;
+
+    private final Overflow overflow; // what to do when the ring is full
+
+    private final StationEvent[] ring; // buffered events, capacity a power of two
+
+    private final AtomicLong head = new AtomicLong(); // next event to deliver
+
+    private final AtomicLong tail = new AtomicLong(); // next free position
+
+    private final AtomicLong demand = new AtomicLong(); // batches requested but not delivered
+
+    private final AtomicInteger work = new AtomicInteger(); // signals not yet seen by run()
+
+    private volatile boolean cancelled; // set by cancel() or after a terminal signal
+
+    private volatile boolean completed; // the publisher closed; finish after the buffer drains
+
+    private volatile Throwable error; // a rule violation to report from run()
+
+    private Subscription(Flow.Subscriber<? super List<StationEvent>> subscriber,
+        Overflow overflow) {
+      this.subscriber = subscriber;
+      this.overflow = overflow;
+      this.ring = new StationEvent[Math.max(2, Integer.highestOneBit(bufferSize - 1) << 1)];
+    }
+
+    /**
+     * Buffers an event; called on the station's thread only
+     *
+     * @return false if the event was dropped
+     */
+    private boolean offer(StationEvent event) {
+      long position = tail.get();
+      while (position - head.get() >= ring.length) {
+        if (overflow == Overflow.DROP || cancelled) {
+          numDropped.incrementAndGet();
+          return false;
+        }
+        signal();
+        LockSupport.parkNanos(BLOCK_PARK_NANOS);
+      }
+      ring[(int) position & (ring.length - 1)] = event;
+      tail.lazySet(position + 1);
+      return true;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        error = new IllegalArgumentException("Non-positive request " + n);
+      } else {
+        long current;
+        long updated;
+        do {
+          current = demand.get();
+          updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+        } while (!demand.compareAndSet(current, updated));
+      }
+      signal();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      unsubscribe(this);
+    }
+
+    /**
+     * Makes sure run() will look at the buffer again, scheduling it unless it is running
+     */
+    private void signal() {
+      if (work.getAndIncrement() == 0) {
+        try {
+          deliveryThreads.execute(this);
+        } catch (RejectedExecutionException e) {
+          // closed: deliver what is left on the caller's thread, e.g. a late request()
+          run();
+        }
+      }
+    }
+
+    /**
+     * Delivers as many batches as there is demand and data for
+     */
+    @Override
+    public void run() {
+      int missed = 1;
+      do {
+        while (!cancelled) {
+          if (error != null) {
+            cancel();
+            subscriber.onError(error);
+            break;
+          }
+          long first = head.get();
+          long available = tail.get() - first;
+          if (available == 0) {
+            if (completed) {
+              cancel();
+              subscriber.onComplete();
+            }
+            break;
+          }
+          long requested = demand.get();
+          if (requested == 0) {
+            break;
+          }
+          int count = (int) Math.min(available, maxBatch);
+          List<StationEvent> batch = new ArrayList<>(count);
+          for (int i = 0; i < count; i++) {
+            int index = (int) (first + i) & (ring.length - 1);
+            batch.add(ring[index]);
+            ring[index] = null;
+          }
+          head.lazySet(first + count);
+          if (requested != Long.MAX_VALUE) {
+            demand.decrementAndGet();
+          }
+          try {
+            subscriber.onNext(batch);
+          } catch (RuntimeException e) {
+            // a subscriber must not throw; treat it as a cancellation
+            cancel();
+          }
+        }
+        missed = work.addAndGet(-missed);
+      } while (missed != 0);
+    }
+  }
+
+  private final LoopStation station; // the station whose changes are published
+
+  private final int bufferSize; // events buffered per subscriber
+
+  private final int maxBatch; // events per onNext at most
+
+  private final Overflow defaultOverflow; // policy for subscribe(subscriber)
+
+  private final ExecutorService deliveryThreads; // runs delivery tasks; idle threads exit
+
+  private final AtomicLong numDropped = new AtomicLong(); // events discarded by DROP
+
+  private volatile Subscription[] subscriptions = new Subscription[0]; // replaced as a whole
+
+  private long sequence; // number of the last event, written by the station's thread only
+
+  private boolean closed; // set by close(), guarded by this
+
+  /**
+   * Starts publishing the changes made to a station
+   *
+   * @param station    the station to watch
+   * @param bufferSize events buffered per subscriber, rounded up to a power of two
+   * @param maxBatch   largest number of events delivered in one onNext
+   * @param overflow   what to do when a subscriber's buffer is full, unless given to subscribe()
+   * @throws IllegalArgumentException if bufferSize or maxBatch is not positive
+   */
+  public StationEventPublisher(LoopStation station, int bufferSize, int maxBatch,
+      Overflow overflow) {
+    if (bufferSize <= 0 || maxBatch <= 0) {
+      throw new IllegalArgumentException("Invalid buffer size or batch size");
+    }
+    this.station = station;
+    this.bufferSize = bufferSize;
+    this.maxBatch = maxBatch;
+    this.defaultOverflow = overflow;
+    this.deliveryThreads = Executors.newCachedThreadPool(task -> {
+      Thread thread = new Thread(task, "station-events");
+      thread.setDaemon(true);
+      return thread;
+    });
+    station.addListener(this);
+  }
+
+  /**
+   * Subscribes with the publisher's default overflow policy
+   */
+  @Override
+  public void subscribe(Flow.Subscriber<? super List<StationEvent>> subscriber) {
+    subscribe(subscriber, defaultOverflow);
+  }
+
+  /**
+   * Subscribes to the events published from now on
+   *
+   * @param subscriber the subscriber
+   * @param overflow   what to do when this subscriber's buffer is full
+   */
+  public void subscribe(Flow.Subscriber<? super List<StationEvent>> subscriber,
+      Overflow overflow) {
+
+    if (subscriber == null) {
+      throw new NullPointerException();
+    }
+
+    Subscription subscription = new Subscription(subscriber, overflow);
+    subscriber.onSubscribe(subscription);
+
+    synchronized (this) {
+      if (closed) {
+        subscription.completed = true;
+      } else {
+        Subscription[] grown = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+        grown[subscriptions.length] = subscription;
+        subscriptions = grown;
+      }
+    }
+    subscription.signal();
+  }
+
+  /**
+   * @return number of subscribers currently receiving events
+   */
+  public int getNumSubscribers() {
+    return subscriptions.length;
+  }
+
+  /**
+   * @return number of events discarded because a DROP subscriber's buffer was full
+   */
+  public long getNumDropped() {
+    return numDropped.get();
+  }
+
+  /**
+   * @return sequence number of the last event published
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  @Override
+  public void podCreated(Pod pod) {
+    publish(StationEvent.Type.CREATED, pod, null);
+  }
+
+  @Override
+  public void podLaunched(Pod pod) {
+    publish(StationEvent.Type.LAUNCHED, pod, null);
+  }
+
+  @Override
+  public void podRemoved(Pod pod) {
+    publish(pod.peekFunctional() ? StationEvent.Type.REMOVED
+        : StationEvent.Type.MALFUNCTION_REMOVED, pod, null);
+  }
+
+  @Override
+  public void passengerAdded(Pod pod, String name) {
+    publish(StationEvent.Type.BOARDED, pod, name);
+  }
+
+  @Override
+  public void passengerRemoved(Pod pod, String name) {
+    publish(StationEvent.Type.CANCELLED, pod, name);
+  }
+
+  /**
+   * Stops publishing: unregisters from the station, completes every subscriber once it has been
+   * delivered the events already buffered for it, and shuts the delivery threads down. If a BLOCK
+   * subscriber is left, waits for the deliveries under way to finish, as that subscriber expects
+   * to see every event; events a subscriber has not requested yet are delivered by its later
+   * request() calls, on their own thread.
+   */
+  @Override
+  public void close() {
+    station.removeListener(this);
+    Subscription[] remaining;
+    synchronized (this) {
+      closed = true;
+      remaining = subscriptions;
+    }
+    boolean blocking = false;
+    for (Subscription subscription : remaining) {
+      subscription.completed = true;
+      subscription.signal();
+      blocking |= subscription.overflow == Overflow.BLOCK;
+    }
+    deliveryThreads.shutdown();
+    if (blocking) {
+      try {
+        deliveryThreads.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Buffers an event for every subscriber, on the station's thread
+   */
+  private void publish(StationEvent.Type type, Pod pod, String name) {
+
+    Subscription[] current = subscriptions;
+    if (current.length == 0) {
+      return;
+    }
+
+    StationEvent event = new StationEvent(++sequence, type, pod.getId(), name);
+    for (Subscription subscription : current) {
+      if (subscription.offer(event)) {
+        subscription.signal();
+      }
+    }
+  }
+
+  private synchronized void unsubscribe(Subscription subscription) {
+    List<Subscription> remaining = new ArrayList<>(Arrays.asList(subscriptions));
+    remaining.remove(subscription);
+    subscriptions = remaining.toArray(new Subscription[0]);
+  }
+}
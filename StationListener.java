@@ -0,0 +1,52 @@
+/**
+ * Receives notifications about changes to a LoopStation. Register with
+ * LoopStation.addListener(); callbacks run synchronously on the thread that made the change, after
+ * the change has been applied, so implementations should return quickly.
+ * 
+ * Passenger notifications cover pods while they are on one of the station's tracks.
+ */
+public interface StationListener {
+
+  /**
+   * Called after createPod() has added a new pod to a waiting track
+   * 
+   * @param pod the new pod
+   */
+  default void podCreated(Pod pod) {
+  }
+
+  /**
+   * Called after launchPod() has moved a pod onto the launched track
+   * 
+   * @param pod the launched pod
+   */
+  default void podLaunched(Pod pod) {
+  }
+
+  /**
+   * Called after a pod has been taken off the station, by clearMalfunctioning(), removePod() or
+   * consolidate()
+   * 
+   * @param pod the removed pod
+   */
+  default void podRemoved(Pod pod) {
+  }
+
+  /**
+   * Called after a passenger has boarded a pod on one of the station's tracks
+   * 
+   * @param pod  the pod boarded
+   * @param name the passenger's name
+   */
+  default void passengerAdded(Pod pod, String name) {
+  }
+
+  /**
+   * Called after a passenger has been removed from a pod on one of the station's tracks
+   * 
+   * @param pod  the pod the passenger left
+   * @param name the passenger's name
+   */
+  default void passengerRemoved(Pod pod, String name) {
+  }
+}
@@ -0,0 +1,451 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Optional single-writer execution mode for a LoopStation. Every mutation is submitted as a command
+ * into a bounded ring buffer and applied by one dedicated writer thread in batches, so the tracks'
+ * head and tail pointers are only ever touched by a single core. Results are delivered through
+ * CompletableFutures (completed on the writer thread), and a read-only StationSnapshot built from
+ * the tracks' persistent snapshots is published after each batch for lock-free queries.
+ *
+ * The wrapped station must not be mutated directly while the pipeline is running.
+ */
+public class StationPipeline implements AutoCloseable {
+
+  /**
+   * Immutable view of the station, published by the writer after each batch. Track contents are
+   * TrackSnapshots, so readers can iterate and query them without locks.
+   */
+  public static final class StationSnapshot {
+
+    private final long commandsApplied; // total commands applied when this snapshot was taken
+
+    private final TrackSnapshot launched; // contents of the launched track
+
+    private final TrackSnapshot waitingFirst; // contents of the waitingFirst track
+
+    private final TrackSnapshot waitingEconomy; // contents of the waitingEconomy track
+
+    private StationSnapshot(long commandsApplied, TrackSnapshot launched,
+        TrackSnapshot waitingFirst, TrackSnapshot waitingEconomy) {
+      this.commandsApplied = commandsApplied;
+      this.launched = launched;
+      this.waitingFirst = waitingFirst;
+      this.waitingEconomy = waitingEconomy;
+    }
+
+    /**
+     * @return number of commands applied to the station when this snapshot was published
+     */
+    public long getCommandsApplied() {
+      return commandsApplied;
+    }
+
+    /**
+     * @return number of pods that had been launched
+     */
+    public int getNumLaunched() {
+      return launched.size();
+    }
+
+    /**
+     * @return total number of pods waiting to be launched
+     */
+    public int getNumWaiting() {
+      return waitingFirst.size() + waitingEconomy.size();
+    }
+
+    /**
+     * Counts passengers in the functional pods of the snapshot, the rule of
+     * LoopStation.getNumPassengers(); unlike that method it leaves out launched pods spilled to
+     * disk, which snapshots do not hold
+     * 
+     * @return total number of passengers in the station's tracks
+     */
+    public int getNumPassengers() {
+      return launched.getNumPassengers() + waitingFirst.getNumPassengers()
+          + waitingEconomy.getNumPassengers();
+    }
+
+    /**
+     * @return contents of the launched track
+     */
+    public TrackSnapshot getLaunched() {
+      return launched;
+    }
+
+    /**
+     * @return contents of the waitingFirst track
+     */
+    public TrackSnapshot getWaitingFirst() {
+      return waitingFirst;
+    }
+
+    /**
+     * @return contents of the waitingEconomy track
+     */
+    public TrackSnapshot getWaitingEconomy() {
+      return waitingEconomy;
+    }
+  }
+
+  /**
+   * A mutation waiting in the ring buffer along with the future that receives its result
+   */
+  private static final class Command<T> {
+
+    private final Function<LoopStation, T> action;
+
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+
+    private Command(Function<LoopStation, T> action) {
+      this.action = action;
+    }
+
+    private void run(LoopStation station) {
+      try {
+        result.complete(action.apply(station));
+      } catch (Throwable e) {
+        // Errors too: the writer must outlive any one action, or later submissions never complete
+        result.completeExceptionally(e);
+      }
+    }
+  }
+
+  /**
+   * Bounded multi-producer ring buffer. Each slot carries a sequence number telling producers and
+   * the consumer whether the slot is free or filled for the current lap, so producers only contend
+   * on a single counter and never take a lock.
+   */
+  private static final class CommandRing {
+
+    private final Command<?>[] slots;
+
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    private final AtomicLong producerCursor = new AtomicLong();
+
+    private long consumerCursor; // only read and written by the writer thread
+
+    private CommandRing(int capacity) {
+      int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+      slots = new Command<?>[size];
+      sequences = new AtomicLongArray(size);
+      for (int i = 0; i < size; i++) {
+        sequences.set(i, i);
+      }
+      mask = size - 1;
+    }
+
+    /**
+     * Attempts to claim a slot and publish the command
+     *
+     * @return true if the command was enqueued, false if the ring is full
+     */
+    private boolean offer(Command<?> command) {
+      while (true) {
+        long cursor = producerCursor.get();
+        int index = (int) cursor & mask;
+        long diff = sequences.get(index) - cursor;
+        if (diff == 0) {
+          if (producerCursor.compareAndSet(cursor, cursor + 1)) {
+            slots[index] = command;
+            sequences.set(index, cursor + 1);
+            return true;
+          }
+        } else if (diff < 0) {
+          return false;
+        }
+      }
+    }
+
+    /**
+     * Takes the next published command, called by the writer thread only
+     *
+     * @return the next command, or null if nothing has been published
+     */
+    private Command<?> poll() {
+      int index = (int) consumerCursor & mask;
+      if (sequences.get(index) != consumerCursor + 1) {
+        return null;
+      }
+      Command<?> command = slots[index];
+      slots[index] = null;
+      sequences.set(index, consumerCursor + slots.length);
+      consumerCursor++;
+      return command;
+    }
+
+    private boolean isEmpty() {
+      return sequences.get((int) consumerCursor & mask) != consumerCursor + 1;
+    }
+  }
+
+  private final LoopStation station; // the station owned by the writer thread
+
+  private final CommandRing ring; // pending commands
+
+  private final int maxBatch; // maximum number of commands applied between snapshots
+
+  private final Thread writer; // the only thread allowed to touch the station
+
+  private volatile boolean idle; // set while the writer is parked waiting for commands
+
+  private volatile boolean running = true; // cleared by close()
+
+  private volatile boolean writerDone; // set once the writer has stopped applying commands
+
+  private volatile StationSnapshot snapshot; // last published snapshot
+
+  private long commandsApplied; // written by the writer thread only
+
+  private ScheduledExecutorService healthChecks; // submits periodic health-check slices, if enabled
+
+  /**
+   * Creates a pipeline with a 1024-slot ring buffer and batches of up to 256 commands
+   *
+   * @param station the station to be owned by the writer thread
+   */
+  public StationPipeline(LoopStation station) {
+    this(station, 1024, 256);
+  }
+
+  /**
+   * Creates a pipeline around the given station and starts its writer thread
+   *
+   * @param station      the station to be owned by the writer thread
+   * @param ringCapacity number of commands that may be pending (rounded up to a power of two)
+   * @param maxBatch     maximum number of commands applied before a snapshot is published
+   * @throws IllegalArgumentException if ringCapacity or maxBatch is not positive
+   */
+  public StationPipeline(LoopStation station, int ringCapacity, int maxBatch) {
+    if (ringCapacity <= 0 || maxBatch <= 0) {
+      throw new IllegalArgumentException("Invalid argument " + ringCapacity + ", " + maxBatch);
+    }
+    this.station = station;
+    this.ring = new CommandRing(ringCapacity);
+    this.maxBatch = maxBatch;
+    station.launched.enableSnapshots();
+    station.waitingFirst.enableSnapshots();
+    station.waitingEconomy.enableSnapshots();
+    publishSnapshot();
+    this.writer = new Thread(this::runWriter, "station-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * Submits an arbitrary mutation. Blocks (spinning, then parking briefly) while the ring is full.
+   *
+   * @param action the mutation to apply on the writer thread
+   * @return a future completed with the action's result, or exceptionally with what it threw
+   * @throws RejectedExecutionException if the pipeline has been closed
+   */
+  public <T> CompletableFuture<T> submit(Function<LoopStation, T> action) {
+    if (!running) {
+      throw new RejectedExecutionException("Pipeline is closed");
+    }
+    Command<T> command = new Command<>(action);
+    int spins = 0;
+    while (!ring.offer(command)) {
+      if (!running) {
+        throw new RejectedExecutionException("Pipeline is closed");
+      }
+      if (++spins < 64) {
+        Thread.onSpinWait();
+      } else {
+        LockSupport.parkNanos(1_000);
+      }
+    }
+    if (writerDone) {
+      // the writer may already have drained for the last time
+      rejectPending();
+    }
+    if (idle) {
+      LockSupport.unpark(writer);
+    }
+    return command.result;
+  }
+
+  /**
+   * Submits LoopStation.createPod
+   *
+   * @param capacity     number of passengers the pod can hold
+   * @param isFirstClass true if first class pod, false if economy
+   * @return a future completed with the newly created Pod
+   */
+  public CompletableFuture<Pod> createPod(int capacity, boolean isFirstClass) {
+    return submit(s -> s.createPod(capacity, isFirstClass));
+  }
+
+  /**
+   * Submits LoopStation.launchPod
+   *
+   * @return a future completed once the pod is launched, or exceptionally with a
+   *         NoSuchElementException if no pods were waiting
+   */
+  public CompletableFuture<Void> launchPod() {
+    return submit(s -> {
+      s.launchPod();
+      return null;
+    });
+  }
+
+  /**
+   * Submits LoopStation.clearMalfunctioning
+   *
+   * @return a future completed with the number of malfunctioning pods removed
+   */
+  public CompletableFuture<Integer> clearMalfunctioning() {
+    return submit(LoopStation::clearMalfunctioning);
+  }
+
+  /**
+   * Submits Pod.addPassenger for a pod owned by this station
+   *
+   * @param pod  the pod to board
+   * @param name the passenger's name
+   * @return a future completed once the passenger is on board, or exceptionally with an
+   *         IllegalStateException if the pod is full or malfunctioning
+   */
+  public CompletableFuture<Void> addPassenger(Pod pod, String name) {
+    return submit(s -> {
+      try {
+        pod.addPassenger(name);
+      } catch (MalfunctioningPodException e) {
+        throw new IllegalStateException(e);
+      }
+      return null;
+    });
+  }
+
+  /**
+   * Submits Pod.removePassenger for a pod owned by this station
+   *
+   * @param pod  the pod to remove the passenger from
+   * @param name the passenger's name
+   * @return a future completed with true if the passenger was found and removed, or exceptionally
+   *         with an IllegalStateException if the pod is malfunctioning
+   */
+  public CompletableFuture<Boolean> removePassenger(Pod pod, String name) {
+    return submit(s -> {
+      try {
+        return pod.removePassenger(name);
+      } catch (MalfunctioningPodException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+  }
+
+  /**
+   * Starts the background health-check mode: every period, a LoopStation.checkHealth(sliceSize)
+   * command is submitted, so malfunction checks roll over the launched track in bounded slices
+   * applied between other mutations instead of in one long pass.
+   *
+   * @param sliceSize    maximum number of pods checked per slice
+   * @param periodMillis delay between slices, in milliseconds
+   * @throws IllegalStateException if health checks have already been started
+   */
+  public synchronized void startHealthChecks(int sliceSize, long periodMillis) {
+    if (healthChecks != null) {
+      throw new IllegalStateException("Health checks already running");
+    }
+    healthChecks = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "station-health-check");
+      thread.setDaemon(true);
+      return thread;
+    });
+    healthChecks.scheduleWithFixedDelay(() -> {
+      if (running) {
+        submit(s -> s.checkHealth(sliceSize));
+      }
+    }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns the most recently published snapshot without blocking the writer
+   *
+   * @return the latest StationSnapshot
+   */
+  public StationSnapshot snapshot() {
+    return snapshot;
+  }
+
+  /**
+   * Stops accepting commands, applies everything already submitted and stops the writer thread
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (healthChecks != null) {
+        healthChecks.shutdownNow();
+      }
+    }
+    running = false;
+    LockSupport.unpark(writer);
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Writer loop: drain up to maxBatch commands, publish a snapshot, park when idle
+   */
+  private void runWriter() {
+    while (true) {
+      int applied = 0;
+      Command<?> command;
+      while (applied < maxBatch && (command = ring.poll()) != null) {
+        command.run(station);
+        applied++;
+      }
+      if (applied > 0) {
+        commandsApplied += applied;
+        publishSnapshot();
+        continue;
+      }
+      if (!running) {
+        if (ring.isEmpty()) {
+          writerDone = true;
+          // anything published after the emptiness check is rejected rather than stranded
+          rejectPending();
+          return;
+        }
+        continue;
+      }
+      idle = true;
+      if (ring.isEmpty() && running) {
+        LockSupport.park(this);
+      }
+      idle = false;
+    }
+  }
+
+  /**
+   * Fails every command still in the ring after the writer has stopped
+   */
+  private void rejectPending() {
+    synchronized (ring) {
+      Command<?> command;
+      while ((command = ring.poll()) != null) {
+        command.result.completeExceptionally(new RejectedExecutionException("Pipeline is closed"));
+      }
+    }
+  }
+
+  private void publishSnapshot() {
+    snapshot = new StationSnapshot(commandsApplied, station.launched.snapshot(),
+        station.waitingFirst.snapshot(), station.waitingEconomy.snapshot());
+  }
+}
@@ -0,0 +1,430 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Hosts many LoopStations in one JVM, e.g. one per platform per terminal for a whole region.
+ *
+ * A station is registered as a Handle, a name and little else; its LoopStation, with its tracks
+ * and columns, is only created the first time Handle.get() is called, so the many stations that
+ * are registered but never used cost about HANDLE_BYTES each.
+ *
+ * Maintenance (checkHealth(), clearMalfunctioning(), expireHolds() and the tasks added with
+ * addMaintenance()) runs for every materialized station on one shared pool of at most as many
+ * threads as there are cores, instead of a thread per station. Stations wait their turn in one
+ * round-robin queue: each slice takes stations from the front, maintains them and puts them back
+ * at the end until its time budget is spent, so a busy station delays the others by at most one
+ * station's maintenance and every station is reached within a lap of the queue.
+ *
+ * Maintenance holds the station's monitor, like the waiting createPod() variants; code changing a
+ * station while maintenance is running must synchronize on the station too.
+ */
+public final class StationRegistry implements AutoCloseable {
+
+  /**
+   * Heap held by a registered station that was never materialized: the Handle, its name and its
+   * map entry, measured on a 64-bit JVM with compressed references for names of about 10
+   * characters
+   */
+  public static final long HANDLE_BYTES = 120;
+
+  /**
+   * Pods checked per station and maintenance by checkHealth()
+   */
+  public static final int HEALTH_SLICE = 256;
+
+  /**
+   * A registered station, materialized on first use
+   */
+  public static final class Handle {
+
+    private final String name; // the name registered
+
+    private final StationRegistry registry; // the registry maintaining the station
+
+    private volatile LoopStation station; // null until get()
+
+    private volatile boolean registered = true; // false once unregistered, set under this
+
+    private long numMaintained; // maintenance runs, under the station's monitor
+
+    private long maintenanceNanos; // time spent in them, likewise
+
+    private long numFailures; // maintenance runs that threw, likewise
+
+    private RuntimeException lastFailure; // what the latest of them threw, likewise
+
+    private Handle(String name, StationRegistry registry) {
+      this.name = name;
+      this.registry = registry;
+    }
+
+    /**
+     * @return the name the station was registered under
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Returns the station, creating it and putting it in the maintenance queue on first use while
+     * it is registered
+     *
+     * @return the station
+     */
+    public LoopStation get() {
+      LoopStation current = station;
+      if (current == null) {
+        synchronized (this) {
+          current = station;
+          if (current == null) {
+            current = new LoopStation();
+            station = current;
+            if (registered) {
+              registry.numMaterialized.incrementAndGet();
+              registry.queue.offer(this);
+            }
+          }
+        }
+      }
+      return current;
+    }
+
+    /**
+     * @return true if get() has created the station
+     */
+    public boolean isMaterialized() {
+      return station != null;
+    }
+
+    /**
+     * Estimates the heap held by this station, see LoopStation.estimateBytes()
+     *
+     * @return HANDLE_BYTES, plus the station's estimate once it is materialized
+     */
+    public long estimateBytes() {
+      LoopStation current = station;
+      if (current == null) {
+        return HANDLE_BYTES;
+      }
+      synchronized (current) {
+        return HANDLE_BYTES + current.estimateBytes();
+      }
+    }
+
+    /**
+     * @return number of times maintenance has run on this station
+     */
+    public long getNumMaintained() {
+      LoopStation current = station;
+      if (current == null) {
+        return 0;
+      }
+      synchronized (current) {
+        return numMaintained;
+      }
+    }
+
+    /**
+     * @return total time maintenance has spent on this station, in nanoseconds
+     */
+    public long getMaintenanceNanos() {
+      LoopStation current = station;
+      if (current == null) {
+        return 0;
+      }
+      synchronized (current) {
+        return maintenanceNanos;
+      }
+    }
+
+    /**
+     * @return number of maintenance runs on this station that threw
+     */
+    public long getNumFailures() {
+      LoopStation current = station;
+      if (current == null) {
+        return 0;
+      }
+      synchronized (current) {
+        return numFailures;
+      }
+    }
+
+    /**
+     * @return what the latest failed maintenance run on this station threw, or null if none did
+     */
+    public RuntimeException getLastFailure() {
+      LoopStation current = station;
+      if (current == null) {
+        return null;
+      }
+      synchronized (current) {
+        return lastFailure;
+      }
+    }
+  }
+
+  private final ConcurrentHashMap<String, Handle> handles = new ConcurrentHashMap<>();
+
+  private final ConcurrentLinkedQueue<Handle> queue = new ConcurrentLinkedQueue<>(); // round robin
+
+  private final AtomicInteger numMaterialized = new AtomicInteger(); // stations created by get()
+
+  private final List<Consumer<LoopStation>> tasks = new CopyOnWriteArrayList<>(); // extra work
+
+  private final AtomicLong numFailures = new AtomicLong(); // maintenance runs that threw
+
+  private final int maxThreads; // maintenance threads, at most the number of cores
+
+  private ScheduledThreadPoolExecutor scheduler; // null until startMaintenance()
+
+  /**
+   * Creates a registry whose maintenance may use every core
+   */
+  public StationRegistry() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a registry
+   *
+   * @param maxThreads most threads maintenance may use; capped at the number of cores
+   * @throws IllegalArgumentException if maxThreads is not positive
+   */
+  public StationRegistry(int maxThreads) {
+    if (maxThreads <= 0) {
+      throw new IllegalArgumentException("Invalid thread count " + maxThreads);
+    }
+    this.maxThreads = Math.min(maxThreads, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Registers a station without creating it
+   *
+   * @param name name of the station, unique in the registry
+   * @return the station's handle
+   * @throws IllegalArgumentException if a station already has that name
+   */
+  public Handle register(String name) {
+    Handle handle = new Handle(name, this);
+    if (handles.putIfAbsent(name, handle) != null) {
+      throw new IllegalArgumentException("Duplicate station " + name);
+    }
+    return handle;
+  }
+
+  /**
+   * Looks up a station's handle
+   *
+   * @param name name of the station
+   * @return the handle, or null if no station has that name
+   */
+  public Handle getHandle(String name) {
+    return handles.get(name);
+  }
+
+  /**
+   * Removes a station from the registry; its maintenance stops at its next turn
+   *
+   * @param name name of the station
+   * @return true if a station had that name
+   */
+  public boolean unregister(String name) {
+    Handle handle = handles.remove(name);
+    if (handle == null) {
+      return false;
+    }
+    synchronized (handle) {
+      handle.registered = false;
+      if (handle.isMaterialized()) {
+        numMaterialized.decrementAndGet();
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return number of stations registered
+   */
+  public int size() {
+    return handles.size();
+  }
+
+  /**
+   * @return number of registered stations that have been materialized
+   */
+  public int getNumMaterialized() {
+    return numMaterialized.get();
+  }
+
+  /**
+   * Adds work to each station's maintenance, run after the built-in sweeps while holding the
+   * station's monitor
+   *
+   * @param task the work, given the station
+   */
+  public void addMaintenance(Consumer<LoopStation> task) {
+    tasks.add(task);
+  }
+
+  /**
+   * Starts running maintenance in the background: each of the pool's threads runs a slice of
+   * runMaintenance() every period
+   *
+   * @param period      time between two slices of one thread
+   * @param unit        unit of period
+   * @param sliceMillis time budget of a slice, in milliseconds
+   * @throws IllegalStateException if maintenance is already running
+   */
+  public synchronized void startMaintenance(long period, TimeUnit unit, long sliceMillis) {
+
+    if (scheduler != null) {
+      throw new IllegalStateException("Maintenance is already running");
+    }
+
+    AtomicInteger numThreads = new AtomicInteger();
+    scheduler = new ScheduledThreadPoolExecutor(maxThreads, runnable -> {
+      Thread thread = new Thread(runnable, "station-maintenance-" + numThreads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    long sliceNanos = TimeUnit.MILLISECONDS.toNanos(sliceMillis);
+    long periodNanos = unit.toNanos(period);
+    for (int i = 0; i < maxThreads; i++) {
+      // spread the threads' slices over the period
+      scheduler.scheduleWithFixedDelay(() -> runMaintenance(sliceNanos),
+          periodNanos * i / maxThreads, periodNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Runs one slice of maintenance on the calling thread: stations are taken from the front of the
+   * queue, maintained and put back at the end until the budget is spent or every station has had a
+   * turn. At least one station is maintained if any is materialized.
+   *
+   * @param budgetNanos time budget, in nanoseconds
+   * @return number of stations maintained
+   */
+  public int runMaintenance(long budgetNanos) {
+
+    long deadline = System.nanoTime() + budgetNanos;
+    int lap = queue.size();
+    int maintained = 0;
+
+    for (int turn = 0; turn < lap; turn++) {
+
+      Handle handle = queue.poll();
+      if (handle == null) {
+        break;
+      }
+      if (!handle.registered) {
+        continue; // unregistered: leaves the queue for good
+      }
+
+      maintain(handle);
+      queue.offer(handle);
+      maintained++;
+
+      if (System.nanoTime() - deadline >= 0) {
+        break;
+      }
+    }
+
+    return maintained;
+  }
+
+  /**
+   * @return number of maintenance runs that threw, over all stations; Handle.getLastFailure()
+   *         tells what
+   */
+  public long getNumFailures() {
+    return numFailures.get();
+  }
+
+  /**
+   * Estimates the heap held by all registered stations, see Handle.estimateBytes()
+   *
+   * @return estimated heap held, in bytes
+   */
+  public long estimateBytes() {
+    long bytes = 0;
+    for (Handle handle : handles.values()) {
+      bytes += handle.estimateBytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * Finds the stations holding the most heap
+   *
+   * @param limit most handles returned
+   * @return up to limit materialized stations' handles, largest estimate first
+   */
+  public List<Handle> largest(int limit) {
+
+    // estimate each station once, as an estimate scans its columns
+    Map<Handle, Long> estimates = new HashMap<>();
+    for (Handle handle : handles.values()) {
+      if (handle.isMaterialized()) {
+        estimates.put(handle, handle.estimateBytes());
+      }
+    }
+
+    List<Handle> largest = new ArrayList<>(estimates.keySet());
+    largest.sort((a, b) -> Long.compare(estimates.get(b), estimates.get(a)));
+    return new ArrayList<>(largest.subList(0, Math.min(limit, largest.size())));
+  }
+
+  /**
+   * Stops background maintenance, waiting for running slices to finish
+   */
+  @Override
+  public synchronized void close() {
+    if (scheduler != null) {
+      scheduler.shutdown();
+      try {
+        scheduler.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      scheduler = null;
+    }
+  }
+
+  /**
+   * Runs the sweeps and tasks on one station, holding its monitor
+   */
+  private void maintain(Handle handle) {
+
+    LoopStation station = handle.station;
+    synchronized (station) {
+      long begin = System.nanoTime();
+      try {
+        station.checkHealth(HEALTH_SLICE);
+        station.clearMalfunctioning();
+        station.expireHolds();
+        for (Consumer<LoopStation> task : tasks) {
+          task.accept(station);
+        }
+      } catch (RuntimeException e) {
+        // a failing station must not stop the slice, or the scheduler, for the others
+        numFailures.incrementAndGet();
+        handle.numFailures++;
+        handle.lastFailure = e;
+      }
+      handle.numMaintained++;
+      handle.maintenanceNanos += System.nanoTime() - begin;
+    }
+  }
+}
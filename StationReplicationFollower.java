@@ -0,0 +1,290 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only replica of a LoopStation fed by a StationReplicationLeader. The follower connects to
+ * the leader, applies each record to its own LoopStation and serves queries from it, so reporting
+ * load stays off the leader. Queries and record application are serialized on the replica. The
+ * leader starts every follower with a snapshot of its station, so a follower may connect at any
+ * time; getAppliedSequence() reaches the snapshot's sequence number once it has been applied.
+ *
+ * Pod IDs reported by the follower are the leader's IDs.
+ */
+public class StationReplicationFollower implements AutoCloseable {
+
+  private final LoopStation replica = new LoopStation(); // local copy of the leader's station
+
+  private final Map<Long, Pod> podsByLeaderId = new HashMap<>(); // guarded by replica
+
+  private final Map<Long, Long> leaderIdByLocalId = new HashMap<>(); // guarded by replica
+
+  private final Socket socket; // connection to the leader
+
+  private volatile long appliedSequence; // sequence number of the last applied record
+
+  private volatile long lastLagMillis; // leader-to-applied delay of the last applied record
+
+  private volatile Exception failure; // set if the stream broke or the replica diverged
+
+  private volatile boolean closed; // set by close()
+
+  /**
+   * Connects to a leader and starts applying its records in the background
+   *
+   * @param host the leader's host, normally localhost
+   * @param port the leader's port, see StationReplicationLeader.getPort()
+   * @throws IOException if the connection cannot be made
+   */
+  public StationReplicationFollower(String host, int port) throws IOException {
+    socket = new Socket(host, port);
+    socket.setTcpNoDelay(true);
+    Thread applier = new Thread(this::applyRecords, "replication-apply");
+    applier.setDaemon(true);
+    applier.start();
+  }
+
+  /**
+   * @return sequence number of the last record applied to the replica
+   */
+  public long getAppliedSequence() {
+    return appliedSequence;
+  }
+
+  /**
+   * Time between the leader publishing the most recently applied record and the follower applying
+   * it. Both clocks are the same machine's wall clock, so the resolution is one millisecond.
+   *
+   * @return the replication delay of the last applied record, in milliseconds
+   */
+  public long getLastLagMillis() {
+    return lastLagMillis;
+  }
+
+  /**
+   * Waits until the replica has applied at least the given record
+   *
+   * @param sequence      the record sequence number to wait for
+   * @param timeoutMillis how long to wait at most
+   * @return true if the record was applied, false on timeout or if the follower stopped applying
+   *         records, see getFailure()
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    synchronized (replica) {
+      while (appliedSequence < sequence) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0 || failure != null) {
+          return false;
+        }
+        replica.wait(remaining);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Tells why the follower stopped applying records while it was open: an IOException if the
+   * stream broke, an IllegalStateException if the replica diverged from the leader
+   *
+   * @return what stopped the follower, or null if it is still applying records or was closed
+   */
+  public Exception getFailure() {
+    return failure;
+  }
+
+  /**
+   * @return total number of passengers in the replica, see LoopStation.getNumPassengers()
+   */
+  public int getNumPassengers() {
+    synchronized (replica) {
+      return replica.getNumPassengers();
+    }
+  }
+
+  /**
+   * @return number of pods launched in the replica
+   */
+  public int getNumLaunched() {
+    synchronized (replica) {
+      return replica.getNumLaunched();
+    }
+  }
+
+  /**
+   * @return number of first class pods waiting in the replica
+   */
+  public int getNumWaitingFirst() {
+    synchronized (replica) {
+      return replica.waitingFirst.size();
+    }
+  }
+
+  /**
+   * @return number of economy pods waiting in the replica
+   */
+  public int getNumWaitingEconomy() {
+    synchronized (replica) {
+      return replica.waitingEconomy.size();
+    }
+  }
+
+  /**
+   * Finds the pod carrying a passenger, searching the launched track and then the waiting tracks
+   *
+   * @param name passenger name to search for
+   * @return the leader's ID of the first pod containing the passenger, or -1 if not found
+   */
+  public long findPassenger(String name) {
+    synchronized (replica) {
+      for (Track track : new Track[] {replica.launched, replica.waitingFirst,
+          replica.waitingEconomy}) {
+        int index = track.findPassenger(name);
+        if (index != -1) {
+          return leaderIdByLocalId.get(track.get(index).getId());
+        }
+      }
+      return -1;
+    }
+  }
+
+  /**
+   * Disconnects from the leader; the replica keeps the state applied so far
+   */
+  @Override
+  public void close() {
+    closed = true;
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // already closed
+    }
+  }
+
+  private void applyRecords() {
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+      while (true) {
+        StationReplicationLeader.Record record = StationReplicationLeader.readRecord(in);
+        synchronized (replica) {
+          apply(record);
+          appliedSequence = record.sequence;
+          lastLagMillis = System.currentTimeMillis() - record.leaderMillis;
+          replica.notifyAll();
+        }
+        // acknowledge once the records received so far have all been applied
+        if (in.available() == 0) {
+          StationReplicationLeader.writeAck(out, record.sequence);
+        }
+      }
+    } catch (IOException e) {
+      if (!closed) {
+        failure = e;
+      }
+    } catch (RuntimeException e) {
+      // the replica diverged: stop here rather than apply later records to the wrong state
+      failure = e;
+      close();
+    } finally {
+      synchronized (replica) {
+        replica.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Applies one record to the replica
+   *
+   * @throws IllegalStateException if the replica has diverged from the leader
+   */
+  private void apply(StationReplicationLeader.Record record) {
+    try {
+      switch (record.type) {
+        case StationReplicationLeader.CREATE: {
+          Pod pod = replica.createPod(record.capacity, record.isFirstClass);
+          podsByLeaderId.put(record.podId, pod);
+          leaderIdByLocalId.put(pod.getId(), record.podId);
+          break;
+        }
+        case StationReplicationLeader.LAUNCH: {
+          Pod pod = podOf(record);
+          replica.launchPod();
+          // launch order is deterministic, so the replica must have launched the same pod
+          if (replica.getTrackOf(pod) != replica.launched) {
+            throw new IllegalStateException("Replica diverged at record " + record.sequence);
+          }
+          break;
+        }
+        case StationReplicationLeader.REMOVE: {
+          Pod pod = podOf(record);
+          podsByLeaderId.remove(record.podId);
+          replica.removePod(pod);
+          leaderIdByLocalId.remove(pod.getId());
+          break;
+        }
+        case StationReplicationLeader.BOARD:
+          podOf(record).addPassenger(record.name);
+          break;
+        case StationReplicationLeader.CANCEL:
+          podOf(record).removePassenger(record.name);
+          break;
+        case StationReplicationLeader.SNAPSHOT:
+          // the pods before it rebuilt the leader's tracks as of record.sequence
+          break;
+        default:
+          throw new IllegalStateException("Unknown record type " + record.type);
+      }
+    } catch (MalfunctioningPodException e) {
+      // replica pods never run malfunction checks, so they cannot fail
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @return the replica's pod for the record's pod ID
+   * @throws IllegalStateException if the replica has no such pod, i.e. it has diverged
+   */
+  private Pod podOf(StationReplicationLeader.Record record) {
+    Pod pod = podsByLeaderId.get(record.podId);
+    if (pod == null) {
+      throw new IllegalStateException("Replica diverged at record " + record.sequence
+          + ": no pod " + record.podId);
+    }
+    return pod;
+  }
+
+  /**
+   * Runs a follower as a separate process. Connects to the leader, waits for the given record to be
+   * applied, then prints the replica's counts and the pod holding each named passenger.
+   *
+   * <pre>
+   * java StationReplicationFollower port sequence [passenger...]
+   * </pre>
+   */
+  public static void main(String[] args) throws Exception {
+    try (StationReplicationFollower follower =
+        new StationReplicationFollower("localhost", Integer.parseInt(args[0]))) {
+      if (!follower.awaitSequence(Long.parseLong(args[1]), 30_000)) {
+        System.out.println("timeout at " + follower.getAppliedSequence());
+        System.exit(1);
+      }
+      StringBuilder summary = new StringBuilder();
+      summary.append("sequence=").append(follower.getAppliedSequence());
+      summary.append(" launched=").append(follower.getNumLaunched());
+      summary.append(" first=").append(follower.getNumWaitingFirst());
+      summary.append(" economy=").append(follower.getNumWaitingEconomy());
+      summary.append(" passengers=").append(follower.getNumPassengers());
+      for (int i = 2; i < args.length; i++) {
+        summary.append(' ').append(args[i]).append('=').append(follower.findPassenger(args[i]));
+      }
+      System.out.println(summary);
+    }
+  }
+}
@@ -0,0 +1,405 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ships the mutation stream of a LoopStation to follower processes over a loopback socket. The
+ * leader registers itself as a StationListener, encodes each change (pod created, launched or
+ * removed, passenger boarded or cancelled) as a numbered record, and streams the records to every
+ * connected StationReplicationFollower, which applies them to its own replica. Followers
+ * acknowledge the last record they applied, which gives the replication lag.
+ *
+ * A follower that connects is first sent a snapshot of the station, taken under the station's
+ * monitor: a CREATE (plus BOARD per passenger, plus LAUNCH for launched pods) for every pod on the
+ * tracks, then a SNAPSHOT record carrying the sequence number the snapshot stands for. Live records
+ * follow from the next sequence number. The leader only keeps the records some connected follower
+ * has not acknowledged yet, so the log stays as short as the slowest follower's lag, and a late
+ * follower starts from a fresh snapshot. Only changes made through the station (and to passengers
+ * of pods on its tracks) are replicated, and pods already spilled to disk are not.
+ */
+public class StationReplicationLeader implements StationListener, AutoCloseable {
+
+  static final byte CREATE = 1; // payload: boolean isFirstClass, int capacity
+
+  static final byte LAUNCH = 2; // no payload
+
+  static final byte REMOVE = 3; // no payload
+
+  static final byte BOARD = 4; // payload: UTF passenger name
+
+  static final byte CANCEL = 5; // payload: UTF passenger name
+
+  static final byte SNAPSHOT = 6; // no payload; ends a snapshot, pod ID 0
+
+  /**
+   * Connection to one follower: a sender thread streaming the log and a reader thread taking acks
+   */
+  private final class FollowerLink {
+
+    private final Socket socket;
+
+    private long acknowledged; // last sequence number the follower applied, guarded by the leader
+
+    private long start; // sequence number of the follower's snapshot, guarded by the leader
+
+    private FollowerLink(Socket socket) {
+      this.socket = socket;
+    }
+
+    private void send() {
+      try {
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+        for (byte[] record : snapshot(this)) {
+          out.write(record);
+        }
+        out.flush();
+        long next = start;
+        while (true) {
+          List<byte[]> batch;
+          synchronized (StationReplicationLeader.this) {
+            while (running && next >= getSequence()) {
+              StationReplicationLeader.this.wait();
+            }
+            if (!running) {
+              return;
+            }
+            batch = new ArrayList<>(log.subList((int) (next - logStart), log.size()));
+          }
+          for (byte[] record : batch) {
+            out.write(record);
+          }
+          out.flush();
+          next += batch.size();
+        }
+      } catch (IOException | InterruptedException e) {
+        // the follower went away or the leader is closing
+      } finally {
+        closeQuietly();
+      }
+    }
+
+    private void readAcks() {
+      try {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        while (true) {
+          long sequence = in.readLong();
+          synchronized (StationReplicationLeader.this) {
+            acknowledged = sequence;
+            trim();
+          }
+        }
+      } catch (IOException e) {
+        // the follower went away or the leader is closing
+      } finally {
+        closeQuietly();
+      }
+    }
+
+    private void closeQuietly() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // already closed
+      }
+    }
+  }
+
+  private final LoopStation station; // the station being replicated
+
+  private final ServerSocket server; // accepts follower connections on the loopback interface
+
+  private final List<byte[]> log = new ArrayList<>(); // records after logStart, guarded by this
+
+  private long logStart; // sequence number of the last record dropped from log, guarded by this
+
+  private final List<FollowerLink> followers = new ArrayList<>(); // guarded by this
+
+  private volatile boolean running = true; // cleared by close()
+
+  /**
+   * Starts replicating the given station, accepting followers on the loopback interface
+   *
+   * @param station the station whose changes are shipped
+   * @param port    the port to listen on, or 0 to pick a free one (see getPort())
+   * @throws IOException if the port cannot be bound
+   */
+  public StationReplicationLeader(LoopStation station, int port) throws IOException {
+    this.station = station;
+    this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    station.addListener(this);
+    Thread acceptor = new Thread(this::acceptFollowers, "replication-accept");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  /**
+   * @return the port followers should connect to
+   */
+  public int getPort() {
+    return server.getLocalPort();
+  }
+
+  /**
+   * @return sequence number of the last record published (0 if none)
+   */
+  public synchronized long getSequence() {
+    return logStart + log.size();
+  }
+
+  /**
+   * @return number of records kept in memory because a connected follower has not applied them
+   */
+  public synchronized int getNumLogged() {
+    return log.size();
+  }
+
+  /**
+   * @return number of followers currently connected
+   */
+  public synchronized int getNumFollowers() {
+    followers.removeIf(link -> link.socket.isClosed());
+    return followers.size();
+  }
+
+  /**
+   * Replication lag of the slowest connected follower, in records published but not yet
+   * acknowledged as applied
+   *
+   * @return the largest lag, or 0 if no follower is connected
+   */
+  public synchronized long getMaxLagRecords() {
+    long lag = 0;
+    for (FollowerLink link : followers) {
+      if (!link.socket.isClosed()) {
+        lag = Math.max(lag, getSequence() - link.acknowledged);
+      }
+    }
+    return lag;
+  }
+
+  @Override
+  public void podCreated(Pod pod) {
+    publish(CREATE, pod, null);
+  }
+
+  @Override
+  public void podLaunched(Pod pod) {
+    publish(LAUNCH, pod, null);
+  }
+
+  @Override
+  public void podRemoved(Pod pod) {
+    publish(REMOVE, pod, null);
+  }
+
+  @Override
+  public void passengerAdded(Pod pod, String name) {
+    publish(BOARD, pod, name);
+  }
+
+  @Override
+  public void passengerRemoved(Pod pod, String name) {
+    publish(CANCEL, pod, name);
+  }
+
+  /**
+   * Stops replicating: unregisters from the station and disconnects every follower
+   */
+  @Override
+  public void close() {
+    station.removeListener(this);
+    synchronized (this) {
+      running = false;
+      notifyAll();
+      for (FollowerLink link : followers) {
+        link.closeQuietly();
+      }
+    }
+    try {
+      server.close();
+    } catch (IOException e) {
+      // already closed
+    }
+  }
+
+  /**
+   * Appends a record to the log and wakes the senders
+   */
+  private synchronized void publish(byte type, Pod pod, String name) {
+    log.add(encode(getSequence() + 1, type, pod, name));
+    trim();
+    notifyAll();
+  }
+
+  /**
+   * Encodes a record. Record layout: long sequence, long leader time in milliseconds, byte type,
+   * long pod ID, then the type's payload. Snapshot records other than SNAPSHOT have sequence 0.
+   */
+  private static byte[] encode(long sequence, byte type, Pod pod, String name) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeLong(sequence);
+      out.writeLong(System.currentTimeMillis());
+      out.writeByte(type);
+      out.writeLong(pod == null ? 0 : pod.getId());
+      if (type == CREATE) {
+        out.writeBoolean(pod.peekPodClass() == Pod.FIRST);
+        out.writeInt(pod.peekCapacity());
+      } else if (type == BOARD || type == CANCEL) {
+        out.writeUTF(name);
+      }
+    } catch (IOException e) {
+      // writing to a byte array does not fail
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Encodes the station's current pods for a follower that just connected, see the class comment,
+   * and records the snapshot's sequence number as the link's start. Takes the station's monitor
+   * before this one, the order in which a station thread holding its monitor publishes.
+   *
+   * @return the snapshot's records, ending with SNAPSHOT
+   */
+  private List<byte[]> snapshot(FollowerLink link) {
+    List<byte[]> records = new ArrayList<>();
+    synchronized (station) {
+      synchronized (this) {
+        for (Track track : new Track[] {station.launched, station.waitingFirst,
+            station.waitingEconomy}) {
+          for (Pod pod : replayOrder(track)) {
+            records.add(encode(0, CREATE, pod, null));
+            for (String name : pod.peekPassengers()) {
+              if (name != null) {
+                records.add(encode(0, BOARD, pod, name));
+              }
+            }
+            if (track == station.launched) {
+              // the replica's waiting tracks hold only this pod, so it is the one launched
+              records.add(encode(0, LAUNCH, pod, null));
+            }
+          }
+        }
+        link.start = getSequence();
+        records.add(encode(link.start, SNAPSHOT, null, null));
+      }
+    }
+    return records;
+  }
+
+  /**
+   * Lists a track's pods in an order that Track.add() turns back into the track's order: first
+   * class pods, which add() puts at the front, from tail to head, then economy pods from head to
+   * tail
+   */
+  private static List<Pod> replayOrder(Track track) {
+    List<Pod> pods = new ArrayList<>(track.size());
+    for (LinkedNode node = track.tail; node != null; node = node.getPrev()) {
+      if (node.getPod().peekPodClass() == Pod.FIRST) {
+        pods.add(node.getPod());
+      }
+    }
+    for (LinkedNode node = track.head; node != null; node = node.getNext()) {
+      if (node.getPod().peekPodClass() != Pod.FIRST) {
+        pods.add(node.getPod());
+      }
+    }
+    return pods;
+  }
+
+  /**
+   * Drops the records that every connected follower has applied or received in its snapshot; a
+   * follower still waiting for its snapshot keeps the whole log. Called with this monitor held.
+   */
+  private void trim() {
+    followers.removeIf(link -> link.socket.isClosed());
+    long needed = getSequence();
+    for (FollowerLink link : followers) {
+      needed = Math.min(needed, Math.max(link.acknowledged, link.start));
+    }
+    if (needed > logStart) {
+      log.subList(0, (int) (needed - logStart)).clear();
+      logStart = needed;
+    }
+  }
+
+  private void acceptFollowers() {
+    while (running) {
+      try {
+        Socket socket = server.accept();
+        socket.setTcpNoDelay(true);
+        FollowerLink link = new FollowerLink(socket);
+        synchronized (this) {
+          followers.add(link);
+        }
+        startDaemon(link::send, "replication-send");
+        startDaemon(link::readAcks, "replication-acks");
+      } catch (IOException e) {
+        // the server socket was closed by close()
+      }
+    }
+  }
+
+  private static void startDaemon(Runnable body, String name) {
+    Thread thread = new Thread(body, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Reads one record written by publish(); shared with StationReplicationFollower
+   *
+   * @param in stream positioned at the start of a record
+   * @return the decoded record
+   * @throws IOException if the stream ends or fails
+   */
+  static Record readRecord(InputStream in) throws IOException {
+    DataInputStream data = in instanceof DataInputStream ? (DataInputStream) in
+        : new DataInputStream(in);
+    Record record = new Record();
+    record.sequence = data.readLong();
+    record.leaderMillis = data.readLong();
+    record.type = data.readByte();
+    record.podId = data.readLong();
+    if (record.type == CREATE) {
+      record.isFirstClass = data.readBoolean();
+      record.capacity = data.readInt();
+    } else if (record.type == BOARD || record.type == CANCEL) {
+      record.name = data.readUTF();
+    }
+    return record;
+  }
+
+  /**
+   * A decoded replication record
+   */
+  static final class Record {
+    long sequence;
+    long leaderMillis;
+    byte type;
+    long podId;
+    boolean isFirstClass;
+    int capacity;
+    String name;
+  }
+
+  /**
+   * Sends an acknowledgement; shared with StationReplicationFollower
+   */
+  static void writeAck(OutputStream out, long sequence) throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeLong(sequence);
+    data.flush();
+  }
+}
@@ -1,15 +1,88 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
 /**
  * A doubly-linked list implementation that manages Pods and maintains their order. Implements
- * ListADT interface for Pod objects.
+ * ListADT interface for Pod objects. A Pod is linked into at most one Track at a time and keeps a
+ * reference to the track and node carrying it.
  */
 public class Track implements ListADT<Pod> {
 
+  /**
+   * How addGroup() may spread a group over pods
+   */
+  public enum GroupPolicy {
+
+    /**
+     * The whole group in one pod, or not at all
+     */
+    SAME_POD,
+
+    /**
+     * One pod if possible, otherwise the fewest pods next to each other on the track
+     */
+    ADJACENT_PODS,
+
+    /**
+     * One pod or adjacent pods if possible, otherwise the fewest pods anywhere in the class
+     */
+    ANY_PODS
+  }
+
   protected LinkedNode head; // First node in the track
 
   private int size; // Number of pods in the track
 
   protected LinkedNode tail; // Last node in the track
 
+  private long lowOrder; // order key of the head, or one less than the next head's key
+
+  private long highOrder; // order key of the tail, or one more than the next tail's key
+
+  private volatile TrackSnapshot.Node snapshotRoot; // persistent mirror, kept while snapshots are on
+
+  private volatile boolean snapshotsEnabled; // whether link and unlink maintain snapshotRoot
+
+  protected final Set<LinkedNode> failed = new HashSet<>(); // nodes whose pods have malfunctioned
+
+  private LinkedNode healthCursor; // next node to be checked by checkHealth, null to restart at head
+
+  private TrackSegment headSegment; // first segment, while passenger filters are enabled
+
+  private TrackSegment tailSegment; // last segment, while passenger filters are enabled
+
+  private boolean filtersEnabled; // whether nodes are grouped into filtered segments
+
+  private long segmentsScanned; // segments findPassenger had to walk since filters were enabled
+
+  private long segmentsSkipped; // segments findPassenger ruled out by their filters
+
+  private int podsTraversed; // pods the last findPassenger() or addPassenger() visited
+
+  private PodColumns columns; // columnar summary of the pods, null until enableColumns()
+
+  private int columnTag; // tells this track's pods apart in columns shared with other tracks
+
+  private StationListener listener; // receives passenger changes of pods on this track (may be null)
+
+  private HierarchicalTimingWheel holds; // unended seat holds by expiry, null until holdSeat()
+
+  private LongSupplier clock = System::currentTimeMillis; // hold expiry times, replaceable
+
+  /**
+   * Maximum number of detached nodes each track keeps for reuse
+   */
+  private static final int MAX_FREE_NODES = 64;
+
+  private LinkedNode freeNodes; // detached nodes kept for reuse, chained through next
+
+  private int numFreeNodes; // number of nodes in freeNodes
+
   /**
    * Checks if the track contains no pods
    * 
@@ -34,14 +107,31 @@ public class Track implements ListADT<Pod> {
   }
 
   /**
-   * Removes all pods from the track
+   * Removes all pods from the track, detaching each of them in O(n)
    */
   @Override
   public void clear() {
 
+    // detach the pods so they stop reporting malfunctions to this track
+    LinkedNode current = this.head;
+    while (current != null) {
+      LinkedNode next = current.getNext();
+      current.getPod().setOwner(null, null);
+      if (columns != null) {
+        columns.release(current.getColumn());
+      }
+      recycle(current);
+      current = next;
+    }
+
     this.head = null;
     this.tail = null;
     this.size = 0;
+    this.snapshotRoot = null;
+    this.failed.clear();
+    this.healthCursor = null;
+    this.headSegment = null;
+    this.tailSegment = null;
 
   }
 
@@ -54,128 +144,457 @@ public class Track implements ListADT<Pod> {
   @Override
   public void add(Pod newElement) {
 
-    LinkedNode newNode = new LinkedNode(newElement);
-
     try {
 
       if (newElement.getPodClass() == 1) {
 
         // add to back if pod is economy class
+        linkLast(obtainNode(newElement));
 
-        // case 1: empty list
-        if (this.size == 0) {
+      } else {
 
-          this.head = newNode;
-          this.tail = newNode;
-          size++;
+        // add to front if pod is first class
+        linkFirst(obtainNode(newElement));
 
-        }
+      }
 
-        // case 2: non empty list
-        else {
+    } catch (MalfunctioningPodException e) {
 
-          newNode.setPrev(this.tail);
-          this.tail.setNext(newNode);
-          this.tail = newNode;
-          size++;
+      e.printStackTrace();
 
-        }
+    }
+  }
 
-      } else {
+  /**
+   * Appends pods after the tail in the given order, whatever their class. Used to build a track in
+   * one pass when the caller has already put the pods in the order add() would give them.
+   * 
+   * @param pods pods not on any track
+   */
+  void addAllLast(List<Pod> pods) {
+    for (Pod pod : pods) {
+      linkLast(obtainNode(pod));
+    }
+  }
 
-        // add to front if pod is first class
+  /**
+   * Links a detached node by the class of its pod, like add(). Works for malfunctioning pods too,
+   * so pods that fail while waiting still reach the track where they can be cleared.
+   * 
+   * @param node node to link, whose prev and next must be null
+   */
+  protected void addNode(LinkedNode node) {
 
-        // case 1: empty list
-        if (this.size == 0) {
+    if (node.getPod().peekPodClass() == 1) {
+      linkLast(node);
+    } else {
+      linkFirst(node);
+    }
+  }
 
-          this.head = newNode;
-          this.tail = newNode;
-          size++;
+  /**
+   * Takes a node from the free list, or allocates one if the list is empty
+   * 
+   * @param pod the Pod to be contained in the node
+   * @return a detached node carrying pod
+   */
+  private LinkedNode obtainNode(Pod pod) {
 
-        }
+    if (freeNodes == null) {
+      return new LinkedNode(pod);
+    }
 
-        // case 2: non empty list
-        else {
+    LinkedNode node = freeNodes;
+    freeNodes = node.getNext();
+    numFreeNodes--;
+    node.reset(pod);
+    return node;
+  }
 
-          newNode.setNext(this.head);
-          this.head.setPrev(newNode);
-          this.head = newNode;
-          size++;
+  /**
+   * Returns a detached node to the free list unless the list is already full
+   * 
+   * @param node node that is no longer linked into any track
+   */
+  private void recycle(LinkedNode node) {
 
-        }
-      }
+    if (numFreeNodes >= MAX_FREE_NODES) {
+      return;
+    }
 
-    } catch (MalfunctioningPodException e) {
+    node.reset(null);
+    node.setNext(freeNodes);
+    freeNodes = node;
+    numFreeNodes++;
+  }
 
-      e.printStackTrace();
+  /**
+   * Links a detached node in front of the current head
+   * 
+   * @param newNode node to link, whose prev and next must be null
+   */
+  protected void linkFirst(LinkedNode newNode) {
+
+    newNode.setOrder(this.size == 0 ? 0 : this.lowOrder - 1);
+
+    // case 1: empty list
+    if (this.size == 0) {
+
+      this.head = newNode;
+      this.tail = newNode;
+      this.highOrder = newNode.getOrder();
+
+    }
+
+    // case 2: non empty list
+    else {
 
+      newNode.setNext(this.head);
+      this.head.setPrev(newNode);
+      this.head = newNode;
+
+    }
+
+    this.lowOrder = newNode.getOrder();
+    size++;
+
+    adopt(newNode);
+
+    if (filtersEnabled) {
+      joinHeadSegment(newNode);
+    }
+
+    if (snapshotsEnabled) {
+      snapshotRoot = TrackSnapshot.insertFirst(snapshotRoot, newNode.getOrder(), newNode.getPod());
     }
   }
 
   /**
-   * Returns pod at specified position
+   * Links a detached node after the current tail
    * 
-   * @param index position of pod to return
-   * @return Pod at specified index
-   * @throws IndexOutOfBoundsException if index is invalid
+   * @param newNode node to link, whose prev and next must be null
    */
-  @Override
-  public Pod get(int index) {
+  protected void linkLast(LinkedNode newNode) {
+
+    newNode.setOrder(this.size == 0 ? 0 : this.highOrder + 1);
+
+    // case 1: empty list
+    if (this.size == 0) {
+
+      this.head = newNode;
+      this.tail = newNode;
+      this.lowOrder = newNode.getOrder();
 
-    if (index >= size) {
-      throw new IndexOutOfBoundsException();
     }
 
-    LinkedNode current = this.head;
+    // case 2: non empty list
+    else {
+
+      newNode.setPrev(this.tail);
+      this.tail.setNext(newNode);
+      this.tail = newNode;
 
-    if (index == 0) {
-      return current.getPod();
     }
 
-    for (int i = 0; i < index; i++) {
-      current = current.getNext();
+    this.highOrder = newNode.getOrder();
+    size++;
+
+    adopt(newNode);
+
+    if (filtersEnabled) {
+      joinTailSegment(newNode);
     }
 
-    return current.getPod();
+    if (snapshotsEnabled) {
+      snapshotRoot = TrackSnapshot.insertLast(snapshotRoot, newNode.getOrder(), newNode.getPod());
+    }
   }
 
   /**
-   * Checks if a specific pod is in the track
+   * Unlinks a node that is currently part of this track and detaches it from its neighbours
    * 
-   * @param toFind pod to search for
-   * @return true if pod is found, false otherwise
+   * @param current node to unlink
    */
-  @Override
-  public boolean contains(Pod toFind) {
+  protected void unlink(LinkedNode current) {
 
-    // track is empty
-    if (this.size == 0) {
-      return false;
+    if (filtersEnabled) {
+      leaveSegment(current);
     }
 
-    LinkedNode current = this.head;
+    // Case 1: Only one node in list
+    if (size == 1) {
+      this.head = null;
+      this.tail = null;
+    }
+    // Case 2: Removing head
+    else if (current == head) {
+      this.head = current.getNext();
+      this.head.setPrev(null);
+      this.lowOrder = this.head.getOrder();
+    }
+    // Case 3: Removing tail
+    else if (current == tail) {
+      this.tail = current.getPrev();
+      this.tail.setNext(null);
+      this.highOrder = this.tail.getOrder();
+    }
+    // Case 4: Removing from middle
+    else {
+      current.getPrev().setNext(current.getNext());
+      current.getNext().setPrev(current.getPrev());
+    }
 
-    for (int i = 0; i < size; i++) {
+    if (current == healthCursor) {
+      healthCursor = current.getNext();
+    }
+    if (!current.getPod().peekFunctional()) {
+      failed.remove(current);
+    }
+    current.getPod().setOwner(null, null);
+    if (columns != null) {
+      columns.release(current.getColumn());
+      current.setColumn(-1);
+    }
 
-      if (current.getPod().equals(toFind)) {
+    current.setPrev(null);
+    current.setNext(null);
+    size--;
 
-        return true;
+    if (snapshotsEnabled) {
+      snapshotRoot = TrackSnapshot.remove(snapshotRoot, current.getOrder());
+    }
+  }
 
-      } else {
+  /**
+   * Makes this track the owner of a newly linked node's pod, indexing it if it has already failed
+   * 
+   * @param newNode node that was just linked
+   */
+  private void adopt(LinkedNode newNode) {
 
-        if (current.getNext() != null) {
+    Pod pod = newNode.getPod();
+    pod.setOwner(this, newNode);
 
-          current = current.getNext();
+    if (!pod.peekFunctional()) {
+      failed.add(newNode);
+    }
 
-        }
+    if (columns != null) {
+      newNode.setColumn(columns.occupy(pod, columnTag));
+    }
+  }
+
+  /**
+   * Called by a pod on this track when it malfunctions
+   * 
+   * @param node the node carrying the failed pod
+   */
+  void podFailed(LinkedNode node) {
+    failed.add(node);
+    if (columns != null) {
+      columns.status[node.getColumn()] = PodColumns.FAILED;
+    }
+  }
+
+  /**
+   * Sets the listener told about passengers boarding or leaving pods on this track
+   * 
+   * @param listener the listener (null for none)
+   */
+  void setListener(StationListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Called by a pod on this track after a passenger boarded it
+   * 
+   * @param pod  the pod boarded
+   * @param name the passenger's name
+   */
+  void passengerAdded(Pod pod, String name) {
+    if (filtersEnabled) {
+      pod.getNode().getSegment().filter.add(name);
+    }
+    if (columns != null) {
+      columns.occupancy[pod.getNode().getColumn()]++;
+    }
+    if (listener != null) {
+      listener.passengerAdded(pod, name);
+    }
+  }
+
+  /**
+   * Called by a pod on this track after a passenger left it
+   * 
+   * @param pod  the pod the passenger left
+   * @param name the passenger's name
+   */
+  void passengerRemoved(Pod pod, String name) {
+    if (columns != null) {
+      columns.occupancy[pod.getNode().getColumn()]--;
+    }
+    if (listener != null) {
+      listener.passengerRemoved(pod, name);
+    }
+  }
+
+  /**
+   * Returns the number of pods on this track known to have malfunctioned
+   * 
+   * @return number of indexed failed pods
+   */
+  public int getNumFailed() {
+    return failed.size();
+  }
+
+  /**
+   * Removes every pod known to have malfunctioned. Costs O(failed pods) rather than O(size), since
+   * pods report their own failures to the track.
+   * 
+   * @return number of pods removed
+   */
+  public int removeFailed() {
+    return removeFailed(null);
+  }
+
+  /**
+   * Removes every pod known to have malfunctioned, collecting the removed pods
+   * 
+   * @param removedPods collection receiving each removed pod (may be null)
+   * @return number of pods removed
+   */
+  public int removeFailed(Collection<Pod> removedPods) {
+
+    LinkedNode[] toRemove = failed.toArray(new LinkedNode[0]);
+
+    for (LinkedNode node : toRemove) {
+      if (removedPods != null) {
+        removedPods.add(node.getPod());
       }
+      unlink(node);
+      recycle(node);
     }
 
-    if (current.getPod().equals(toFind)) {
-      return true;
+    return toRemove.length;
+  }
+
+  /**
+   * Runs the malfunction check (Pod.isFunctional()) on the next slice of pods, continuing where the
+   * previous call stopped and wrapping around at the tail. Spreads health checks over many short
+   * calls instead of one pass over the whole track.
+   * 
+   * @param maxPods maximum number of pods to check, capped at one full lap of the track
+   * @return number of pods found to have newly malfunctioned
+   */
+  public int checkHealth(int maxPods) {
+
+    int newlyFailed = 0;
+    int toCheck = Math.min(maxPods, size);
+
+    for (int i = 0; i < toCheck; i++) {
+
+      if (healthCursor == null) {
+        healthCursor = this.head;
+      }
+
+      LinkedNode current = healthCursor;
+      healthCursor = current.getNext();
+
+      Pod pod = current.getPod();
+      if (pod.peekFunctional() && !pod.isFunctional()) {
+        newlyFailed++;
+      }
     }
 
-    return false;
+    return newlyFailed;
+  }
+
+  /**
+   * Scrambles an order key into a heap priority. Order keys only ever arrive at the two ends of the
+   * track, so trees keyed by them (TrackSnapshot, IndexedTrack) use this to stay balanced in
+   * expectation.
+   * 
+   * @param order an order key
+   * @return a well spread priority derived from the key
+   */
+  static long priorityOf(long order) {
+    long z = order * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * Finds the node at specified position, walking from whichever end is closer
+   * 
+   * @param index position of the node, which must be valid
+   * @return node at specified index
+   */
+  protected LinkedNode getNode(int index) {
+
+    LinkedNode current;
+
+    if (index < size / 2) {
+      current = this.head;
+      for (int i = 0; i < index; i++) {
+        current = current.getNext();
+      }
+    } else {
+      current = this.tail;
+      for (int i = size - 1; i > index; i--) {
+        current = current.getPrev();
+      }
+    }
+
+    return current;
+  }
+
+  /**
+   * Returns pod at specified position
+   * 
+   * @param index position of pod to return
+   * @return Pod at specified index
+   * @throws IndexOutOfBoundsException if index is invalid
+   */
+  @Override
+  public Pod get(int index) {
+
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException();
+    }
+
+    return getNode(index).getPod();
+  }
+
+  /**
+   * Checks if a specific pod is in the track. Every pod knows the track it is linked into, so this
+   * is O(1).
+   * 
+   * @param toFind pod to search for
+   * @return true if pod is found, false otherwise
+   */
+  @Override
+  public boolean contains(Pod toFind) {
+    return toFind != null && toFind.getTrack() == this;
+  }
+
+  /**
+   * Removes a specific pod from the track, in O(1) (O(log n) for an IndexedTrack)
+   * 
+   * @param toRemove pod to remove
+   * @return true if the pod was on this track and has been removed, false otherwise
+   */
+  public boolean remove(Pod toRemove) {
+
+    if (!contains(toRemove)) {
+      return false;
+    }
+
+    LinkedNode current = toRemove.getNode();
+
+    unlink(current);
+    recycle(current);
+    return true;
   }
 
   /**
@@ -221,47 +640,241 @@ public class Track implements ListADT<Pod> {
   @Override
   public Pod remove(int index) {
 
-    if (index >= size) {
+    LinkedNode current = removeNode(index);
+    Pod removed = current.getPod();
+
+    recycle(current);
+    return removed;
+  }
+
+  /**
+   * Moves the pod at specified position onto another track, placed by its class as add() would.
+   * The node carrying the pod moves with it, so nothing is allocated.
+   * 
+   * @param index       position of pod to move
+   * @param destination track to move the pod onto
+   * @return the moved Pod
+   * @throws IndexOutOfBoundsException if index is invalid
+   */
+  public Pod moveTo(int index, Track destination) {
+
+    LinkedNode current = removeNode(index);
+
+    destination.addNode(current);
+    return current.getPod();
+  }
+
+  /**
+   * Unlinks the node at specified position without recycling it
+   * 
+   * @param index position of node to remove
+   * @return the detached node
+   * @throws IndexOutOfBoundsException if index is invalid
+   */
+  protected LinkedNode removeNode(int index) {
+
+    if (index < 0 || index >= size) {
       throw new IndexOutOfBoundsException();
     }
 
+    // Get to the node to remove
+    LinkedNode current = getNode(index);
+
+    unlink(current);
+    return current;
+  }
+
+  /**
+   * Starts maintaining a persistent mirror of this track so that snapshot() is O(1). Enabling costs
+   * one O(n) build; afterwards every add or remove also updates the mirror in O(log n). Must be
+   * called by the thread that mutates the track.
+   */
+  public void enableSnapshots() {
+
+    if (snapshotsEnabled) {
+      return;
+    }
+
+    TrackSnapshot.Node root = null;
     LinkedNode current = this.head;
+    while (current != null) {
+      root = TrackSnapshot.insertLast(root, current.getOrder(), current.getPod());
+      current = current.getNext();
+    }
 
-    // Get to the node to remove
-    for (int i = 0; i < index; i++) {
+    snapshotRoot = root;
+    snapshotsEnabled = true;
+  }
+
+  /**
+   * Publishes an immutable view of this track. Safe to call from any thread, without locks, while
+   * another thread mutates the track; the cost does not depend on the size of the track.
+   * 
+   * @return the current contents of this track
+   * @throws IllegalStateException if enableSnapshots() has not been called
+   */
+  public TrackSnapshot snapshot() {
+
+    if (!snapshotsEnabled) {
+      throw new IllegalStateException("Snapshots are not enabled for this track");
+    }
+
+    return new TrackSnapshot(snapshotRoot);
+  }
+
+  /**
+   * Groups the pods of this track into segments of up to TrackSegment.MAX_PODS consecutive pods,
+   * each with a Bloom filter of the passengers who boarded its pods, so findPassenger() skips
+   * segments that cannot hold the passenger. Filters are built incrementally as pods are added
+   * and passengers board; enabling on a non-empty track builds them in one O(n) pass.
+   */
+  public void enablePassengerFilters() {
+
+    if (filtersEnabled) {
+      return;
+    }
+
+    filtersEnabled = true;
+
+    LinkedNode current = this.head;
+    while (current != null) {
+      joinTailSegment(current);
       current = current.getNext();
     }
+  }
 
-    // Case 1: Only one node in list
-    if (size == 1) {
-      this.head = null;
-      this.tail = null;
-      size--;
-      return current.getPod();
+  /**
+   * Keeps a columnar summary of this track's pods (class, capacity, occupancy and status) for
+   * PodQuery, updated in O(1) on every link, unlink, boarding and malfunction. Enabling on a
+   * non-empty track fills the columns in one O(n) pass.
+   */
+  public void enableColumns() {
+    if (columns == null) {
+      enableColumns(new PodColumns(), 0);
     }
+  }
 
-    // Case 2: Removing head
-    if (current == head) {
-      this.head = current.getNext();
-      if (this.head != null) {
-        this.head.setPrev(null);
+  /**
+   * Keeps this track's pods in columns shared with other tracks, see enableColumns()
+   * 
+   * @param shared the columns to use
+   * @param tag    tag of this track's pods in the shared columns
+   * @throws IllegalStateException if columns are already enabled
+   */
+  void enableColumns(PodColumns shared, int tag) {
+
+    if (columns != null) {
+      throw new IllegalStateException("Columns are already enabled for this track");
+    }
+
+    columns = shared;
+    columnTag = tag;
+
+    LinkedNode current = this.head;
+    while (current != null) {
+      current.setColumn(columns.occupy(current.getPod(), tag));
+      current = current.getNext();
+    }
+  }
+
+  /**
+   * @return the columnar summary of this track, or null if enableColumns() has not been called
+   */
+  PodColumns getColumns() {
+    return columns;
+  }
+
+  /**
+   * @return number of segments findPassenger() walked pod by pod since filters were enabled
+   */
+  long getSegmentsScanned() {
+    return segmentsScanned;
+  }
+
+  /**
+   * @return number of segments findPassenger() skipped thanks to their filters
+   */
+  long getSegmentsSkipped() {
+    return segmentsSkipped;
+  }
+
+  /**
+   * Puts a node that was just linked at the head into the head segment, opening a new one if full
+   */
+  private void joinHeadSegment(LinkedNode node) {
+
+    TrackSegment segment = headSegment;
+
+    if (segment == null || segment.count >= TrackSegment.MAX_PODS) {
+      segment = new TrackSegment();
+      segment.next = headSegment;
+      if (headSegment != null) {
+        headSegment.prev = segment;
+      } else {
+        tailSegment = segment;
       }
+      headSegment = segment;
     }
-    // Case 3: Removing tail
-    else if (current == tail) {
-      this.tail = current.getPrev();
-      if (this.tail != null) {
-        this.tail.setNext(null);
+
+    segment.first = node;
+    segment.count++;
+    segment.addPassengersOf(node.getPod());
+    node.setSegment(segment);
+  }
+
+  /**
+   * Puts a node that was just linked at the tail into the tail segment, opening a new one if full
+   */
+  private void joinTailSegment(LinkedNode node) {
+
+    TrackSegment segment = tailSegment;
+
+    if (segment == null || segment.count >= TrackSegment.MAX_PODS) {
+      segment = new TrackSegment();
+      segment.prev = tailSegment;
+      if (tailSegment != null) {
+        tailSegment.next = segment;
+      } else {
+        headSegment = segment;
       }
+      tailSegment = segment;
     }
-    // Case 4: Removing from middle
-    else {
-      current.getPrev().setNext(current.getNext());
-      current.getNext().setPrev(current.getPrev());
+
+    if (segment.first == null) {
+      segment.first = node;
     }
+    segment.count++;
+    segment.addPassengersOf(node.getPod());
+    node.setSegment(segment);
+  }
 
-    size--;
-    return current.getPod();
+  /**
+   * Takes a node that is about to be unlinked out of its segment, dropping the segment if empty
+   */
+  private void leaveSegment(LinkedNode node) {
+
+    TrackSegment segment = node.getSegment();
+    node.setSegment(null);
+    segment.count--;
+
+    if (segment.count > 0) {
+      // segments are contiguous, so the next node belongs to the same segment
+      if (segment.first == node) {
+        segment.first = node.getNext();
+      }
+      return;
+    }
+
+    if (segment.prev != null) {
+      segment.prev.next = segment.next;
+    } else {
+      headSegment = segment.next;
+    }
+    if (segment.next != null) {
+      segment.next.prev = segment.prev;
+    } else {
+      tailSegment = segment.prev;
+    }
   }
 
   /**
@@ -272,6 +885,27 @@ public class Track implements ListADT<Pod> {
    */
   public int findPassenger(String name) {
 
+    FlightEvents.PassengerSearch event = new FlightEvents.PassengerSearch();
+    event.begin();
+    podsTraversed = 0;
+
+    int index = filtersEnabled ? findPassengerBySegment(name) : findPassengerByWalk(name);
+
+    if (event.shouldCommit()) {
+      event.podsTraversed = podsTraversed;
+      event.found = index != -1;
+      event.filtered = filtersEnabled;
+      event.commit();
+    }
+
+    return index;
+  }
+
+  /**
+   * findPassenger() for a track without passenger filters: walks every pod from the head
+   */
+  private int findPassengerByWalk(String name) {
+
     // if the track is empty
     if (this.size == 0) {
       return -1;
@@ -283,6 +917,7 @@ public class Track implements ListADT<Pod> {
 
       for (int i = 0; i < size; i++) {
 
+        podsTraversed++;
         if (current.getPod().containsPassenger(name)) {
 
           return i;
@@ -305,6 +940,43 @@ public class Track implements ListADT<Pod> {
 
   }
 
+  /**
+   * findPassenger() for a track with passenger filters: walks only the segments whose filter may
+   * contain the name, keeping count of the positions skipped
+   */
+  private int findPassengerBySegment(String name) {
+
+    int index = 0;
+
+    try {
+
+      for (TrackSegment segment = headSegment; segment != null; segment = segment.next) {
+
+        if (!segment.filter.mightContain(name)) {
+          segmentsSkipped++;
+          index += segment.count;
+          continue;
+        }
+
+        segmentsScanned++;
+        LinkedNode current = segment.first;
+        for (int i = 0; i < segment.count; i++) {
+          podsTraversed++;
+          if (current.getPod().containsPassenger(name)) {
+            return index + i;
+          }
+          current = current.getNext();
+        }
+        index += segment.count;
+      }
+
+    } catch (MalfunctioningPodException e) {
+      e.printStackTrace();
+    }
+
+    return -1;
+  }
+
   /**
    * Adds passenger to first available pod of specified class
    * 
@@ -314,6 +986,27 @@ public class Track implements ListADT<Pod> {
    */
   public boolean addPassenger(String name, boolean isFirstClass) {
 
+    FlightEvents.PassengerBoarding event = new FlightEvents.PassengerBoarding();
+    event.begin();
+    podsTraversed = 0;
+
+    boolean boarded = board(name, isFirstClass);
+
+    if (event.shouldCommit()) {
+      event.podsTraversed = podsTraversed;
+      event.firstClass = isFirstClass;
+      event.boarded = boarded;
+      event.commit();
+    }
+
+    return boarded;
+  }
+
+  /**
+   * addPassenger() without its flight event
+   */
+  private boolean board(String name, boolean isFirstClass) {
+
     // if the track is empty
     if (this.size == 0) {
       return false;
@@ -327,7 +1020,9 @@ public class Track implements ListADT<Pod> {
         boolean runner = true;
         LinkedNode current = this.head;
 
-        while (runner) {
+        while (runner && current != null) {
+
+          podsTraversed++;
 
           // finding the first empty first class pod
           if (current.getPod().getPodClass() == 0) {
@@ -361,7 +1056,9 @@ public class Track implements ListADT<Pod> {
         boolean runner = true;
         LinkedNode current = this.tail;
 
-        while (runner) {
+        while (runner && current != null) {
+
+          podsTraversed++;
 
           // finding the first empty economy class
           if (current.getPod().getPodClass() == 1) {
@@ -399,6 +1096,253 @@ public class Track implements ListADT<Pod> {
 
   }
 
+  /**
+   * Books a whole group of passengers in one pass over the pods of their class, searched in the
+   * same direction as addPassenger(). A single pod with room for everyone is preferred, the one
+   * with the fewest free seats left over; otherwise the policy decides whether the group may be
+   * split, and over which pods. Malfunctioning and full pods break a run of adjacent pods.
+   * 
+   * Booking is all or nothing: if the group cannot be placed, no passenger is added.
+   * 
+   * @param names        the passengers to book
+   * @param isFirstClass true for first class, false for economy
+   * @param policy       how the group may be spread over pods
+   * @return the seat assignment, the pod of names.get(i) at index i, or an empty list if the group
+   *         could not be placed
+   * @throws IllegalArgumentException if names is empty
+   */
+  public List<Pod> addGroup(List<String> names, boolean isFirstClass, GroupPolicy policy) {
+
+    if (names.isEmpty()) {
+      throw new IllegalArgumentException("Empty group");
+    }
+
+    int needed = names.size();
+    int podClass = isFirstClass ? Pod.FIRST : Pod.ECONOMY;
+
+    LinkedNode bestSingle = null; // pod with room for everyone and the fewest seats left over
+    int bestSingleFree = Integer.MAX_VALUE;
+    LinkedNode bestRun = null; // first pod of the shortest run of adjacent pods with enough room
+    int bestRunLength = Integer.MAX_VALUE;
+    List<LinkedNode> open = policy == GroupPolicy.ANY_PODS ? new ArrayList<>() : null;
+    int totalFree = 0;
+
+    // window over the current run of adjacent pods with free seats
+    LinkedNode runStart = null;
+    int runFree = 0;
+    int runLength = 0;
+
+    LinkedNode current = isFirstClass ? this.head : this.tail;
+    while (current != null && current.getPod().peekPodClass() == podClass) {
+
+      int free = freeSeats(current);
+
+      if (free == 0) {
+        runStart = null;
+        runFree = 0;
+        runLength = 0;
+      } else {
+
+        if (free >= needed && free < bestSingleFree) {
+          bestSingle = current;
+          bestSingleFree = free;
+        }
+
+        if (runStart == null) {
+          runStart = current;
+        }
+        runFree += free;
+        runLength++;
+
+        // drop pods from the start of the window while the rest still has enough room
+        while (runFree - freeSeats(runStart) >= needed) {
+          runFree -= freeSeats(runStart);
+          runLength--;
+          runStart = isFirstClass ? runStart.getNext() : runStart.getPrev();
+        }
+        if (runFree >= needed && runLength < bestRunLength) {
+          bestRun = runStart;
+          bestRunLength = runLength;
+        }
+
+        if (open != null) {
+          open.add(current);
+          totalFree += free;
+        }
+      }
+
+      current = isFirstClass ? current.getNext() : current.getPrev();
+    }
+
+    List<Pod> pods = new ArrayList<>();
+    if (bestSingle != null) {
+      pods.add(bestSingle.getPod());
+    } else if (policy != GroupPolicy.SAME_POD && bestRun != null) {
+      LinkedNode node = bestRun;
+      for (int i = 0; i < bestRunLength; i++) {
+        pods.add(node.getPod());
+        node = isFirstClass ? node.getNext() : node.getPrev();
+      }
+    } else if (open != null && totalFree >= needed) {
+      // the fewest pods are the emptiest ones
+      open.sort((a, b) -> freeSeats(b) - freeSeats(a));
+      int room = 0;
+      for (LinkedNode node : open) {
+        pods.add(node.getPod());
+        room += freeSeats(node);
+        if (room >= needed) {
+          break;
+        }
+      }
+    } else {
+      return Collections.emptyList();
+    }
+
+    return board(names, pods);
+  }
+
+  /**
+   * Seats a group in the given pods, filling them in order; the pods have room for everyone
+   * 
+   * @return the pod of each passenger, or an empty list (with nobody boarded) if boarding failed
+   */
+  private List<Pod> board(List<String> names, List<Pod> pods) {
+
+    List<Pod> assignment = new ArrayList<>(names.size());
+    int podIndex = 0;
+    boolean boarded = false;
+
+    try {
+
+      for (String name : names) {
+        while (pods.get(podIndex).isFull()) {
+          podIndex++;
+        }
+        Pod pod = pods.get(podIndex);
+        int seated = pod.peekNumPassengers();
+        try {
+          pod.addPassenger(name);
+        } finally {
+          if (pod.peekNumPassengers() > seated) {
+            assignment.add(pod); // seated, even if a listener threw afterwards
+          }
+        }
+      }
+      boarded = true;
+      return assignment;
+
+    } catch (MalfunctioningPodException e) {
+      // only functional pods were chosen, but one may have failed since
+      return Collections.emptyList();
+    } finally {
+      // whatever stopped boarding, never leave part of a group behind
+      if (!boarded) {
+        for (int i = assignment.size() - 1; i >= 0; i--) {
+          try {
+            assignment.get(i).removePassenger(names.get(i));
+          } catch (MalfunctioningPodException failed) {
+            failed.printStackTrace();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Keeps a seat for a passenger for a limited time, in the first pod of the class with a free
+   * seat, searched in the same direction as addPassenger(). The seat counts as taken until the hold
+   * is confirmed (the passenger boards), released, or expires. Holds are timed by a hierarchical
+   * timing wheel, so holding, confirming and releasing cost O(1) however many holds are
+   * outstanding, and expired holds are found without scanning: every hold method, and
+   * expireHolds(), first gives back the seats of the holds that have expired.
+   * 
+   * @param name         passenger the seat is kept for
+   * @param isFirstClass true for first class, false for economy
+   * @param ttlMillis    how long the seat is kept, in milliseconds
+   * @return the hold, or null if no pod of the class has a free seat
+   * @throws IllegalArgumentException if ttlMillis is not positive
+   */
+  public SeatHold holdSeat(String name, boolean isFirstClass, long ttlMillis) {
+
+    if (ttlMillis <= 0) {
+      throw new IllegalArgumentException("Invalid hold time " + ttlMillis);
+    }
+
+    long now = clock.getAsLong();
+    if (holds == null) {
+      holds = new HierarchicalTimingWheel(now);
+    }
+    holds.advance(now);
+
+    int podClass = isFirstClass ? Pod.FIRST : Pod.ECONOMY;
+    LinkedNode current = isFirstClass ? this.head : this.tail;
+
+    while (current != null && current.getPod().peekPodClass() == podClass) {
+
+      if (freeSeats(current) > 0) {
+        Pod pod = current.getPod();
+        SeatHold hold = new SeatHold(this, pod, name);
+        pod.holdSeat();
+        holds.schedule(hold, now + ttlMillis);
+        return hold;
+      }
+
+      current = isFirstClass ? current.getNext() : current.getPrev();
+    }
+
+    return null;
+  }
+
+  /**
+   * Gives back the seats of the holds that have expired. Expiry is otherwise only noticed by the
+   * next holdSeat(), confirm() or release(), so call this periodically for expired seats to be
+   * free for addPassenger() while no holds are made.
+   * 
+   * @return number of holds that expired
+   */
+  public int expireHolds() {
+    return holds == null ? 0 : holds.advance(clock.getAsLong());
+  }
+
+  /**
+   * @return number of seat holds that are neither confirmed, released nor expired
+   */
+  public int getNumHolds() {
+    return holds == null ? 0 : holds.size();
+  }
+
+  /**
+   * Replaces the clock used for hold expiry, e.g. to expire holds in a test without waiting
+   * 
+   * @param clock source of the current time in milliseconds
+   */
+  void setClock(LongSupplier clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Ends a hold made by this track for confirm() or release(), giving its seat back
+   * 
+   * @return false if the hold had already ended, or expired just now
+   */
+  boolean endHold(SeatHold hold) {
+
+    expireHolds();
+
+    if (!holds.cancel(hold)) {
+      return false;
+    }
+
+    hold.getPod().releaseHeldSeat();
+    return true;
+  }
+
+  private static int freeSeats(LinkedNode node) {
+    Pod pod = node.getPod();
+    return pod.peekFunctional() ? pod.peekCapacity() - pod.peekNumPassengers() - pod.peekNumHeld()
+        : 0;
+  }
+
   /**
    * Creates string representation of track contents
    * 
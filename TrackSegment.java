@@ -0,0 +1,43 @@
+/**
+ * A run of consecutive nodes on a Track together with a PassengerFilter of everyone who boarded a
+ * pod while it was in the run. Track.findPassenger() skips whole segments whose filter rules the
+ * passenger out.
+ */
+class TrackSegment {
+
+  /**
+   * Maximum number of pods per segment
+   */
+  static final int MAX_PODS = 512;
+
+  /**
+   * Bits per segment filter, sized for a few thousand names at a low false positive rate
+   */
+  static final int FILTER_BITS = 1 << 15;
+
+  /**
+   * Bits set per name
+   */
+  static final int FILTER_HASHES = 4;
+
+  LinkedNode first; // first node of the run (null while empty)
+
+  int count; // number of nodes in the run
+
+  final PassengerFilter filter = new PassengerFilter(FILTER_BITS, FILTER_HASHES);
+
+  TrackSegment prev; // segment closer to the head
+
+  TrackSegment next; // segment closer to the tail
+
+  /**
+   * Records every passenger currently on a pod in this segment's filter
+   * 
+   * @param pod a pod joining the segment
+   */
+  void addPassengersOf(Pod pod) {
+    for (String name : pod.peekPassengers()) {
+      filter.add(name);
+    }
+  }
+}
@@ -0,0 +1,250 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable, structurally shared view of the pods on a Track at one point in time. Snapshots are
+ * published by Track.snapshot() in O(1) and may be read from any thread without locking while the
+ * track keeps changing; successive snapshots share every subtree the writer did not touch.
+ *
+ * A snapshot fixes which pods were on the track and in what order. The pods themselves are still
+ * live objects, so passenger lists read through a snapshot reflect the pods' current contents.
+ */
+public class TrackSnapshot implements Iterable<Pod> {
+
+  /**
+   * Node of a persistent treap ordered by the track's node order keys. Every update copies the path
+   * from the root to the changed node and shares the rest.
+   */
+  static final class Node {
+
+    final long key; // order key of the LinkedNode this entry mirrors
+
+    final long priority; // heap priority, derived from the key
+
+    final Pod pod; // the pod at this position
+
+    final int size; // number of entries in this subtree
+
+    final Node left; // entries that come before this one
+
+    final Node right; // entries that come after this one
+
+    Node(long key, long priority, Pod pod, Node left, Node right) {
+      this.key = key;
+      this.priority = priority;
+      this.pod = pod;
+      this.left = left;
+      this.right = right;
+      this.size = 1 + size(left) + size(right);
+    }
+
+    private Node withLeft(Node newLeft) {
+      return new Node(key, priority, pod, newLeft, right);
+    }
+
+    private Node withRight(Node newRight) {
+      return new Node(key, priority, pod, left, newRight);
+    }
+  }
+
+  private final Node root; // root of the shared treap, null if the track was empty
+
+  /**
+   * Wraps an already published treap root
+   *
+   * @param root the root to expose (may be null)
+   */
+  TrackSnapshot(Node root) {
+    this.root = root;
+  }
+
+  /**
+   * Returns the number of pods in this snapshot
+   *
+   * @return number of pods on the track when the snapshot was taken
+   */
+  public int size() {
+    return size(root);
+  }
+
+  /**
+   * Checks if this snapshot contains no pods
+   *
+   * @return true if the track was empty when the snapshot was taken
+   */
+  public boolean isEmpty() {
+    return root == null;
+  }
+
+  /**
+   * Returns pod at specified position, in O(log n)
+   *
+   * @param index position of pod to return
+   * @return Pod at specified index
+   * @throws IndexOutOfBoundsException if index is invalid
+   */
+  public Pod get(int index) {
+    if (index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException();
+    }
+    Node current = root;
+    while (true) {
+      int leftSize = size(current.left);
+      if (index < leftSize) {
+        current = current.left;
+      } else if (index == leftSize) {
+        return current.pod;
+      } else {
+        index -= leftSize + 1;
+        current = current.right;
+      }
+    }
+  }
+
+  /**
+   * Finds first pod containing specified passenger. Malfunctioning pods are skipped.
+   *
+   * @param name passenger name to search for
+   * @return index of first pod containing passenger, or -1 if not found
+   */
+  public int findPassenger(String name) {
+    int index = 0;
+    for (Pod pod : this) {
+      try {
+        if (pod.containsPassenger(name)) {
+          return index;
+        }
+      } catch (MalfunctioningPodException e) {
+        // a failed pod cannot be boarded, so it does not hold the passenger
+      }
+      index++;
+    }
+    return -1;
+  }
+
+  /**
+   * Counts the passengers in all functional pods of this snapshot
+   *
+   * @return total number of passengers
+   */
+  public int getNumPassengers() {
+    int total = 0;
+    for (Pod pod : this) {
+      try {
+        total += pod.getNumPassengers();
+      } catch (MalfunctioningPodException e) {
+        // skipped, the same way findPassenger skips failed pods
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Iterates over the pods in track order
+   */
+  @Override
+  public Iterator<Pod> iterator() {
+    return new Iterator<Pod>() {
+
+      private final ArrayDeque<Node> stack = new ArrayDeque<>();
+
+      {
+        pushLeft(root);
+      }
+
+      private void pushLeft(Node node) {
+        while (node != null) {
+          stack.push(node);
+          node = node.left;
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        return !stack.isEmpty();
+      }
+
+      @Override
+      public Pod next() {
+        if (stack.isEmpty()) {
+          throw new NoSuchElementException();
+        }
+        Node node = stack.pop();
+        pushLeft(node.right);
+        return node.pod;
+      }
+    };
+  }
+
+  static int size(Node node) {
+    return node == null ? 0 : node.size;
+  }
+
+  /**
+   * Returns a new root with the entry added before every existing entry
+   *
+   * @param root current root (may be null)
+   * @param key  order key, smaller than every key already present
+   * @param pod  the pod to add
+   * @return the new root
+   */
+  static Node insertFirst(Node root, long key, Pod pod) {
+    long priority = Track.priorityOf(key);
+    if (root == null || priority > root.priority) {
+      return new Node(key, priority, pod, null, root);
+    }
+    return root.withLeft(insertFirst(root.left, key, pod));
+  }
+
+  /**
+   * Returns a new root with the entry added after every existing entry
+   *
+   * @param root current root (may be null)
+   * @param key  order key, larger than every key already present
+   * @param pod  the pod to add
+   * @return the new root
+   */
+  static Node insertLast(Node root, long key, Pod pod) {
+    long priority = Track.priorityOf(key);
+    if (root == null || priority > root.priority) {
+      return new Node(key, priority, pod, root, null);
+    }
+    return root.withRight(insertLast(root.right, key, pod));
+  }
+
+  /**
+   * Returns a new root without the entry for the given key
+   *
+   * @param root current root
+   * @param key  order key of the entry to remove
+   * @return the new root (may be null)
+   */
+  static Node remove(Node root, long key) {
+    if (root == null) {
+      return null;
+    }
+    if (key < root.key) {
+      return root.withLeft(remove(root.left, key));
+    } else if (key > root.key) {
+      return root.withRight(remove(root.right, key));
+    }
+    return merge(root.left, root.right);
+  }
+
+  /**
+   * Joins two treaps where every key of left is smaller than every key of right
+   */
+  private static Node merge(Node left, Node right) {
+    if (left == null) {
+      return right;
+    }
+    if (right == null) {
+      return left;
+    }
+    if (left.priority > right.priority) {
+      return left.withRight(merge(left.right, right));
+    }
+    return right.withLeft(merge(left, right.left));
+  }
+}
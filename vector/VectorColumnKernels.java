@@ -0,0 +1,168 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * ColumnKernels on the incubating Vector API. aggregate() tests as many slots per step as the
+ * preferred int vector has lanes (8 with AVX2, 16 with AVX-512), widening the byte columns to ints
+ * and summing the int columns under the resulting mask; next() tests the byte columns a whole byte
+ * vector (32 or 64 slots) at a time. The slots left over at the end of a range go through
+ * ScalarColumnKernels.
+ *
+ * Lives apart from the other sources because it only compiles with the incubator module:
+ *
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorColumnKernels.java
+ * java --add-modules jdk.incubator.vector LoopStationBenchmark kernels
+ * </pre>
+ *
+ * ColumnKernels.load() only picks it when both steps were taken.
+ */
+final class VectorColumnKernels implements ColumnKernels {
+
+  private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+  // as many byte lanes as int lanes, widened to ints to test them alongside the int columns
+  private static final VectorSpecies<Byte> NARROW = VectorShape.forBitSize(INTS.length() * 8)
+      .withLanes(byte.class);
+
+  // as many byte lanes as fit in a vector, to find a match in the byte columns alone
+  private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+
+  private final ScalarColumnKernels tail = new ScalarColumnKernels(); // leftover slots
+
+  /**
+   * Creates the kernels; ColumnKernels.load() calls this reflectively
+   *
+   * @throws UnsupportedOperationException if vectors have fewer than 8 int lanes on this machine,
+   *                                       too few to beat the scalar loop
+   */
+  VectorColumnKernels() {
+    if (INTS.length() < 8) {
+      throw new UnsupportedOperationException("Only " + INTS.length() + " int lanes");
+    }
+  }
+
+  @Override
+  public void aggregate(PodColumns columns, int statusMask, int classMask, int trackMask,
+      boolean freeSeatsOnly, int from, int to, long[] totals) {
+
+    int[] capacity = columns.capacity;
+    int[] occupancy = columns.occupancy;
+    int[] status = accepted(statusMask);
+    int[] podClass = accepted(classMask);
+    int[] track = accepted(trackMask);
+
+    // lanes sum at most maxCapacity per step, so flush them to longs before an int can overflow
+    int flushEvery = Math.max(1, Integer.MAX_VALUE / Math.max(1, columns.maxCapacity));
+
+    long count = 0;
+    long passengers = 0;
+    long seats = 0;
+    IntVector passengerLanes = IntVector.zero(INTS);
+    IntVector seatLanes = IntVector.zero(INTS);
+    int steps = 0;
+
+    int slot = from;
+    int bound = from + INTS.loopBound(to - from);
+    for (; slot < bound; slot += INTS.length()) {
+
+      VectorMask<Integer> match = widen(columns.status, slot, status)
+          .and(widen(columns.podClass, slot, podClass)).and(widen(columns.track, slot, track));
+      IntVector occupied = IntVector.fromArray(INTS, occupancy, slot);
+      IntVector seatsHere = IntVector.fromArray(INTS, capacity, slot);
+      if (freeSeatsOnly) {
+        match = match.and(occupied.compare(VectorOperators.LT, seatsHere));
+      }
+
+      count += match.trueCount();
+      passengerLanes = passengerLanes.add(occupied, match);
+      seatLanes = seatLanes.add(seatsHere, match);
+
+      if (++steps == flushEvery) {
+        passengers += passengerLanes.reduceLanesToLong(VectorOperators.ADD);
+        seats += seatLanes.reduceLanesToLong(VectorOperators.ADD);
+        passengerLanes = IntVector.zero(INTS);
+        seatLanes = IntVector.zero(INTS);
+        steps = 0;
+      }
+    }
+
+    totals[0] += count;
+    totals[1] += passengers + passengerLanes.reduceLanesToLong(VectorOperators.ADD);
+    totals[2] += seats + seatLanes.reduceLanesToLong(VectorOperators.ADD);
+
+    tail.aggregate(columns, statusMask, classMask, trackMask, freeSeatsOnly, slot, to, totals);
+  }
+
+  @Override
+  public int next(PodColumns columns, int statusMask, int classMask, int trackMask,
+      boolean freeSeatsOnly, int from, int to) {
+
+    int[] status = accepted(statusMask);
+    int[] podClass = accepted(classMask);
+    int[] track = accepted(trackMask);
+
+    // whole byte vectors at a time; a hit is confirmed, free seats and all, by the scalar loop
+    int slot = from;
+    int bound = from + BYTES.loopBound(to - from);
+    for (; slot < bound; slot += BYTES.length()) {
+
+      VectorMask<Byte> match = test(columns.status, slot, status)
+          .and(test(columns.podClass, slot, podClass)).and(test(columns.track, slot, track));
+
+      while (match.anyTrue()) {
+        int hit = slot + match.firstTrue();
+        if (!freeSeatsOnly || columns.occupancy[hit] < columns.capacity[hit]) {
+          return hit;
+        }
+        // keep the lanes after the hit: lane i is in range when 0 <= i - (hit - slot + 1)
+        match = match.and(BYTES.indexInRange(slot - hit - 1, BYTES.length()));
+      }
+    }
+
+    return tail.next(columns, statusMask, classMask, trackMask, freeSeatsOnly, slot, to);
+  }
+
+  /**
+   * Lists the values a mask accepts as three values to compare with, repeating the last one
+   * accepted, or -1 (which no slot holds) for a mask accepting none. Tags and statuses are 0, 1
+   * or 2, so three comparisons cover any mask; the vector loops compare with constants instead of
+   * shifting bytes by the tag, which x86 has no instruction for.
+   */
+  private static int[] accepted(int mask) {
+    int[] values = {-1, -1, -1};
+    int n = 0;
+    for (int value = 0; value < 3; value++) {
+      if ((mask & (1 << value)) != 0) {
+        values[n++] = value;
+      }
+    }
+    for (; n > 0 && n < 3; n++) {
+      values[n] = values[n - 1];
+    }
+    return values;
+  }
+
+  /**
+   * Tests BYTES.length() slots of a byte column from slot on against accepted(mask)
+   */
+  private static VectorMask<Byte> test(byte[] column, int slot, int[] values) {
+    ByteVector tags = ByteVector.fromArray(BYTES, column, slot);
+    return tags.eq((byte) values[0]).or(tags.eq((byte) values[1]))
+        .or(tags.eq((byte) values[2]));
+  }
+
+  /**
+   * Tests INTS.length() slots of a byte column from slot on against accepted(mask), widening the
+   * bytes to ints so that the result lines up with the int columns
+   */
+  private static VectorMask<Integer> widen(byte[] column, int slot, int[] values) {
+    IntVector tags = (IntVector) ByteVector.fromArray(NARROW, column, slot)
+        .convertShape(VectorOperators.B2I, INTS, 0);
+    return tags.eq(values[0]).or(tags.eq(values[1])).or(tags.eq(values[2]));
+  }
+}